@@ -0,0 +1,878 @@
+package com.github.vitineth.branch.program.analysis;
+
+import com.github.vitineth.branch.program.node.Node;
+import com.github.vitineth.branch.program.node.StoryGraph;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Finds the problems in the structure of a story and keeps them up to date as the graph is edited:
+ * <ul>
+ * <li>{@link #UNREACHABLE} nodes cannot be reached from the start. The story starts at the nodes nothing connects to,
+ * or the first node if every node has an incoming connection, the same as
+ * {@link com.github.vitineth.branch.program.runtime.CompiledStory}.</li>
+ * <li>{@link #DEAD_END} nodes have no connections out of them but are not marked as an ending with
+ * {@link #END_MARKER}.</li>
+ * <li>{@link #LOOP} nodes are in a loop that has no connections out of it, so a story that gets there can never end.</li>
+ * <li>{@link #ORPHAN} nodes have no connections at all.</li>
+ * </ul>
+ * The connections are mirrored into <code>int</code> arrays indexed by node handle. Loops are found with Tarjan's
+ * strongly connected components and reachability with a breadth first search, but both are only run over everything
+ * when the analysis is created. After that each edit only visits the part of the graph it can affect: a new connection
+ * searches forward from its destination and back from its origin to find the components it merges, removing a
+ * connection inside a component re-runs Tarjan on just that component, and reachability is spread forward from a node
+ * that becomes reachable or re-derived for only the nodes downstream of a lost connection. Every component keeps
+ * counts of the connections into and out of it so most edits need no search at all.
+ * <p/>
+ * The graph has to tell the analysis about every change through {@link #added(Node)}, {@link #removed(BitSet)},
+ * {@link #connected(Node, Node)} and {@link #disconnected(Node, Node)}, or {@link #rebuild()} after anything else.
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public class StoryAnalysis {
+
+    /**
+     * The node cannot be reached from the start of the story.
+     */
+    public static final int UNREACHABLE = 1;
+    /**
+     * The node has no connections out of it and is not marked as an ending.
+     */
+    public static final int DEAD_END = 2;
+    /**
+     * The node is in a loop with no way out.
+     */
+    public static final int LOOP = 4;
+    /**
+     * The node has no connections in or out.
+     */
+    public static final int ORPHAN = 8;
+    /**
+     * The text that marks a node without connections out of it as a deliberate ending when it appears in its id,
+     * prompt or response.
+     */
+    public static final String END_MARKER = "[end]";
+
+    /**
+     * Used in place of {@link #scope} for nodes that are not in the graph.
+     */
+    private static final int ABSENT = -1;
+    /**
+     * The component every node is given while components are being rebuilt from scratch.
+     */
+    private static final int UNASSIGNED = -2;
+    /**
+     * The number of removed nodes, as a fraction of the graph, above which {@link #removed(BitSet)} rebuilds the analysis
+     * rather than updating it.
+     */
+    private static final int REBUILD_DIVISOR = 4;
+    /**
+     * An empty adjacency list.
+     */
+    private static final int[] NONE = new int[0];
+
+    /**
+     * The graph being analysed.
+     */
+    private final StoryGraph graph;
+    /**
+     * The handles of the destinations of the connections out of each node.
+     */
+    private int[][] out = new int[0][];
+    /**
+     * The number of connections out of each node.
+     */
+    private int[] outDegree = new int[0];
+    /**
+     * The handles of the origins of the connections into each node.
+     */
+    private int[][] in = new int[0][];
+    /**
+     * The number of connections into each node.
+     */
+    private int[] inDegree = new int[0];
+    /**
+     * The strongly connected component of each node, identified by the handle of one of its members, or
+     * {@link #ABSENT}.
+     */
+    private int[] scope = new int[0];
+    /**
+     * The next member of the component of each node, linking the members of each component into a ring.
+     */
+    private int[] next = new int[0];
+    /**
+     * If each node can be reached from the start.
+     */
+    private boolean[] reachable = new boolean[0];
+    /**
+     * The number of members of each component, indexed by the component.
+     */
+    private int[] size = new int[0];
+    /**
+     * The number of connections from each component to itself that join a node to itself.
+     */
+    private int[] loops = new int[0];
+    /**
+     * The number of connections out of each component to other components.
+     */
+    private int[] exits = new int[0];
+    /**
+     * The number of connections into each component from other components.
+     */
+    private int[] entries = new int[0];
+    /**
+     * The number of nodes with no incoming connections.
+     */
+    private int roots = 0;
+    /**
+     * The handle of the node the story starts at when there are no {@link #roots}, or -1.
+     */
+    private int fallback = -1;
+
+    /**
+     * Marks visited nodes during a search without having to clear an array. A node is marked when its entry equals
+     * {@link #mark}.
+     */
+    private int[] marks = new int[0];
+    /**
+     * The value of the current mark in {@link #marks}.
+     */
+    private int mark = 0;
+    /**
+     * A second set of marks for searches that need two at once.
+     */
+    private int[] otherMarks = new int[0];
+    /**
+     * The value of the current mark in {@link #otherMarks}.
+     */
+    private int otherMark = 0;
+    /**
+     * A queue or stack of handles used by the searches.
+     */
+    private int[] queue = new int[0];
+    /**
+     * The discovery index of each node during Tarjan's algorithm.
+     */
+    private int[] order = new int[0];
+    /**
+     * The lowest discovery index reachable from each node during Tarjan's algorithm.
+     */
+    private int[] low = new int[0];
+    /**
+     * The next connection to follow from each node during Tarjan's algorithm.
+     */
+    private int[] edge = new int[0];
+    /**
+     * The nodes of the components still being built during Tarjan's algorithm.
+     */
+    private int[] stack = new int[0];
+    /**
+     * The nodes being searched during Tarjan's algorithm, standing in for recursion.
+     */
+    private int[] calls = new int[0];
+    /**
+     * If each node is on the {@link #stack}.
+     */
+    private boolean[] onStack = new boolean[0];
+
+    /**
+     * Analyses the graph from scratch.
+     *
+     * @param graph {@link StoryGraph} The graph to analyse.
+     */
+    public StoryAnalysis(StoryGraph graph) {
+        this.graph = graph;
+        rebuild();
+    }
+
+    /**
+     * Analyses the whole graph again from scratch.
+     */
+    public void rebuild() {
+        int capacity = 0;
+        for (Node n : graph.getNodes()) capacity = Math.max(capacity, n.getHandle() + 1);
+        out = new int[0][];
+        in = new int[0][];
+        outDegree = new int[0];
+        inDegree = new int[0];
+        scope = new int[0];
+        ensureCapacity(capacity);
+
+        roots = 0;
+        for (Node n : graph.getNodes()) {
+            int h = n.getHandle();
+            scope[h] = UNASSIGNED;
+            out[h] = new int[n.getConnections().size()];
+            in[h] = new int[n.getIncoming().size()];
+            if (in[h].length == 0) roots++;
+        }
+        for (Node n : graph.getNodes()) {
+            int h = n.getHandle();
+            for (Node c : n.getConnections()) {
+                int d = c.getHandle();
+                out[h][outDegree[h]++] = d;
+                in[d][inDegree[d]++] = h;
+            }
+        }
+
+        int[] members = new int[graph.size()];
+        int count = 0;
+        for (Node n : graph.getNodes()) members[count++] = n.getHandle();
+        components(members, count, UNASSIGNED);
+
+        fallback = findFallback();
+        Arrays.fill(reachable, false);
+        int queued = 0;
+        for (int i = 0; i < count; i++) {
+            int h = members[i];
+            if (inDegree[h] == 0 || h == fallback) {
+                reachable[h] = true;
+                queue[queued++] = h;
+            }
+        }
+        spread(queued);
+    }
+
+    /**
+     * Adds a node that has just been added to the graph without any connections.
+     *
+     * @param n {@link Node} The new node.
+     * @return <code>boolean</code> If the reachability or loops of any other node changed.
+     */
+    public boolean added(Node n) {
+        int h = n.getHandle();
+        ensureCapacity(h + 1);
+        scope[h] = h;
+        next[h] = h;
+        size[h] = 1;
+        loops[h] = exits[h] = entries[h] = 0;
+        outDegree[h] = inDegree[h] = 0;
+        reachable[h] = true;
+        roots++;
+        return updateFallback();
+    }
+
+    /**
+     * Removes nodes that have just been removed from the graph along with their connections.
+     *
+     * @param handles {@link BitSet} The handles the nodes had.
+     * @return <code>boolean</code> If the reachability or loops of any remaining node changed.
+     */
+    public boolean removed(BitSet handles) {
+        if (handles.cardinality() > (graph.size() + handles.cardinality()) / REBUILD_DIVISOR) {
+            rebuild();
+            return true;
+        }
+
+        boolean changed = false;
+        for (int h = handles.nextSetBit(0); h >= 0; h = handles.nextSetBit(h + 1)) {
+            if (h >= scope.length || scope[h] == ABSENT) continue;
+            changed |= remove(h);
+        }
+        return updateFallback() | changed;
+    }
+
+    /**
+     * Adds a connection that has just been made in the graph.
+     *
+     * @param origin      {@link Node} The node the connection starts at.
+     * @param destination {@link Node} The node the connection ends at.
+     * @return <code>boolean</code> If the reachability or loops of any node other than the two changed.
+     */
+    public boolean connected(Node origin, Node destination) {
+        int u = origin.getHandle();
+        int v = destination.getHandle();
+        boolean wasRoot = inDegree[v] == 0;
+        addEdge(u, v);
+        if (wasRoot) roots--;
+
+        boolean changed = false;
+        int cu = scope[u];
+        int cv = scope[v];
+        if (u == v) {
+            loops[cu]++;
+        } else if (cu != cv) {
+            exits[cu]++;
+            entries[cv]++;
+            changed = exits[cu] == 1 && isCyclic(cu);
+            if (entries[cu] > 0 && exits[cv] > 0) changed |= mergeCycle(u, v);
+        }
+
+        if (wasRoot && v != fallback) {
+            queue[0] = v;
+            changed |= retract(1);
+        } else if (reachable[u] && !reachable[v]) {
+            reachable[v] = true;
+            queue[0] = v;
+            spread(1);
+            changed = true;
+        }
+        return updateFallback() | changed;
+    }
+
+    /**
+     * Removes a connection that has just been removed from the graph.
+     *
+     * @param origin      {@link Node} The node the connection started at.
+     * @param destination {@link Node} The node the connection ended at.
+     * @return <code>boolean</code> If the reachability or loops of any node other than the two changed.
+     */
+    public boolean disconnected(Node origin, Node destination) {
+        int u = origin.getHandle();
+        int v = destination.getHandle();
+        removeEdge(u, v);
+
+        boolean changed = false;
+        int cu = scope[u];
+        int cv = scope[v];
+        if (u == v) {
+            loops[cu]--;
+        } else if (cu != cv) {
+            exits[cu]--;
+            entries[cv]--;
+            changed = exits[cu] == 0 && isCyclic(cu);
+        } else {
+            changed = split(cu, -1);
+        }
+
+        if (inDegree[v] == 0) {
+            roots++;
+            changed |= root(v);
+        } else if (reachable[u] && v != fallback) {
+            queue[0] = v;
+            changed |= retract(1);
+        }
+        return updateFallback() | changed;
+    }
+
+    /**
+     * @param n {@link Node} A node in the graph.
+     * @return <code>int</code> The problems with the node as a combination of {@link #UNREACHABLE}, {@link #DEAD_END},
+     * {@link #LOOP} and {@link #ORPHAN}, or 0 if there are none.
+     */
+    public int getIssues(Node n) {
+        int h = n.getHandle();
+        if (h < 0 || h >= scope.length || scope[h] == ABSENT) return 0;
+
+        int issues = 0;
+        if (!reachable[h]) issues |= UNREACHABLE;
+        if (outDegree[h] == 0 && !isEnding(n)) issues |= DEAD_END;
+        if (exits[scope[h]] == 0 && isCyclic(scope[h])) issues |= LOOP;
+        if (outDegree[h] == 0 && inDegree[h] == 0 && graph.size() > 1) issues |= ORPHAN;
+        return issues;
+    }
+
+    /**
+     * @return <code>int[]</code> The number of nodes with each problem, in the order {@link #UNREACHABLE},
+     * {@link #DEAD_END}, {@link #LOOP} and {@link #ORPHAN}.
+     */
+    public int[] count() {
+        int[] counts = new int[4];
+        for (Node n : graph.getNodes()) {
+            int issues = getIssues(n);
+            for (int i = 0; i < counts.length; i++) if ((issues & 1 << i) != 0) counts[i]++;
+        }
+        return counts;
+    }
+
+    /**
+     * @param n {@link Node} The node.
+     * @return <code>boolean</code> If the node is marked as an ending with {@link #END_MARKER}.
+     */
+    public static boolean isEnding(Node n) {
+        return contains(n.getId()) || contains(n.getPrompt()) || contains(n.getResponse());
+    }
+
+    /**
+     * @param text {@link String} Some text of a node.
+     * @return <code>boolean</code> If the text contains the {@link #END_MARKER}.
+     */
+    private static boolean contains(String text) {
+        return text != null && text.contains(END_MARKER);
+    }
+
+    /**
+     * @param c <code>int</code> A component.
+     * @return <code>boolean</code> If the component contains a loop, either through more than one node or a node
+     * connected to itself.
+     */
+    private boolean isCyclic(int c) {
+        return size[c] > 1 || loops[c] > 0;
+    }
+
+    /**
+     * Makes a node that has just lost its last incoming connection reachable, as it is now one of the starts.
+     *
+     * @param h <code>int</code> The handle of the node.
+     * @return <code>boolean</code> If the node was unreachable.
+     */
+    private boolean root(int h) {
+        if (reachable[h]) return false;
+
+        reachable[h] = true;
+        queue[0] = h;
+        spread(1);
+        return true;
+    }
+
+    /**
+     * Removes a single node and its connections, splitting its component if it held it together.
+     *
+     * @param h <code>int</code> The handle the node had.
+     * @return <code>boolean</code> If the reachability or loops of any other node changed.
+     */
+    private boolean remove(int h) {
+        int c = scope[h];
+        boolean changed = false;
+
+        if (inDegree[h] == 0) roots--;
+        for (int i = 0; i < inDegree[h]; i++) {
+            int o = in[h][i];
+            if (o == h) continue;
+            removeFrom(out, outDegree, o, h);
+            if (scope[o] != c) {
+                exits[scope[o]]--;
+                changed |= exits[scope[o]] == 0 && isCyclic(scope[o]);
+            }
+        }
+
+        int lost = 0;
+        int[] destinations = Arrays.copyOf(out[h], outDegree[h]);
+        for (int d : destinations) {
+            if (d == h) continue;
+            removeFrom(in, inDegree, d, h);
+            if (scope[d] != c) entries[scope[d]]--;
+        }
+        boolean wasReachable = reachable[h];
+        outDegree[h] = inDegree[h] = 0;
+        out[h] = in[h] = NONE;
+        reachable[h] = false;
+
+        if (size[c] > 1) {
+            changed |= split(c, h);
+        } else {
+            scope[h] = ABSENT;
+        }
+
+        for (int d : destinations) {
+            if (d == h || scope[d] == ABSENT) continue;
+            if (inDegree[d] == 0) {
+                roots++;
+                changed |= root(d);
+            } else if (wasReachable) {
+                queue[lost++] = d;
+            }
+        }
+        if (lost > 0) changed |= retract(lost);
+        return changed;
+    }
+
+    /**
+     * Merges every component on a cycle through a new connection from <code>u</code> to <code>v</code> in different
+     * components. The cycle is made of every node that is reachable from <code>v</code> and can reach <code>u</code>,
+     * so the search forward is cut short at components that have no way out and the search back only visits nodes
+     * found going forward. Every member of a merged component is found going back, including the one it is
+     * identified by.
+     *
+     * @return <code>boolean</code> If any components were merged.
+     */
+    private boolean mergeCycle(int u, int v) {
+        int cu = scope[u];
+        mark++;
+        marks[v] = mark;
+        int top = 0;
+        queue[top++] = v;
+        boolean found = false;
+        while (top > 0) {
+            int x = queue[--top];
+            if (scope[x] == cu) {
+                found = true;
+                continue;
+            }
+            if (exits[scope[x]] == 0) continue;
+            for (int i = 0; i < outDegree[x]; i++) {
+                int y = out[x][i];
+                if (marks[y] != mark) {
+                    marks[y] = mark;
+                    queue[top++] = y;
+                }
+            }
+        }
+        if (!found) return false;
+
+        otherMark++;
+        int[] merged = new int[8];
+        int count = 0;
+        merged[count++] = cu;
+        int x = u;
+        do {
+            otherMarks[x] = otherMark;
+            queue[top++] = x;
+            x = next[x];
+        } while (x != u);
+
+        while (top > 0) {
+            x = queue[--top];
+            for (int i = 0; i < inDegree[x]; i++) {
+                int y = in[x][i];
+                if (marks[y] != mark || otherMarks[y] == otherMark) continue;
+                otherMarks[y] = otherMark;
+                queue[top++] = y;
+                if (scope[y] == y) {
+                    if (count == merged.length) merged = Arrays.copyOf(merged, count * 2);
+                    merged[count++] = y;
+                }
+            }
+        }
+        merge(merged, count);
+        return true;
+    }
+
+    /**
+     * Merges the components into the largest of them, only visiting the members of the others.
+     *
+     * @param components <code>int[]</code> The components to merge.
+     * @param count      <code>int</code> The number of components.
+     */
+    private void merge(int[] components, int count) {
+        int survivor = components[0];
+        for (int i = 1; i < count; i++) if (size[components[i]] > size[survivor]) survivor = components[i];
+
+        otherMark++;
+        for (int i = 0; i < count; i++) otherMarks[components[i]] = otherMark;
+
+        for (int i = 0; i < count; i++) {
+            int c = components[i];
+            if (c == survivor) continue;
+
+            int x = c;
+            do {
+                for (int j = 0; j < outDegree[x]; j++) {
+                    int y = out[x][j];
+                    if (y != x && scope[y] != c && otherMarks[scope[y]] == otherMark) {
+                        exits[c]--;
+                        entries[scope[y]]--;
+                    }
+                }
+                for (int j = 0; j < inDegree[x]; j++) {
+                    int y = in[x][j];
+                    if (scope[y] == survivor) {
+                        exits[survivor]--;
+                        entries[c]--;
+                    }
+                }
+                x = next[x];
+            } while (x != c);
+        }
+
+        for (int i = 0; i < count; i++) {
+            int c = components[i];
+            if (c == survivor) continue;
+
+            int x = c;
+            do {
+                scope[x] = survivor;
+                x = next[x];
+            } while (x != c);
+
+            int after = next[survivor];
+            next[survivor] = next[c];
+            next[c] = after;
+
+            size[survivor] += size[c];
+            loops[survivor] += loops[c];
+            exits[survivor] += exits[c];
+            entries[survivor] += entries[c];
+        }
+    }
+
+    /**
+     * Runs Tarjan's algorithm on the members of a component that may no longer be strongly connected, leaving out a
+     * member that is being removed.
+     *
+     * @param c       <code>int</code> The component.
+     * @param removed <code>int</code> The handle of a member being removed or -1.
+     * @return <code>boolean</code> If the component was split or stopped or started being a loop with no way out.
+     */
+    private boolean split(int c, int removed) {
+        boolean trapped = exits[c] == 0 && isCyclic(c);
+        int[] members = new int[size[c]];
+        int count = 0;
+        int x = c;
+        do {
+            if (x != removed) members[count++] = x;
+            x = next[x];
+        } while (x != c);
+
+        if (removed != -1) scope[removed] = ABSENT;
+        for (int i = 0; i < count; i++) scope[members[i]] = UNASSIGNED;
+        if (components(members, count, UNASSIGNED) > 1) return true;
+
+        int after = scope[members[0]];
+        return trapped != (exits[after] == 0 && isCyclic(after));
+    }
+
+    /**
+     * Finds the strongly connected components among the given nodes with Tarjan's algorithm, only following connections
+     * between nodes whose component is <code>within</code>, then rebuilds the rings and counts of every component found.
+     *
+     * @param members <code>int[]</code> The handles of the nodes.
+     * @param count   <code>int</code> The number of nodes.
+     * @param within  <code>int</code> The component every one of the nodes has been put in.
+     * @return <code>int</code> The number of components found.
+     */
+    private int components(int[] members, int count, int within) {
+        mark++;
+        int index = 0;
+        int found = 0;
+        for (int m = 0; m < count; m++) {
+            int s = members[m];
+            if (marks[s] == mark) continue;
+
+            int calling = 0;
+            int stacked = 0;
+            marks[s] = mark;
+            order[s] = low[s] = index++;
+            edge[s] = 0;
+            stack[stacked++] = s;
+            onStack[s] = true;
+            calls[calling++] = s;
+
+            while (calling > 0) {
+                int x = calls[calling - 1];
+                if (edge[x] < outDegree[x]) {
+                    int y = out[x][edge[x]++];
+                    if (scope[y] != within) continue;
+                    if (marks[y] != mark) {
+                        marks[y] = mark;
+                        order[y] = low[y] = index++;
+                        edge[y] = 0;
+                        stack[stacked++] = y;
+                        onStack[y] = true;
+                        calls[calling++] = y;
+                    } else if (onStack[y]) {
+                        low[x] = Math.min(low[x], order[y]);
+                    }
+                    continue;
+                }
+
+                calling--;
+                if (calling > 0) {
+                    int parent = calls[calling - 1];
+                    low[parent] = Math.min(low[parent], low[x]);
+                }
+                if (low[x] != order[x]) continue;
+
+                found++;
+                int first = -1;
+                int previous = -1;
+                int y;
+                do {
+                    y = stack[--stacked];
+                    onStack[y] = false;
+                    scope[y] = x;
+                    if (previous == -1) first = y;
+                    else next[previous] = y;
+                    previous = y;
+                } while (y != x);
+                next[previous] = first;
+            }
+        }
+
+        for (int m = 0; m < count; m++) {
+            int c = members[m];
+            if (scope[c] == c) size[c] = loops[c] = exits[c] = entries[c] = 0;
+        }
+        for (int m = 0; m < count; m++) {
+            int x = members[m];
+            int c = scope[x];
+            size[c]++;
+            for (int i = 0; i < outDegree[x]; i++) {
+                int y = out[x][i];
+                if (y == x) loops[c]++;
+                else if (scope[y] != c) exits[c]++;
+            }
+            for (int i = 0; i < inDegree[x]; i++) {
+                int y = in[x][i];
+                if (y != x && scope[y] != c) entries[c]++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Marks every unreachable node that can be reached from the reachable nodes in the {@link #queue}.
+     *
+     * @param queued <code>int</code> The number of nodes in the queue.
+     */
+    private void spread(int queued) {
+        int head = 0;
+        while (head < queued) {
+            int x = queue[head++];
+            for (int i = 0; i < outDegree[x]; i++) {
+                int y = out[x][i];
+                if (!reachable[y]) {
+                    reachable[y] = true;
+                    queue[queued++] = y;
+                }
+            }
+        }
+    }
+
+    /**
+     * Works out the reachability of the nodes downstream of the nodes in the {@link #queue}, which may have lost the
+     * connection they were reached through. Every reachable node downstream is collected and unmarked, then the ones
+     * that are still starts or still have a connection from a reachable node outside of that set are marked again and
+     * spread from. Any node whose reachability depended on the lost connection is downstream of it, so nothing else
+     * has to be visited.
+     *
+     * @param queued <code>int</code> The number of nodes in the queue.
+     * @return <code>boolean</code> If any node became unreachable.
+     */
+    private boolean retract(int queued) {
+        mark++;
+        int count = 0;
+        for (int i = 0; i < queued; i++) {
+            int x = queue[i];
+            if (reachable[x] && marks[x] != mark) {
+                marks[x] = mark;
+                stack[count++] = x;
+            }
+        }
+        for (int head = 0; head < count; head++) {
+            int x = stack[head];
+            for (int i = 0; i < outDegree[x]; i++) {
+                int y = out[x][i];
+                if (reachable[y] && marks[y] != mark) {
+                    marks[y] = mark;
+                    stack[count++] = y;
+                }
+            }
+        }
+        if (count == 0) return false;
+
+        for (int i = 0; i < count; i++) reachable[stack[i]] = false;
+        int seeds = 0;
+        for (int i = 0; i < count; i++) {
+            int x = stack[i];
+            boolean seed = inDegree[x] == 0 || x == fallback;
+            for (int j = 0; j < inDegree[x] && !seed; j++) seed = reachable[in[x][j]];
+            if (seed) queue[seeds++] = x;
+        }
+        for (int i = 0; i < seeds; i++) reachable[queue[i]] = true;
+        spread(seeds);
+
+        for (int i = 0; i < count; i++) if (!reachable[stack[i]]) return true;
+        return false;
+    }
+
+    /**
+     * Works out the start node used when there are no roots, recomputing reachability if it changed.
+     *
+     * @return <code>boolean</code> If the start node changed.
+     */
+    private boolean updateFallback() {
+        int start = findFallback();
+        if (start == fallback) return false;
+
+        int previous = fallback;
+        fallback = start;
+        if (start != -1 && !reachable[start]) {
+            reachable[start] = true;
+            queue[0] = start;
+            spread(1);
+        }
+        if (previous != -1 && previous < scope.length && scope[previous] != ABSENT && inDegree[previous] > 0) {
+            queue[0] = previous;
+            retract(1);
+        }
+        return true;
+    }
+
+    /**
+     * @return <code>int</code> The handle of the first node if there are nodes but no roots, or -1.
+     */
+    private int findFallback() {
+        List<Node> nodes = graph.getNodes();
+        return roots == 0 && !nodes.isEmpty() ? nodes.get(0).getHandle() : -1;
+    }
+
+    /**
+     * Adds a connection to the mirrored adjacency.
+     */
+    private void addEdge(int u, int v) {
+        ensureCapacity(Math.max(u, v) + 1);
+        out[u] = append(out[u], outDegree[u]++, v);
+        in[v] = append(in[v], inDegree[v]++, u);
+    }
+
+    /**
+     * Removes a connection from the mirrored adjacency.
+     */
+    private void removeEdge(int u, int v) {
+        removeFrom(out, outDegree, u, v);
+        removeFrom(in, inDegree, v, u);
+    }
+
+    /**
+     * Removes one value from an adjacency list by moving the last value into its place.
+     */
+    private static void removeFrom(int[][] lists, int[] degrees, int h, int value) {
+        int[] list = lists[h];
+        for (int i = 0; i < degrees[h]; i++) {
+            if (list[i] == value) {
+                list[i] = list[--degrees[h]];
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return <code>int[]</code> The list with the value stored at the position, grown if it is full.
+     */
+    private static int[] append(int[] list, int position, int value) {
+        if (position == list.length) list = Arrays.copyOf(list, Math.max(4, list.length * 2));
+        list[position] = value;
+        return list;
+    }
+
+    /**
+     * Grows every array so it can hold the given number of handles.
+     *
+     * @param capacity <code>int</code> The number of handles needed.
+     */
+    private void ensureCapacity(int capacity) {
+        int old = scope.length;
+        if (capacity <= old) return;
+
+        capacity = Math.max(capacity, old + (old >> 1));
+        out = Arrays.copyOf(out, capacity);
+        in = Arrays.copyOf(in, capacity);
+        for (int i = old; i < capacity; i++) out[i] = in[i] = NONE;
+        outDegree = Arrays.copyOf(outDegree, capacity);
+        inDegree = Arrays.copyOf(inDegree, capacity);
+        scope = Arrays.copyOf(scope, capacity);
+        Arrays.fill(scope, old, capacity, ABSENT);
+        next = Arrays.copyOf(next, capacity);
+        reachable = Arrays.copyOf(reachable, capacity);
+        size = Arrays.copyOf(size, capacity);
+        loops = Arrays.copyOf(loops, capacity);
+        exits = Arrays.copyOf(exits, capacity);
+        entries = Arrays.copyOf(entries, capacity);
+        marks = Arrays.copyOf(marks, capacity);
+        otherMarks = Arrays.copyOf(otherMarks, capacity);
+        queue = Arrays.copyOf(queue, capacity);
+        order = Arrays.copyOf(order, capacity);
+        low = Arrays.copyOf(low, capacity);
+        edge = Arrays.copyOf(edge, capacity);
+        stack = Arrays.copyOf(stack, capacity);
+        calls = Arrays.copyOf(calls, capacity);
+        onStack = Arrays.copyOf(onStack, capacity);
+    }
+}
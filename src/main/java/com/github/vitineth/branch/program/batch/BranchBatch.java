@@ -0,0 +1,280 @@
+package com.github.vitineth.branch.program.batch;
+
+import com.github.vitineth.branch.program.io.ImageExporter;
+import com.github.vitineth.branch.program.io.StoryFiles;
+import com.github.vitineth.branch.program.io.StoryJournal;
+import com.github.vitineth.branch.program.io.SvgExporter;
+import com.github.vitineth.branch.program.node.StoryGraph;
+import com.github.vitineth.branch.program.node.StorySnapshot;
+import com.github.vitineth.branch.program.passbacks.ProgressPassback;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The headless entry point for working with stories without a display. It is started by passing a command to
+ * {@link com.github.vitineth.branch.program.window.primary.BranchAdventure} or by running this class directly:
+ * <pre>
+ * validate  [options] files...            Reads every story and reports its size.
+ * convert   [options] --to json|story files...  Writes every story in the given format.
+ * render    [options] [--svg] files...    Renders every story to a PNG, or an SVG with --svg.
+ * thumbnail [options] [--size WxH] files...  Renders every story scaled to fit a fixed size PNG (256x256 by default).
+ *
+ * -o dir   Writes the output into the directory instead of next to each input.
+ * -j n     Processes at most n stories at once (the number of processors by default).
+ * </pre>
+ * Directories are searched for stories recursively. Every story is processed on a single {@link ForkJoinPool} of
+ * <code>-j</code> threads which is also used to render the tiles of each PNG. A story waiting on its tiles helps to
+ * render them, but the pool may still start a few extra threads to make up for ones that are blocked, so
+ * <code>-j</code> limits the stories processed at once rather than every thread. Each story prints one line as it
+ * finishes and the exit code is 0 if every story succeeded, 1 if any failed and 2 if the arguments are invalid.
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public class BranchBatch {
+
+    /**
+     * The usage message printed when the arguments are invalid.
+     */
+    private static final String USAGE = "Usage: <validate|convert|render|thumbnail> [options] files...\n" +
+            "  validate                  Reads every story and reports its size.\n" +
+            "  convert --to json|story   Writes every story in the given format.\n" +
+            "  render [--svg]            Renders every story to a PNG, or an SVG with --svg.\n" +
+            "  thumbnail [--size WxH]    Renders every story scaled to fit a fixed size PNG.\n" +
+            "Options:\n" +
+            "  -o dir                    Writes the output into the directory instead of next to each input.\n" +
+            "  -j n                      Processes at most n stories at once.";
+    /**
+     * The default width and height of thumbnails.
+     */
+    private static final int DEFAULT_THUMBNAIL_SIZE = 256;
+
+    /**
+     * The command being run.
+     */
+    private final String command;
+    /**
+     * The extension of the output of <code>convert</code>.
+     */
+    private String format;
+    /**
+     * If <code>render</code> should write an SVG.
+     */
+    private boolean svg = false;
+    /**
+     * The width of thumbnails.
+     */
+    private int thumbnailWidth = DEFAULT_THUMBNAIL_SIZE;
+    /**
+     * The height of thumbnails.
+     */
+    private int thumbnailHeight = DEFAULT_THUMBNAIL_SIZE;
+    /**
+     * The directory to write into or <code>null</code> to write next to each input.
+     */
+    private Path output;
+    /**
+     * The most stories processed at once.
+     */
+    private int jobs = Runtime.getRuntime().availableProcessors();
+    /**
+     * The files and directories given.
+     */
+    private final List<Path> inputs = new ArrayList<>();
+
+    /**
+     * @param args {@link String}[] The command followed by its options and files.
+     * @throws IllegalArgumentException if the arguments are invalid.
+     */
+    private BranchBatch(String[] args) {
+        if (args.length == 0) throw new IllegalArgumentException("No command given.");
+        command = args[0];
+        if (!command.equals("validate") && !command.equals("convert") && !command.equals("render") && !command.equals("thumbnail")) {
+            throw new IllegalArgumentException("Unknown command " + command + ".");
+        }
+
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "-o":
+                    output = Paths.get(value(args, ++i));
+                    break;
+                case "-j":
+                    jobs = Integer.parseInt(value(args, ++i));
+                    if (jobs <= 0) throw new IllegalArgumentException("-j must be positive.");
+                    break;
+                case "--to":
+                    format = value(args, ++i);
+                    if (!format.equals("json") && !format.equals("story")) throw new IllegalArgumentException("Unknown format " + format + ".");
+                    break;
+                case "--svg":
+                    svg = true;
+                    break;
+                case "--size":
+                    String[] size = value(args, ++i).split("x");
+                    if (size.length != 2) throw new IllegalArgumentException("--size must be WxH.");
+                    thumbnailWidth = Integer.parseInt(size[0]);
+                    thumbnailHeight = Integer.parseInt(size[1]);
+                    if (thumbnailWidth <= 0 || thumbnailHeight <= 0) throw new IllegalArgumentException("--size must be positive.");
+                    break;
+                default:
+                    if (args[i].startsWith("-")) throw new IllegalArgumentException("Unknown option " + args[i] + ".");
+                    inputs.add(Paths.get(args[i]));
+            }
+        }
+
+        if (command.equals("convert") && format == null) throw new IllegalArgumentException("convert needs --to json|story.");
+        if (inputs.isEmpty()) throw new IllegalArgumentException("No files given.");
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Runs the command given by the arguments.
+     *
+     * @param args {@link String}[] The command followed by its options and files.
+     * @param out  {@link PrintStream} Where the result of each story is printed.
+     * @param err  {@link PrintStream} Where failures are printed.
+     * @return <code>int</code> The exit code.
+     */
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        BranchBatch batch;
+        List<Path> files;
+        try {
+            batch = new BranchBatch(args);
+            files = batch.findStories();
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return 2;
+        } catch (IOException e) {
+            err.println(e.getMessage());
+            return 2;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(batch.jobs);
+        try {
+            List<ForkJoinTask<Boolean>> tasks = new ArrayList<>(files.size());
+            for (Path file : files) {
+                tasks.add(pool.submit(() -> {
+                    try {
+                        out.println(file + ": " + batch.process(file, pool));
+                        return true;
+                    } catch (Exception | OutOfMemoryError e) {
+                        err.println(file + ": FAILED " + (e.getMessage() == null ? e.toString() : e.getMessage()));
+                        return false;
+                    }
+                }));
+            }
+
+            int failed = 0;
+            for (ForkJoinTask<Boolean> task : tasks) if (!task.join()) failed++;
+            if (failed > 0) err.println(failed + " of " + files.size() + " stories failed.");
+            return failed == 0 ? 0 : 1;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return {@link List} Every input file along with every story in the input directories.
+     * @throws IOException if a directory could not be searched.
+     */
+    private List<Path> findStories() throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path input : inputs) {
+            if (Files.isDirectory(input)) {
+                try (Stream<Path> walk = Files.walk(input)) {
+                    files.addAll(walk.filter(Files::isRegularFile).filter(p -> StoryFiles.isStory(p.toFile())).sorted().collect(Collectors.toList()));
+                }
+            } else {
+                files.add(input);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Runs the command on a single story.
+     *
+     * @param file {@link Path} The story.
+     * @param pool {@link ForkJoinPool} The pool to render on.
+     * @return {@link String} A description of the result.
+     * @throws IOException if the story could not be read or the output could not be written.
+     */
+    private String process(Path file, ForkJoinPool pool) throws IOException {
+        StoryGraph graph = StoryFiles.isBinary(file) ? StoryJournal.load(file, ProgressPassback.NONE).getGraph() : StoryFiles.read(file, ProgressPassback.NONE);
+        StorySnapshot story = StorySnapshot.of(graph);
+        String size = story.size() + " nodes, " + story.connectionCount() + " connections";
+
+        Path target;
+        switch (command) {
+            case "convert":
+                target = outputFor(file, format.equals("json") ? StoryFiles.JSON_EXTENSION : StoryFiles.BINARY_EXTENSION);
+                StoryFiles.write(story, target, ProgressPassback.NONE);
+                break;
+            case "render":
+                if (story.size() == 0) throw new IOException("There are no nodes to render.");
+                if (svg) {
+                    target = outputFor(file, SvgExporter.EXTENSION);
+                    SvgExporter.write(story, target, ProgressPassback.NONE);
+                } else {
+                    target = outputFor(file, ".png");
+                    ImageExporter.write(story, target, pool, ProgressPassback.NONE);
+                }
+                break;
+            case "thumbnail":
+                if (story.size() == 0) throw new IOException("There are no nodes to render.");
+                target = outputFor(file, ".thumbnail.png");
+                ImageExporter.writeThumbnail(story, target, thumbnailWidth, thumbnailHeight);
+                break;
+            default:
+                return "OK (" + size + ")";
+        }
+        return "OK (" + size + ") -> " + target;
+    }
+
+    /**
+     * @param input     {@link Path} The story.
+     * @param extension {@link String} The extension of the output.
+     * @return {@link Path} The output file, with the name of the input in place of its extension.
+     * @throws IOException if the output would replace the input or its directory could not be created.
+     */
+    private Path outputFor(Path input, String extension) throws IOException {
+        String name = input.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) name = name.substring(0, dot);
+
+        Path directory = output != null ? output : input.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path target = directory.resolve(name + extension);
+        if (Files.exists(target) && Files.isSameFile(target, input)) throw new IOException("The output would replace the input.");
+        return target;
+    }
+
+    /**
+     * @param args  {@link String}[] The arguments.
+     * @param index <code>int</code> The position of the value of an option.
+     * @return {@link String} The value.
+     * @throws IllegalArgumentException if the option has no value.
+     */
+    private static String value(String[] args, int index) {
+        if (index >= args.length) throw new IllegalArgumentException(args[index - 1] + " needs a value.");
+        return args[index];
+    }
+}
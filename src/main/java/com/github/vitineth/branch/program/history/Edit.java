@@ -0,0 +1,32 @@
+package com.github.vitineth.branch.program.history;
+
+/**
+ * A single change that can be undone and redone. Edits store only what they changed, such as the old and new location
+ * of a moved node, so the memory used by the {@link History} is proportional to the size of the changes rather than
+ * the size of the story.
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public interface Edit {
+
+    /**
+     * Reverts the change. Only called after the change has been made or redone.
+     */
+    void undo();
+
+    /**
+     * Makes the change again. Only called after it has been undone.
+     */
+    void redo();
+
+    /**
+     * @return <code>long</code> An estimate of the number of bytes kept alive by this edit, used to keep the
+     * {@link History} within its budget.
+     */
+    long cost();
+
+}
@@ -0,0 +1,128 @@
+package com.github.vitineth.branch.program.history;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The undo and redo stacks of the editor. The oldest edits are forgotten once the total {@link Edit#cost()} of every
+ * edit on both stacks goes over the budget, so the number of steps that can be undone depends on how large the edits
+ * are rather than being a fixed count. The most recent edit is always kept even if it is larger than the budget.
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public class History {
+
+    /**
+     * The default budget of 16 MB.
+     */
+    public static final long DEFAULT_BUDGET = 16L << 20;
+
+    /**
+     * The edits that can be undone with the most recent first.
+     */
+    private final Deque<Edit> undo = new ArrayDeque<>();
+    /**
+     * The edits that can be redone with the most recently undone first.
+     */
+    private final Deque<Edit> redo = new ArrayDeque<>();
+    /**
+     * The most bytes the edits on both stacks can cost.
+     */
+    private final long budget;
+    /**
+     * The total cost of the edits on both stacks.
+     */
+    private long cost = 0;
+
+    public History() {
+        this(DEFAULT_BUDGET);
+    }
+
+    public History(long budget) {
+        if (budget <= 0) throw new IllegalArgumentException("The budget must be positive.");
+        this.budget = budget;
+    }
+
+    /**
+     * Adds an edit that has just been made, forgetting everything that could be redone.
+     *
+     * @param edit {@link Edit} The edit.
+     */
+    public void add(Edit edit) {
+        for (Edit e : redo) cost -= e.cost();
+        redo.clear();
+
+        undo.push(edit);
+        cost += edit.cost();
+        while (cost > budget && undo.size() > 1) cost -= undo.removeLast().cost();
+    }
+
+    /**
+     * Undoes the most recent edit.
+     *
+     * @return <code>boolean</code> If there was an edit to undo.
+     */
+    public boolean undo() {
+        Edit edit = undo.poll();
+        if (edit == null) return false;
+
+        edit.undo();
+        redo.push(edit);
+        return true;
+    }
+
+    /**
+     * Redoes the most recently undone edit.
+     *
+     * @return <code>boolean</code> If there was an edit to redo.
+     */
+    public boolean redo() {
+        Edit edit = redo.poll();
+        if (edit == null) return false;
+
+        edit.redo();
+        undo.push(edit);
+        return true;
+    }
+
+    /**
+     * Forgets every edit.
+     */
+    public void clear() {
+        undo.clear();
+        redo.clear();
+        cost = 0;
+    }
+
+    /**
+     * @return <code>boolean</code> If there is an edit to undo.
+     */
+    public boolean canUndo() {
+        return !undo.isEmpty();
+    }
+
+    /**
+     * @return <code>boolean</code> If there is an edit to redo.
+     */
+    public boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    /**
+     * @return <code>long</code> The total cost of every remembered edit.
+     */
+    public long getCost() {
+        return cost;
+    }
+
+    /**
+     * @return <code>long</code> The most the remembered edits can cost.
+     */
+    public long getBudget() {
+        return budget;
+    }
+}
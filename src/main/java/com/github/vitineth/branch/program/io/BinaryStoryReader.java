@@ -0,0 +1,159 @@
+package com.github.vitineth.branch.program.io;
+
+import com.github.vitineth.branch.program.node.Node;
+import com.github.vitineth.branch.program.node.StoryGraph;
+import com.github.vitineth.branch.program.passbacks.ProgressPassback;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.github.vitineth.branch.program.io.BinaryStoryWriter.*;
+
+/**
+ * Reads a story written by {@link BinaryStoryWriter}. The file is mapped into memory with a {@link MappedByteBuffer}
+ * and the fixed size records are read straight out of the mapping, so opening a story is mostly the cost of creating
+ * the nodes. Each string in the string table is only decoded once and shared by every node that uses it.
+ * <p/>
+ * As the whole file is mapped at once binary stories are limited to 2 GB.
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public class BinaryStoryReader {
+
+    /**
+     * The number of nodes read between each progress report.
+     */
+    private static final int PROGRESS_INTERVAL = 1024;
+
+    /**
+     * Reads the story from the file.
+     *
+     * @param path     {@link Path} The file to read.
+     * @param progress {@link ProgressPassback} Told how many of the nodes have been read.
+     * @return {@link StoryGraph} The loaded story.
+     * @throws IOException if the file could not be read.
+     * @throws StreamCorruptedException if the file is not a valid binary story.
+     */
+    public static StoryGraph read(Path path, ProgressPassback progress) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new StreamCorruptedException("Binary stories cannot be larger than 2 GB.");
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), progress);
+        }
+    }
+
+    /**
+     * Reads the story from a buffer containing the whole file.
+     *
+     * @param buffer   {@link ByteBuffer} The file.
+     * @param progress {@link ProgressPassback} Told how many of the nodes have been read.
+     * @return {@link StoryGraph} The loaded story.
+     * @throws StreamCorruptedException if the buffer is not a valid binary story.
+     */
+    public static StoryGraph read(ByteBuffer buffer, ProgressPassback progress) throws StreamCorruptedException {
+        long length = buffer.limit();
+        if (length < HEADER_SIZE || buffer.getInt(0) != MAGIC) throw new StreamCorruptedException("This is not a binary story.");
+        int version = buffer.getInt(4);
+        if (version != 1 && version != VERSION) throw new StreamCorruptedException("Unsupported binary story version " + buffer.getInt(4) + ".");
+
+        int size = buffer.getInt(8);
+        int edges = buffer.getInt(12);
+        int stringCount = buffer.getInt(16);
+        long stringsOffset = buffer.getLong(24);
+
+        int nodeInts = version == 1 ? NODE_INTS_V1 : NODE_INTS;
+        long nodesOffset = HEADER_SIZE;
+        long edgeStartOffset = nodesOffset + (long) size * nodeInts * 4;
+        long edgesOffset = edgeStartOffset + ((long) size + 1) * 4;
+        long guardsOffset = edgesOffset + (long) edges * 4;
+        long dataOffset = stringsOffset + ((long) stringCount + 1) * 4;
+        long expected = version == 1 ? guardsOffset : guardsOffset + (long) edges * 4;
+        if (size < 0 || edges < 0 || stringCount < 0 || expected != stringsOffset || dataOffset > length) {
+            throw new StreamCorruptedException("The binary story is truncated or corrupt.");
+        }
+        if (dataOffset + buffer.getInt((int) dataOffset - 4) != length) {
+            throw new StreamCorruptedException("The binary story is truncated or corrupt.");
+        }
+
+        Strings strings = new Strings(buffer, (int) stringsOffset, (int) dataOffset, stringCount);
+        StoryGraph graph = new StoryGraph();
+        Node[] created = new Node[size];
+        for (int i = 0; i < size; i++) {
+            if (i % PROGRESS_INTERVAL == 0) progress.progress(0.8 * i / Math.max(1, size));
+
+            int record = (int) nodesOffset + i * nodeInts * 4;
+            Node n = new Node(buffer.getInt(record), buffer.getInt(record + 4),
+                    strings.get(buffer.getInt(record + 16)), strings.get(buffer.getInt(record + 20)), strings.get(buffer.getInt(record + 24)));
+            n.setWidth(buffer.getInt(record + 8));
+            n.setHeight(buffer.getInt(record + 12));
+            if (version > 1) n.setEffect(strings.get(buffer.getInt(record + 28)));
+            graph.add(n);
+            created[i] = n;
+        }
+
+        int start = buffer.getInt((int) edgeStartOffset);
+        if (start != 0) throw new StreamCorruptedException("The binary story has invalid connections.");
+        for (int i = 0; i < size; i++) {
+            int end = buffer.getInt((int) edgeStartOffset + (i + 1) * 4);
+            if (end < start || end > edges) throw new StreamCorruptedException("The binary story has invalid connections.");
+
+            for (int e = start; e < end; e++) {
+                int target = buffer.getInt((int) edgesOffset + e * 4);
+                if (target < 0 || target >= size) throw new StreamCorruptedException("The binary story has invalid connections.");
+                graph.connect(created[i], created[target]);
+                if (version > 1) {
+                    String guard = strings.get(buffer.getInt((int) guardsOffset + e * 4));
+                    if (guard != null) graph.setGuard(created[i], created[target], guard);
+                }
+            }
+            start = end;
+        }
+
+        progress.progress(1);
+        return graph;
+    }
+
+    /**
+     * The string table of a binary story, decoding each string the first time it is used.
+     */
+    private static class Strings {
+        private final ByteBuffer buffer;
+        private final int offsets;
+        private final int data;
+        private final String[] decoded;
+
+        private Strings(ByteBuffer buffer, int offsets, int data, int count) {
+            this.buffer = buffer;
+            this.offsets = offsets;
+            this.data = data;
+            this.decoded = new String[count];
+        }
+
+        private String get(int index) throws StreamCorruptedException {
+            if (index == -1) return null;
+            if (index < 0 || index >= decoded.length) throw new StreamCorruptedException("The binary story has an invalid string index.");
+            if (decoded[index] != null) return decoded[index];
+
+            int start = buffer.getInt(offsets + index * 4);
+            int end = buffer.getInt(offsets + index * 4 + 4);
+            if (start < 0 || end < start || data + (long) end > buffer.limit()) {
+                throw new StreamCorruptedException("The binary story has an invalid string.");
+            }
+
+            byte[] bytes = new byte[end - start];
+            ByteBuffer view = buffer.duplicate();
+            view.position(data + start);
+            view.get(bytes);
+            return decoded[index] = new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.github.vitineth.branch.program.io;
+
+import com.github.vitineth.branch.program.node.StorySnapshot;
+import com.github.vitineth.branch.program.passbacks.ProgressPassback;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a {@link StorySnapshot} in the binary story format read by {@link BinaryStoryReader}. All values are big
+ * endian and the file is laid out as:
+ * <pre>
+ * header        magic, version, node count, edge count, string count (5 ints), reserved (int), string table offset (long)
+ * nodes         x, y, w, h, id, prompt, response, effect (8 ints per node, strings as string table indices or -1 for
+ *               null)
+ * edge starts   the index of the first edge of each node followed by the edge count (node count + 1 ints)
+ * edges         the index of the destination node of each edge (edge count ints)
+ * guards        the guard of each edge as a string table index or -1 (edge count ints)
+ * string table  the offset of each string from the end of the table followed by the total length
+ *               (string count + 1 ints) and then the UTF-8 bytes of every string
+ * </pre>
+ * Every distinct string is stored once, so node ids are never repeated and identical text is shared. The string table
+ * is written last so nodes can be written as soon as they are reached with only the distinct strings kept in memory.
+ * <p/>
+ * Version 1 files, which have neither effects nor guards, can still be read.
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public class BinaryStoryWriter {
+
+    /**
+     * The first four bytes of every binary story, <code>BRST</code>.
+     */
+    static final int MAGIC = 0x42525354;
+    /**
+     * The version of the format written.
+     */
+    static final int VERSION = 2;
+    /**
+     * The size of the header in bytes.
+     */
+    static final int HEADER_SIZE = 32;
+    /**
+     * The number of ints in each node record.
+     */
+    static final int NODE_INTS = 8;
+    /**
+     * The number of ints in each node record of version 1 files.
+     */
+    static final int NODE_INTS_V1 = 7;
+    /**
+     * The size of the buffer between the records and the file.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * The number of nodes written between each progress report.
+     */
+    private static final int PROGRESS_INTERVAL = 1024;
+
+    /**
+     * Writes the story to the file, replacing it once everything has been written and synced.
+     *
+     * @param story    {@link StorySnapshot} The story to write.
+     * @param path     {@link Path} The file to write.
+     * @param progress {@link ProgressPassback} Told how many of the nodes have been written.
+     * @throws IOException if the file could not be written. The original file is left in place.
+     */
+    public static void write(StorySnapshot story, Path path, ProgressPassback progress) throws IOException {
+        StoryFiles.replace(path, channel -> write(story, channel, progress));
+    }
+
+    /**
+     * Writes the story to the start of an empty channel.
+     *
+     * @param story    {@link StorySnapshot} The story to write.
+     * @param channel  {@link FileChannel} The channel to write to.
+     * @param progress {@link ProgressPassback} Told how many of the nodes have been written.
+     * @throws IOException if the channel fails.
+     */
+    public static void write(StorySnapshot story, FileChannel channel, ProgressPassback progress) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        Map<String, Integer> indices = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        int size = story.size();
+
+        buffer.position(HEADER_SIZE);
+        for (int i = 0; i < size; i++) {
+            if (i % PROGRESS_INTERVAL == 0) progress.progress(0.9 * i / size);
+
+            ensure(channel, buffer, NODE_INTS * 4);
+            buffer.putInt(story.getX(i));
+            buffer.putInt(story.getY(i));
+            buffer.putInt(story.getWidth(i));
+            buffer.putInt(story.getHeight(i));
+            buffer.putInt(intern(story.getId(i), indices, strings));
+            buffer.putInt(intern(story.getPrompt(i), indices, strings));
+            buffer.putInt(intern(story.getResponse(i), indices, strings));
+            buffer.putInt(intern(story.getEffect(i), indices, strings));
+        }
+
+        int edge = 0;
+        for (int i = 0; i < size; i++) {
+            ensure(channel, buffer, 4);
+            buffer.putInt(edge);
+            edge += story.connectionCount(i);
+        }
+        ensure(channel, buffer, 4);
+        buffer.putInt(edge);
+
+        for (int i = 0; i < size; i++) {
+            for (int c = 0; c < story.connectionCount(i); c++) {
+                ensure(channel, buffer, 4);
+                buffer.putInt(story.getConnection(i, c));
+            }
+        }
+
+        for (int i = 0; i < size; i++) {
+            for (int c = 0; c < story.connectionCount(i); c++) {
+                ensure(channel, buffer, 4);
+                buffer.putInt(intern(story.getGuard(i, c), indices, strings));
+            }
+        }
+
+        long stringsOffset = channel.position() + buffer.position();
+        int offset = 0;
+        for (String s : strings) {
+            ensure(channel, buffer, 4);
+            buffer.putInt(offset);
+            offset += utf8Length(s);
+        }
+        ensure(channel, buffer, 4);
+        buffer.putInt(offset);
+
+        for (String s : strings) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > buffer.capacity()) {
+                flush(channel, buffer);
+                channel.write(ByteBuffer.wrap(bytes));
+            } else {
+                ensure(channel, buffer, bytes.length);
+                buffer.put(bytes);
+            }
+        }
+        flush(channel, buffer);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(size);
+        header.putInt(edge);
+        header.putInt(strings.size());
+        header.putInt(0);
+        header.putLong(stringsOffset);
+        header.flip();
+        while (header.hasRemaining()) channel.write(header, header.position());
+        progress.progress(1);
+    }
+
+    /**
+     * @param s       {@link String} The string to find.
+     * @param indices {@link Map} The index of every string added so far.
+     * @param strings {@link List} Every string added so far in index order.
+     * @return <code>int</code> The index of the string in the string table, adding it if it is new, or -1 if it is
+     * <code>null</code>.
+     */
+    private static int intern(String s, Map<String, Integer> indices, List<String> strings) {
+        if (s == null) return -1;
+
+        Integer index = indices.get(s);
+        if (index != null) return index;
+
+        indices.put(s, strings.size());
+        strings.add(s);
+        return strings.size() - 1;
+    }
+
+    /**
+     * @param s {@link String} The string to measure.
+     * @return <code>int</code> The number of bytes in the UTF-8 encoding of the string. Unpaired surrogates are
+     * encoded as a single replacement byte by {@link String#getBytes(java.nio.charset.Charset)}.
+     */
+    private static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Flushes the buffer if it does not have room for the given number of bytes.
+     */
+    private static void ensure(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) flush(channel, buffer);
+    }
+
+    /**
+     * Writes everything in the buffer to the channel and empties it.
+     */
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+}
@@ -0,0 +1,382 @@
+package com.github.vitineth.branch.program.io;
+
+import com.github.vitineth.branch.program.node.Node;
+import com.github.vitineth.branch.program.node.StorySnapshot;
+import com.github.vitineth.branch.program.passbacks.ProgressPassback;
+import com.github.vitineth.branch.program.utils.DrawUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Renders a {@link StorySnapshot} to a PNG the same way the canvas draws it at full zoom, grid, connections and all.
+ * The image is split into square tiles of {@link #TILE_SIZE} pixels which are rendered in parallel on a
+ * {@link ForkJoinPool}, each with its own {@link Graphics2D}, and only one row of tiles is held at a time before it is
+ * passed to a {@link PngWriter}. This keeps the memory needed to the width of the image times {@link #TILE_SIZE}
+ * rather than the whole image, so maps far larger than the heap can still be exported.
+ * <p/>
+ * The nodes and connections are bucketed by tile row up front and by column for each row, so every tile only draws
+ * what passes through it.
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public class ImageExporter {
+
+    /**
+     * The width and height of each tile in pixels.
+     */
+    public static final int TILE_SIZE = 256;
+    /**
+     * The space left around the nodes so the connectors on their edges are not cut off.
+     */
+    private static final int MARGIN = Node.CONNECTOR_RADIUS + 2;
+    /**
+     * The size of the buffer between the encoder and the file.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Renders the story to the file on the common pool, replacing it once everything has been written and synced.
+     *
+     * @param story    {@link StorySnapshot} The story to render, which must have at least one node.
+     * @param path     {@link Path} The file to write.
+     * @param progress {@link ProgressPassback} Told how many of the rows have been written.
+     * @throws IOException if the file could not be written. The original file is left in place.
+     */
+    public static void write(StorySnapshot story, Path path, ProgressPassback progress) throws IOException {
+        write(story, path, ForkJoinPool.commonPool(), progress);
+    }
+
+    /**
+     * Renders the story to the file, replacing it once everything has been written and synced.
+     *
+     * @param story    {@link StorySnapshot} The story to render, which must have at least one node.
+     * @param path     {@link Path} The file to write.
+     * @param pool     {@link ForkJoinPool} The pool the tiles are rendered on.
+     * @param progress {@link ProgressPassback} Told how many of the rows have been written.
+     * @throws IOException if the file could not be written. The original file is left in place.
+     */
+    public static void write(StorySnapshot story, Path path, ForkJoinPool pool, ProgressPassback progress) throws IOException {
+        StoryFiles.replace(path, channel -> {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+            write(story, out, pool, progress);
+            out.flush();
+        });
+    }
+
+    /**
+     * Renders the story as a PNG to the given stream. The stream is flushed but not closed.
+     *
+     * @param story    {@link StorySnapshot} The story to render, which must have at least one node.
+     * @param out      {@link OutputStream} The destination of the image.
+     * @param pool     {@link ForkJoinPool} The pool the tiles are rendered on.
+     * @param progress {@link ProgressPassback} Told how many of the rows have been written.
+     * @throws IOException if the stream fails.
+     */
+    public static void write(StorySnapshot story, OutputStream out, ForkJoinPool pool, ProgressPassback progress) throws IOException {
+        Rectangle area = getBounds(story);
+        int columns = (area.width + TILE_SIZE - 1) / TILE_SIZE;
+        int rows = (area.height + TILE_SIZE - 1) / TILE_SIZE;
+
+        int edges = story.connectionCount();
+        int[] from = new int[edges];
+        int[] to = new int[edges];
+        for (int i = 0, e = 0; i < story.size(); i++) {
+            for (int c = 0; c < story.connectionCount(i); c++, e++) {
+                from[e] = i;
+                to[e] = story.getConnection(i, c);
+            }
+        }
+
+        Buckets nodeRows = new Buckets(rows, story.size(), (i, range) -> {
+            range[0] = (story.getY(i) - MARGIN - area.y) / TILE_SIZE;
+            range[1] = (story.getY(i) + story.getHeight(i) + MARGIN - area.y) / TILE_SIZE;
+        });
+        Buckets edgeRows = new Buckets(rows, edges, (e, range) -> {
+            int y1 = story.getConnectorY(from[e]);
+            int y2 = story.getConnectorY(to[e]);
+            range[0] = (Math.min(y1, y2) - 1 - area.y) / TILE_SIZE;
+            range[1] = (Math.max(y1, y2) + 1 - area.y) / TILE_SIZE;
+        });
+
+        PngWriter png = new PngWriter(out, area.width, area.height);
+        try {
+            int[] pixels = new int[area.width];
+            for (int r = 0; r < rows; r++) {
+                int top = area.y + r * TILE_SIZE;
+                int height = Math.min(TILE_SIZE, area.height - r * TILE_SIZE);
+
+                Buckets nodeColumns = new Buckets(columns, nodeRows.get(r), (i, range) -> {
+                    range[0] = (story.getX(i) - MARGIN - area.x) / TILE_SIZE;
+                    range[1] = (story.getX(i) + story.getWidth(i) + MARGIN - area.x) / TILE_SIZE;
+                });
+                Buckets edgeColumns = new Buckets(columns, edgeRows.get(r), (e, range) -> {
+                    clip(story, from[e], to[e], top - 1, top + height + 1, range);
+                    range[0] = (range[0] - 1 - area.x) / TILE_SIZE;
+                    range[1] = (range[1] + 1 - area.x) / TILE_SIZE;
+                });
+
+                List<ForkJoinTask<BufferedImage>> tiles = new ArrayList<>(columns);
+                for (int c = 0; c < columns; c++) {
+                    int left = area.x + c * TILE_SIZE;
+                    int width = Math.min(TILE_SIZE, area.width - c * TILE_SIZE);
+                    int[] drawnNodes = nodeColumns.get(c);
+                    int[] drawnEdges = edgeColumns.get(c);
+                    tiles.add(pool.submit(() -> renderTile(story, left, top, width, height, drawnNodes, drawnEdges, from, to)));
+                }
+
+                int[][] data = new int[columns][];
+                for (int c = 0; c < columns; c++) data[c] = ((DataBufferInt) tiles.get(c).join().getRaster().getDataBuffer()).getData();
+
+                for (int y = 0; y < height; y++) {
+                    for (int c = 0; c < columns; c++) {
+                        int width = Math.min(TILE_SIZE, area.width - c * TILE_SIZE);
+                        System.arraycopy(data[c], y * width, pixels, c * TILE_SIZE, width);
+                    }
+                    png.writeRow(pixels, 0);
+                }
+                progress.progress((double) (r + 1) / rows);
+            }
+            png.finish();
+        } finally {
+            png.end();
+        }
+    }
+
+    /**
+     * Renders a thumbnail of the story with {@link #renderThumbnail(StorySnapshot, int, int)} and writes it as a PNG,
+     * replacing the file once everything has been written and synced.
+     *
+     * @param story  {@link StorySnapshot} The story to render, which must have at least one node.
+     * @param path   {@link Path} The file to write.
+     * @param width  <code>int</code> The width of the thumbnail.
+     * @param height <code>int</code> The height of the thumbnail.
+     * @throws IOException if the file could not be written. The original file is left in place.
+     */
+    public static void writeThumbnail(StorySnapshot story, Path path, int width, int height) throws IOException {
+        BufferedImage thumbnail = renderThumbnail(story, width, height);
+        StoryFiles.replace(path, channel -> {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+            if (!ImageIO.write(thumbnail, "PNG", out)) throw new IOException("No PNG writer is available.");
+            out.flush();
+        });
+    }
+
+    /**
+     * Renders the whole story scaled down to fit in an image of a fixed size, keeping its aspect ratio and centring it.
+     * As the text would be too small to read the nodes are drawn as plain boxes and the connections between their
+     * centres, the same as the canvas when zoomed far out.
+     *
+     * @param story  {@link StorySnapshot} The story to render, which must have at least one node.
+     * @param width  <code>int</code> The width of the thumbnail.
+     * @param height <code>int</code> The height of the thumbnail.
+     * @return {@link BufferedImage} The thumbnail.
+     */
+    public static BufferedImage renderThumbnail(StorySnapshot story, int width, int height) {
+        Rectangle area = getBounds(story);
+        double scale = Math.min((double) width / area.width, (double) height / area.height);
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(Color.GRAY);
+        g.fillRect(0, 0, width, height);
+        g.translate((width - area.width * scale) / 2, (height - area.height * scale) / 2);
+        g.scale(scale, scale);
+        g.translate(-area.x, -area.y);
+        g.setStroke(new BasicStroke(0));
+
+        Path2D.Float connections = new Path2D.Float();
+        Path2D.Float boxes = new Path2D.Float();
+        for (int i = 0; i < story.size(); i++) {
+            for (int c = 0; c < story.connectionCount(i); c++) {
+                int d = story.getConnection(i, c);
+                connections.moveTo(story.getX(i) + story.getWidth(i) / 2f, story.getY(i) + story.getHeight(i) / 2f);
+                connections.lineTo(story.getX(d) + story.getWidth(d) / 2f, story.getY(d) + story.getHeight(d) / 2f);
+            }
+            boxes.append(new Rectangle(story.getX(i), story.getY(i), story.getWidth(i), story.getHeight(i)), false);
+        }
+        g.setColor(DrawUtils.CONNECTION_COLOR);
+        g.draw(connections);
+        g.setColor(Color.WHITE);
+        g.fill(boxes);
+        g.setColor(new Color(0, 150, 0));
+        g.draw(boxes);
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * @param story {@link StorySnapshot} The story, which must have at least one node.
+     * @return {@link Rectangle} The area of canvas space covering every node with a {@link #MARGIN} around them.
+     * @throws IllegalArgumentException if there are no nodes or the area does not fit in a {@link Rectangle}.
+     */
+    static Rectangle getBounds(StorySnapshot story) {
+        if (story.size() == 0) throw new IllegalArgumentException("There are no nodes to export.");
+
+        long minX = Long.MAX_VALUE, minY = Long.MAX_VALUE, maxX = Long.MIN_VALUE, maxY = Long.MIN_VALUE;
+        for (int i = 0; i < story.size(); i++) {
+            minX = Math.min(minX, story.getX(i));
+            minY = Math.min(minY, story.getY(i));
+            maxX = Math.max(maxX, (long) story.getX(i) + story.getWidth(i));
+            maxY = Math.max(maxY, (long) story.getY(i) + story.getHeight(i));
+        }
+
+        long width = maxX - minX + 2 * MARGIN;
+        long height = maxY - minY + 2 * MARGIN;
+        if (width > Integer.MAX_VALUE || height > Integer.MAX_VALUE) throw new IllegalArgumentException("The story is too large to export.");
+        return new Rectangle((int) minX - MARGIN, (int) minY - MARGIN, (int) width, (int) height);
+    }
+
+    /**
+     * Finds the horizontal extent of the part of a connection that lies between two y values.
+     *
+     * @param story  {@link StorySnapshot} The story.
+     * @param origin <code>int</code> The node the connection starts at.
+     * @param dest   <code>int</code> The node the connection ends at.
+     * @param top    <code>int</code> The smallest y value.
+     * @param bottom <code>int</code> The largest y value.
+     * @param range  <code>int[]</code> Set to the smallest and largest x value of the connection in the band.
+     */
+    private static void clip(StorySnapshot story, int origin, int dest, int top, int bottom, int[] range) {
+        double x1 = story.getX(origin) + story.getWidth(origin);
+        double y1 = story.getConnectorY(origin);
+        double x2 = story.getX(dest);
+        double y2 = story.getConnectorY(dest);
+
+        double xa = x1, xb = x2;
+        if (y1 != y2) {
+            double ta = Math.max(0, Math.min(1, (top - y1) / (y2 - y1)));
+            double tb = Math.max(0, Math.min(1, (bottom - y1) / (y2 - y1)));
+            xa = x1 + (x2 - x1) * ta;
+            xb = x1 + (x2 - x1) * tb;
+        }
+        range[0] = (int) Math.floor(Math.min(xa, xb));
+        range[1] = (int) Math.ceil(Math.max(xa, xb));
+    }
+
+    /**
+     * Renders a single tile.
+     *
+     * @param story  {@link StorySnapshot} The story.
+     * @param x      <code>int</code> The x location of the tile in canvas space.
+     * @param y      <code>int</code> The y location of the tile in canvas space.
+     * @param width  <code>int</code> The width of the tile.
+     * @param height <code>int</code> The height of the tile.
+     * @param nodes  <code>int[]</code> The nodes that touch the tile in draw order.
+     * @param edges  <code>int[]</code> The connections that pass through the tile.
+     * @param from   <code>int[]</code> The origin of every connection.
+     * @param to     <code>int[]</code> The destination of every connection.
+     * @return {@link BufferedImage} The rendered tile.
+     */
+    private static BufferedImage renderTile(StorySnapshot story, int x, int y, int width, int height, int[] nodes, int[] edges, int[] from, int[] to) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.translate(-x, -y);
+        DrawUtils.drawGrid(g, x, y, width, height, 0, 0);
+
+        Path2D.Float path = new Path2D.Float();
+        for (int e : edges) {
+            path.moveTo(story.getX(from[e]) + story.getWidth(from[e]), story.getConnectorY(from[e]));
+            path.lineTo(story.getX(to[e]), story.getConnectorY(to[e]));
+        }
+        g.setColor(DrawUtils.CONNECTION_COLOR);
+        g.draw(path);
+
+        for (int i : nodes) {
+            Node n = new Node(story.getX(i), story.getY(i), story.getId(i), story.getPrompt(i), story.getResponse(i));
+            n.setWidth(story.getWidth(i));
+            n.setHeight(story.getHeight(i));
+            n.draw(g, false, 0, 0);
+        }
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * Finds the range of buckets an item falls into.
+     */
+    private interface Range {
+
+        /**
+         * @param item  <code>int</code> The item.
+         * @param range <code>int[]</code> Set to the first and last bucket of the item, which are clamped afterwards.
+         */
+        void find(int item, int[] range);
+
+    }
+
+    /**
+     * Items grouped into a fixed number of buckets with every item added to each bucket in its range. The items of
+     * every bucket are kept in increasing order in one shared array.
+     */
+    private static class Buckets {
+        private final int[] start;
+        private final int[] items;
+
+        /**
+         * @param count <code>int</code> The number of buckets.
+         * @param size  <code>int</code> The items are <code>0</code> up to this value.
+         * @param range {@link Range} Finds the buckets of each item.
+         */
+        private Buckets(int count, int size, Range range) {
+            this(count, null, size, range);
+        }
+
+        /**
+         * @param count  <code>int</code> The number of buckets.
+         * @param source <code>int[]</code> The items in increasing order.
+         * @param range  {@link Range} Finds the buckets of each item.
+         */
+        private Buckets(int count, int[] source, Range range) {
+            this(count, source, source.length, range);
+        }
+
+        private Buckets(int count, int[] source, int size, Range range) {
+            int[] first = new int[size];
+            int[] last = new int[size];
+            int[] r = new int[2];
+            start = new int[count + 1];
+            for (int i = 0; i < size; i++) {
+                range.find(source == null ? i : source[i], r);
+                first[i] = Math.max(0, r[0]);
+                last[i] = Math.min(count - 1, r[1]);
+                for (int b = first[i]; b <= last[i]; b++) start[b + 1]++;
+            }
+            for (int b = 0; b < count; b++) start[b + 1] += start[b];
+
+            items = new int[start[count]];
+            int[] next = Arrays.copyOf(start, count);
+            for (int i = 0; i < size; i++) {
+                for (int b = first[i]; b <= last[i]; b++) items[next[b]++] = source == null ? i : source[i];
+            }
+        }
+
+        /**
+         * @param bucket <code>int</code> The bucket.
+         * @return <code>int[]</code> A copy of the items in the bucket in increasing order.
+         */
+        private int[] get(int bucket) {
+            return Arrays.copyOfRange(items, start[bucket], start[bucket + 1]);
+        }
+    }
+}
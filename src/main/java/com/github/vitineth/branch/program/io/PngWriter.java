@@ -0,0 +1,188 @@
+package com.github.vitineth.branch.program.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Encodes an opaque 8 bit RGB PNG one row at a time so an image never has to be held in memory as a whole. Rows are
+ * filtered with the <code>Sub</code> filter, which suits the flat colours of a story map, then compressed straight into
+ * <code>IDAT</code> chunks of at most {@link #CHUNK_SIZE} bytes.
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public class PngWriter {
+
+    /**
+     * The eight bytes at the start of every PNG.
+     */
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    /**
+     * The most compressed bytes written in a single <code>IDAT</code> chunk.
+     */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    /**
+     * The destination of the image.
+     */
+    private final OutputStream out;
+    /**
+     * The width of the image in pixels.
+     */
+    private final int width;
+    /**
+     * The height of the image in pixels.
+     */
+    private final int height;
+    /**
+     * The compressor used by {@link #compressor}, ended once the image is finished or by {@link #end()}.
+     */
+    private final Deflater deflater;
+    /**
+     * Compresses the filtered rows into {@link #data}.
+     */
+    private final DeflaterOutputStream compressor;
+    /**
+     * The compressed bytes waiting to be written as an <code>IDAT</code> chunk.
+     */
+    private final ByteArrayOutputStream data = new ByteArrayOutputStream(CHUNK_SIZE + 512);
+    /**
+     * The filter type followed by the filtered bytes of the current row.
+     */
+    private final byte[] row;
+    /**
+     * The number of rows written so far.
+     */
+    private int rows = 0;
+
+    /**
+     * Writes the PNG signature and header.
+     *
+     * @param out    {@link OutputStream} The destination of the image. It is not closed.
+     * @param width  <code>int</code> The width of the image in pixels.
+     * @param height <code>int</code> The height of the image in pixels.
+     * @throws IOException if the stream fails.
+     */
+    public PngWriter(OutputStream out, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("The image must be at least one pixel.");
+        if (3L * width + 1 > Integer.MAX_VALUE) throw new IllegalArgumentException("The image is too wide.");
+
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        this.row = new byte[3 * width + 1];
+        this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        this.compressor = new DeflaterOutputStream(data, deflater, 8192);
+
+        try {
+            out.write(SIGNATURE);
+            byte[] header = new byte[13];
+            putInt(header, 0, width);
+            putInt(header, 4, height);
+            header[8] = 8;
+            header[9] = 2;
+            writeChunk("IHDR", header, header.length);
+        } catch (IOException | RuntimeException e) {
+            deflater.end();
+            throw e;
+        }
+    }
+
+    /**
+     * Adds the next row of the image.
+     *
+     * @param pixels <code>int[]</code> The pixels of the row as packed RGB values. Any alpha is ignored.
+     * @param offset <code>int</code> The position of the first pixel of the row in the array.
+     * @throws IOException if the stream fails.
+     */
+    public void writeRow(int[] pixels, int offset) throws IOException {
+        if (rows == height) throw new IllegalStateException("Every row has already been written.");
+
+        row[0] = 1;
+        int previous = 0;
+        for (int x = 0, i = 1; x < width; x++, i += 3) {
+            int p = pixels[offset + x];
+            row[i] = (byte) ((p >> 16) - (previous >> 16));
+            row[i + 1] = (byte) ((p >> 8) - (previous >> 8));
+            row[i + 2] = (byte) (p - previous);
+            previous = p;
+        }
+        compressor.write(row);
+        rows++;
+
+        if (data.size() >= CHUNK_SIZE) flushData();
+    }
+
+    /**
+     * Writes the remaining compressed data and the end of the image. The stream is flushed but not closed.
+     *
+     * @throws IOException if the stream fails.
+     * @throws IllegalStateException if not every row has been written.
+     */
+    public void finish() throws IOException {
+        if (rows != height) throw new IllegalStateException("Only " + rows + " of " + height + " rows have been written.");
+
+        try {
+            compressor.finish();
+        } finally {
+            deflater.end();
+        }
+        flushData();
+        writeChunk("IEND", new byte[0], 0);
+        out.flush();
+    }
+
+    /**
+     * Frees the compressor without finishing the image, for when writing it has failed. This does nothing once the
+     * image has been finished.
+     */
+    public void end() {
+        deflater.end();
+    }
+
+    /**
+     * Writes everything in {@link #data} as <code>IDAT</code> chunks.
+     */
+    private void flushData() throws IOException {
+        if (data.size() == 0) return;
+
+        writeChunk("IDAT", data.toByteArray(), data.size());
+        data.reset();
+    }
+
+    /**
+     * Writes a single chunk with its length and checksum.
+     */
+    private void writeChunk(String type, byte[] content, int length) throws IOException {
+        byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        byte[] number = new byte[4];
+        putInt(number, 0, length);
+        out.write(number);
+        out.write(name);
+        out.write(content, 0, length);
+
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(content, 0, length);
+        putInt(number, 0, (int) crc.getValue());
+        out.write(number);
+    }
+
+    /**
+     * Stores the int big endian at the given position.
+     */
+    private static void putInt(byte[] bytes, int position, int value) {
+        bytes[position] = (byte) (value >>> 24);
+        bytes[position + 1] = (byte) (value >>> 16);
+        bytes[position + 2] = (byte) (value >>> 8);
+        bytes[position + 3] = (byte) value;
+    }
+}
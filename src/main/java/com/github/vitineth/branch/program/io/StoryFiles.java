@@ -0,0 +1,156 @@
+package com.github.vitineth.branch.program.io;
+
+import com.github.vitineth.branch.program.node.StoryGraph;
+import com.github.vitineth.branch.program.node.StorySnapshot;
+import com.github.vitineth.branch.program.passbacks.ProgressPassback;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks the format to read or write a story in from the extension of the file. Files ending in
+ * {@link #BINARY_EXTENSION} use the binary format of {@link BinaryStoryReader} and {@link BinaryStoryWriter} and every
+ * other file uses the JSON format of {@link StoryReader} and {@link StoryWriter}.
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public class StoryFiles {
+
+    /**
+     * The extension of stories saved as JSON.
+     */
+    public static final String JSON_EXTENSION = ".json";
+    /**
+     * The extension of stories saved in the binary format.
+     */
+    public static final String BINARY_EXTENSION = ".story";
+
+    /**
+     * @param file {@link File} The file to check.
+     * @return <code>boolean</code> If the file has the extension of one of the story formats.
+     */
+    public static boolean isStory(File file) {
+        return file.getName().endsWith(JSON_EXTENSION) || isBinary(file.toPath());
+    }
+
+    /**
+     * @param path {@link Path} The file to check.
+     * @return <code>boolean</code> If the file should use the binary format.
+     */
+    public static boolean isBinary(Path path) {
+        return path.getFileName().toString().endsWith(BINARY_EXTENSION);
+    }
+
+    /**
+     * Reads the story in the format given by the extension of the file.
+     *
+     * @param path     {@link Path} The file to read.
+     * @param progress {@link ProgressPassback} Told how much of the file has been read.
+     * @return {@link StoryGraph} The loaded story.
+     * @throws IOException if the file could not be read or is not a valid story.
+     */
+    public static StoryGraph read(Path path, ProgressPassback progress) throws IOException {
+        return isBinary(path) ? BinaryStoryReader.read(path, progress) : StoryReader.read(path, progress);
+    }
+
+    /**
+     * Writes the story in the format given by the extension of the file.
+     *
+     * @param story    {@link StorySnapshot} The story to write.
+     * @param path     {@link Path} The file to write.
+     * @param progress {@link ProgressPassback} Told how many of the nodes have been written.
+     * @throws IOException if the file could not be written. The original file is left in place.
+     */
+    public static void write(StorySnapshot story, Path path, ProgressPassback progress) throws IOException {
+        if (isBinary(path)) {
+            BinaryStoryWriter.write(story, path, progress);
+        } else {
+            StoryWriter.write(story, path, progress);
+        }
+    }
+
+    /**
+     * Writes a file by writing a temporary file next to it, forcing it to disk and then moving it over the target, so
+     * the target is either left untouched or completely replaced. The replaced file keeps the permissions of the file it
+     * replaces and a new file gets the default permissions of the process, as if it had been written in place.
+     *
+     * @param path    {@link Path} The file to replace.
+     * @param content {@link Content} Writes the new content of the file.
+     * @throws IOException if the file could not be written. The original file is left in place.
+     */
+    static void replace(Path path, Content content) throws IOException {
+        Path target = path.toAbsolutePath();
+        Path temp = createTemp(target);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                content.write(channel);
+                channel.force(true);
+            }
+            move(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Moves a file that has already been written and synced over the target in one step where the file system allows
+     * it, keeping the permissions of the target if it exists.
+     *
+     * @param source {@link Path} The new file.
+     * @param target {@link Path} The file to replace.
+     * @throws IOException if the file could not be moved. The original file is left in place.
+     */
+    static void move(Path source, Path target) throws IOException {
+        if (Files.exists(target) && Files.getFileAttributeView(target, PosixFileAttributeView.class) != null) {
+            Files.setPosixFilePermissions(source, Files.getPosixFilePermissions(target));
+        }
+
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Creates an empty file with a random name next to the target. Unlike {@link Files#createTempFile(Path, String,
+     * String, java.nio.file.attribute.FileAttribute[])} the file is created with the default permissions rather than
+     * being readable only by its owner.
+     *
+     * @param target {@link Path} The file that is going to be replaced.
+     * @return {@link Path} The new empty file.
+     * @throws IOException if the file could not be created.
+     */
+    private static Path createTemp(Path target) throws IOException {
+        String name = target.getFileName().toString();
+        while (true) {
+            Path temp = target.resolveSibling(name + Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                return Files.createFile(temp);
+            } catch (FileAlreadyExistsException e) {
+                //Try another name.
+            }
+        }
+    }
+
+    /**
+     * Writes the content of a file for {@link #replace(Path, Content)}.
+     */
+    interface Content {
+
+        /**
+         * @param channel {@link FileChannel} The empty file to write to. It is forced and closed afterwards.
+         * @throws IOException if the content could not be written.
+         */
+        void write(FileChannel channel) throws IOException;
+
+    }
+}
@@ -0,0 +1,928 @@
+package com.github.vitineth.branch.program.io;
+
+import com.github.vitineth.branch.program.node.Node;
+import com.github.vitineth.branch.program.node.StoryGraph;
+import com.github.vitineth.branch.program.node.StorySnapshot;
+import com.github.vitineth.branch.program.passbacks.ProgressPassback;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of the changes made to a story since it was last written in full. The journal is kept next to
+ * the story file with {@link #EXTENSION} added to its name, so saving after a small change only has to append a few
+ * bytes rather than rewrite the whole story. Opening a story through {@link #load(Path, ProgressPassback)} reads the
+ * story and then replays the journal on top of it.
+ * <p/>
+ * Changes are recorded into memory as they are made and only written to the journal by {@link #flush()}. The journal
+ * starts with a header holding the length and CRC-32 of the story file it applies to so a journal is ignored if the
+ * story was replaced without it, and each record holds its own length and CRC-32 so a record cut off part way through
+ * being written is dropped. Once the journal grows past {@link #needsCompaction()} the story should be written in full
+ * again through {@link #stage(StorySnapshot, Path, ProgressPassback)} and the journal moved on to the new file through
+ * {@link #rebase(Base, List)}. The journal for the new story is written and synced before the story is replaced so
+ * there is always a journal on disk that applies to the story file.
+ * <p/>
+ * Nodes are referred to by a key rather than their id as ids can be changed and do not have to be unique. The nodes of
+ * the story file have the keys 0 to n - 1 in the order they are stored and every added node is given the next unused
+ * key, so replaying the journal gives each node the same key it had when it was recorded.
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public class StoryJournal {
+
+    /**
+     * The extension added to the name of the story file to get the name of its journal.
+     */
+    public static final String EXTENSION = ".journal";
+    /**
+     * The extension added to the name of a story or journal file for the new version written while compacting.
+     */
+    private static final String STAGED_EXTENSION = ".new";
+    /**
+     * The first four bytes of every journal, <code>BRJL</code>.
+     */
+    private static final int MAGIC = 0x42524A4C;
+    /**
+     * The version of the journal format written.
+     */
+    private static final int VERSION = 2;
+    /**
+     * The size of the header: magic, version, story length and story checksum.
+     */
+    private static final int HEADER_SIZE = 20;
+    /**
+     * The journal is never compacted while it is smaller than this many bytes.
+     */
+    private static final long MIN_COMPACTION_SIZE = 1 << 20;
+    /**
+     * The journal is compacted once it is larger than the story divided by this.
+     */
+    private static final int COMPACTION_RATIO = 4;
+    /**
+     * The most changes kept in memory while the journal is not attached. Past this they are dropped and
+     * {@link #discard(long)} reports that the journal can no longer be attached without writing the story in full.
+     */
+    private static final int MAX_DETACHED = 1 << 16;
+
+    private static final byte MOVE = 1;
+    private static final byte EDIT = 2;
+    private static final byte CONNECT = 3;
+    private static final byte DISCONNECT = 4;
+    private static final byte ADD = 5;
+    private static final byte REMOVE = 6;
+    private static final byte CLEAR = 7;
+    private static final byte EFFECT = 8;
+    private static final byte GUARD = 9;
+
+    /**
+     * The changes recorded since the last flush.
+     */
+    private final List<Change> pending = new ArrayList<>();
+    /**
+     * The changes flushed since the compaction was started or <code>null</code> if the story is not being compacted.
+     * These are written again to the journal of the compacted story.
+     */
+    private List<Change> compacted;
+    /**
+     * The number of changes recorded since the journal was created.
+     */
+    private long recorded;
+    /**
+     * The keys of the nodes in the journal file.
+     */
+    private Keys keys;
+    /**
+     * The story file or <code>null</code> if changes are only being recorded into memory.
+     */
+    private Path story;
+    /**
+     * The journal file or <code>null</code> if changes are only being recorded into memory.
+     */
+    private Path path;
+    /**
+     * The length of the story file the journal applies to.
+     */
+    private long baseLength;
+    /**
+     * The length of the journal file.
+     */
+    private long length;
+
+    /**
+     * @param story {@link Path} The story file.
+     * @return {@link Path} The journal of the story.
+     */
+    public static Path pathFor(Path story) {
+        return story.resolveSibling(story.getFileName().toString() + EXTENSION);
+    }
+
+    /**
+     * @param file {@link Path} A story or journal file.
+     * @return {@link Path} The new version of the file written while compacting.
+     */
+    private static Path stagedFor(Path file) {
+        return file.resolveSibling(file.getFileName().toString() + STAGED_EXTENSION);
+    }
+
+    /**
+     * Reads a story and replays its journal if it has one that applies to it. If a compaction was interrupted after the
+     * story was replaced but before its journal was, the new journal is replayed instead. This does not touch any
+     * shared state or change any files so it can be run in the background.
+     *
+     * @param story    {@link Path} The story file.
+     * @param progress {@link ProgressPassback} Told how much of the story has been read.
+     * @return {@link Replay} The loaded story and the state of its journal.
+     * @throws IOException if the story could not be read or is not valid.
+     */
+    public static Replay load(Path story, ProgressPassback progress) throws IOException {
+        StoryGraph graph = StoryFiles.read(story, progress);
+        Base base = Base.of(story);
+        List<Node> byKey = new ArrayList<>(graph.getNodes());
+
+        Path journal = pathFor(story);
+        boolean staged = false;
+        if (!appliesTo(journal, base)) {
+            journal = stagedFor(journal);
+            staged = true;
+            if (!appliesTo(journal, base)) return new Replay(graph, base, -1, 0, byKey, false);
+        }
+
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ)) {
+            channel.position(HEADER_SIZE);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+
+            long valid = HEADER_SIZE;
+            int records = 0;
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte[] payload;
+                try {
+                    int size = in.readInt();
+                    int expected = in.readInt();
+                    if (size <= 0 || size > channel.size()) break;
+                    payload = new byte[size];
+                    in.readFully(payload);
+
+                    crc.reset();
+                    crc.update(payload);
+                    if ((int) crc.getValue() != expected) break;
+                } catch (EOFException e) {
+                    break;
+                }
+
+                apply(graph, byKey, new DataInputStream(new ByteArrayInputStream(payload)));
+                valid += 8 + payload.length;
+                records++;
+            }
+            return new Replay(graph, base, valid, records, byKey, staged);
+        }
+    }
+
+    /**
+     * @param journal {@link Path} The journal file, which may not exist.
+     * @param base    {@link Base} The state of the story file.
+     * @return <code>boolean</code> If the journal is a file and its header matches the story file.
+     * @throws IOException if the journal could not be read.
+     */
+    private static boolean appliesTo(Path journal, Base base) throws IOException {
+        if (!Files.isRegularFile(journal)) return false;
+
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) ;
+            header.flip();
+            return header.remaining() == HEADER_SIZE && header.getInt() == MAGIC && header.getInt() == VERSION
+                    && header.getLong() == base.length && header.getInt() == base.checksum;
+        }
+    }
+
+    /**
+     * Applies a single record to the graph.
+     *
+     * @param graph {@link StoryGraph} The graph to change.
+     * @param byKey {@link List} The node with each key or <code>null</code> if it has been removed, kept up to date.
+     * @param in    {@link DataInputStream} The payload of the record.
+     * @throws IOException if the record is malformed.
+     */
+    private static void apply(StoryGraph graph, List<Node> byKey, DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case MOVE: {
+                Node n = get(byKey, in.readInt());
+                int x = in.readInt();
+                int y = in.readInt();
+                if (n != null) {
+                    n.setX(x);
+                    n.setY(y);
+                }
+                break;
+            }
+            case EDIT: {
+                Node n = get(byKey, in.readInt());
+                String id = readString(in);
+                String prompt = readString(in);
+                String response = readString(in);
+                if (n != null) {
+                    n.setId(id);
+                    n.setPrompt(prompt);
+                    n.setResponse(response);
+                }
+                break;
+            }
+            case CONNECT:
+            case DISCONNECT: {
+                Node origin = get(byKey, in.readInt());
+                Node destination = get(byKey, in.readInt());
+                if (origin == null || destination == null) break;
+
+                if (type == CONNECT) {
+                    graph.connect(origin, destination);
+                } else {
+                    graph.disconnect(origin, destination);
+                }
+                break;
+            }
+            case ADD: {
+                int key = in.readInt();
+                if (key < 0) throw new StreamCorruptedException("Invalid journal key " + key + ".");
+                String id = readString(in);
+                Node n = new Node(in.readInt(), in.readInt(), id, readString(in), readString(in));
+                n.setWidth(in.readInt());
+                n.setHeight(in.readInt());
+
+                while (byKey.size() <= key) byKey.add(null);
+                Node existing = byKey.set(key, n);
+                if (existing != null) graph.remove(existing);
+                graph.add(n);
+                break;
+            }
+            case REMOVE: {
+                int key = in.readInt();
+                Node n = get(byKey, key);
+                if (n != null) {
+                    byKey.set(key, null);
+                    graph.remove(n);
+                }
+                break;
+            }
+            case CLEAR:
+                graph.clear();
+                Collections.fill(byKey, null);
+                break;
+            case EFFECT: {
+                Node n = get(byKey, in.readInt());
+                String effect = readString(in);
+                if (n != null) n.setEffect(effect);
+                break;
+            }
+            case GUARD: {
+                Node origin = get(byKey, in.readInt());
+                Node destination = get(byKey, in.readInt());
+                String guard = readString(in);
+                if (origin != null && destination != null && graph.isConnected(origin, destination)) {
+                    graph.setGuard(origin, destination, guard);
+                }
+                break;
+            }
+            default:
+                throw new StreamCorruptedException("Unknown journal record " + type + ".");
+        }
+    }
+
+    /**
+     * @return {@link Node} The node with the key or <code>null</code> if there is none.
+     */
+    private static Node get(List<Node> byKey, int key) {
+        return key >= 0 && key < byKey.size() ? byKey.get(key) : null;
+    }
+
+    /**
+     * Writes the story in full next to the story file so its journal can be compacted by {@link #rebase(Base, List)}.
+     * The story file itself is not touched. This does not touch any shared state so it can be run in the background.
+     *
+     * @param snapshot {@link StorySnapshot} The story to write.
+     * @param story    {@link Path} The story file.
+     * @param progress {@link ProgressPassback} Told how many of the nodes have been written.
+     * @return {@link Base} The state of the new story file.
+     * @throws IOException if the story could not be written.
+     */
+    public static Base stage(StorySnapshot snapshot, Path story, ProgressPassback progress) throws IOException {
+        Path staged = stagedFor(story);
+        BinaryStoryWriter.write(snapshot, staged, progress);
+        return Base.of(staged);
+    }
+
+    /**
+     * Starts writing changes to the journal of a story that has just been opened. If the journal was replayed anything
+     * after the last valid record is cut off, otherwise a new empty journal replaces any existing one.
+     *
+     * @param story  {@link Path} The story file.
+     * @param replay {@link Replay} The story as it was loaded by {@link #load(Path, ProgressPassback)}.
+     * @throws IOException if the journal could not be written.
+     */
+    public void attach(Path story, Replay replay) throws IOException {
+        Path journal = pathFor(story);
+        long valid = replay.valid;
+        if (valid < 0) {
+            StoryFiles.replace(journal, channel -> writeHeader(channel, replay.base));
+            valid = HEADER_SIZE;
+        } else {
+            if (replay.staged) StoryFiles.move(stagedFor(journal), journal);
+            try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+        start(story, replay.base, valid, replay.keys);
+    }
+
+    /**
+     * Starts writing changes to a new empty journal for a story that has just been written in full, replacing any
+     * existing journal.
+     *
+     * @param story {@link Path} The story file.
+     * @param base  {@link Base} The state of the story file.
+     * @param order {@link List} The nodes in the order they were written to the story file.
+     * @throws IOException if the journal could not be written.
+     */
+    public void attach(Path story, Base base, List<Node> order) throws IOException {
+        StoryFiles.replace(pathFor(story), channel -> writeHeader(channel, base));
+        start(story, base, HEADER_SIZE, Keys.of(order));
+    }
+
+    private void start(Path story, Base base, long valid, Keys keys) throws IOException {
+        Files.deleteIfExists(stagedFor(pathFor(story)));
+
+        this.story = story;
+        this.path = pathFor(story);
+        this.keys = keys;
+        this.baseLength = base.length;
+        this.length = valid;
+        this.compacted = null;
+    }
+
+    /**
+     * Stops writing changes to the journal file. Changes are still recorded into memory.
+     */
+    public void detach() {
+        story = null;
+        path = null;
+        keys = null;
+        compacted = null;
+    }
+
+    /**
+     * @return <code>boolean</code> If changes are being written to a journal file.
+     */
+    public boolean isAttached() {
+        return path != null;
+    }
+
+    /**
+     * @return <code>long</code> The length of the journal file in bytes.
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return <code>long</code> The number of changes recorded up to now. This can be passed to {@link #discard(long)}
+     * to drop the changes recorded up to now.
+     */
+    public long mark() {
+        return recorded;
+    }
+
+    /**
+     * Drops the changes recorded before the given mark from memory, used once they have been written into the story
+     * itself.
+     *
+     * @param mark <code>long</code> The number of changes that had been recorded, from {@link #mark()}.
+     * @return <code>boolean</code> If every change recorded since the mark is still held. If not, too many changes
+     * were made while the journal was not attached and the journal cannot be attached to the story written at the mark.
+     */
+    public boolean discard(long mark) {
+        long first = recorded - pending.size();
+        if (mark < first) return false;
+
+        pending.subList(0, (int) Math.min(mark - first, pending.size())).clear();
+        return true;
+    }
+
+    /**
+     * Appends every recorded change to the journal file and forces it to disk.
+     *
+     * @throws IOException if the journal could not be written. The changes are kept so the flush can be retried.
+     * @throws IllegalStateException if the journal is not attached.
+     */
+    public void flush() throws IOException {
+        if (path == null) throw new IllegalStateException("The journal is not attached to a story.");
+        if (pending.isEmpty()) return;
+
+        Keys flushed = new Keys(keys);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (Change c : pending) c.write(flushed, bytes);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) channel.write(buffer, length + buffer.position());
+            channel.force(false);
+        }
+        flushed.commit();
+        if (compacted != null) compacted.addAll(pending);
+        length += bytes.size();
+        pending.clear();
+    }
+
+    /**
+     * @return <code>boolean</code> If the journal has grown large enough that the story should be written in full.
+     */
+    public boolean needsCompaction() {
+        return path != null && length > Math.max(MIN_COMPACTION_SIZE, baseLength / COMPACTION_RATIO);
+    }
+
+    /**
+     * Starts keeping the changes flushed from now on so they can be carried over to the journal of the compacted story.
+     * This should be called straight after a flush, when the story file plus the journal match the graph.
+     */
+    public void startCompaction() {
+        if (path != null) compacted = new ArrayList<>();
+    }
+
+    /**
+     * Stops a compaction that failed before {@link #rebase(Base, List)}, deleting the staged story.
+     *
+     * @throws IOException if the staged story could not be deleted.
+     */
+    public void cancelCompaction() throws IOException {
+        compacted = null;
+        if (story != null) Files.deleteIfExists(stagedFor(story));
+    }
+
+    /**
+     * Moves the journal on to the story written by {@link #stage(StorySnapshot, Path, ProgressPassback)}. The changes
+     * flushed since {@link #startCompaction()} are written to a new journal for the staged story which is synced before
+     * the staged story replaces the story file, and then the new journal replaces the old one. If this is interrupted
+     * before the story is replaced the old story and journal are left as they were, and if it is interrupted after the
+     * new journal is found by {@link #load(Path, ProgressPassback)}.
+     *
+     * @param base  {@link Base} The state of the staged story file.
+     * @param order {@link List} The nodes in the order they were written to the staged story file.
+     * @throws IOException if the journal could not be written. The journal is still attached to the old story if the
+     *                     story file was not replaced, otherwise it is detached.
+     */
+    public void rebase(Base base, List<Node> order) throws IOException {
+        if (path == null || compacted == null) {
+            cancelCompaction();
+            return;
+        }
+
+        Keys rebased = Keys.of(order);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (Change c : compacted) c.write(rebased, bytes);
+        compacted = null;
+
+        Path staged = stagedFor(story);
+        Path journal = stagedFor(path);
+        try {
+            StoryFiles.replace(journal, channel -> {
+                writeHeader(channel, base);
+                ByteBuffer tail = ByteBuffer.wrap(bytes.toByteArray());
+                while (tail.hasRemaining()) channel.write(tail);
+            });
+            StoryFiles.move(staged, story);
+        } catch (IOException e) {
+            for (Path p : new Path[]{staged, journal}) {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+
+        try {
+            StoryFiles.move(journal, path);
+        } catch (IOException e) {
+            detach();
+            throw e;
+        }
+        this.keys = rebased;
+        this.baseLength = base.length;
+        this.length = HEADER_SIZE + bytes.size();
+    }
+
+    /**
+     * Records that the node has been moved.
+     *
+     * @param n {@link Node} The node at its new location.
+     */
+    public void recordMove(Node n) {
+        Change c = new Change(MOVE, n, null);
+        c.x = n.getX();
+        c.y = n.getY();
+        add(c);
+    }
+
+    /**
+     * Records that the id, prompt or response of a node has been changed.
+     *
+     * @param n {@link Node} The node after the change.
+     */
+    public void recordEdit(Node n) {
+        Change c = new Change(EDIT, n, null);
+        c.id = n.getId();
+        c.prompt = n.getPrompt();
+        c.response = n.getResponse();
+        add(c);
+    }
+
+    /**
+     * Records that the effect of a node has been changed.
+     *
+     * @param n {@link Node} The node after the change.
+     */
+    public void recordEffect(Node n) {
+        Change c = new Change(EFFECT, n, null);
+        c.text = n.getEffect();
+        add(c);
+    }
+
+    /**
+     * Records a new connection along with its guard if it has one.
+     *
+     * @param origin      {@link Node} The node the connection starts at.
+     * @param destination {@link Node} The node the connection ends at.
+     */
+    public void recordConnect(Node origin, Node destination) {
+        add(new Change(CONNECT, origin, destination));
+        if (origin.getGuard(destination) != null) recordGuard(origin, destination);
+    }
+
+    /**
+     * Records that the guard of a connection has been changed.
+     *
+     * @param origin      {@link Node} The node the connection starts at.
+     * @param destination {@link Node} The node the connection ends at.
+     */
+    public void recordGuard(Node origin, Node destination) {
+        Change c = new Change(GUARD, origin, destination);
+        c.text = origin.getGuard(destination);
+        add(c);
+    }
+
+    /**
+     * Records a removed connection.
+     *
+     * @param origin      {@link Node} The node the connection started at.
+     * @param destination {@link Node} The node the connection ended at.
+     */
+    public void recordDisconnect(Node origin, Node destination) {
+        add(new Change(DISCONNECT, origin, destination));
+    }
+
+    /**
+     * Records a new node without any connections, along with its effect if it has one.
+     *
+     * @param n {@link Node} The added node.
+     */
+    public void recordAdd(Node n) {
+        Change c = new Change(ADD, n, null);
+        c.x = n.getX();
+        c.y = n.getY();
+        c.width = n.getWidth();
+        c.height = n.getHeight();
+        c.id = n.getId();
+        c.prompt = n.getPrompt();
+        c.response = n.getResponse();
+        add(c);
+        if (n.getEffect() != null) recordEffect(n);
+    }
+
+    /**
+     * Records that a node and all of its connections have been removed.
+     *
+     * @param n {@link Node} The removed node.
+     */
+    public void recordRemove(Node n) {
+        add(new Change(REMOVE, n, null));
+    }
+
+    /**
+     * Records that every node has been removed.
+     */
+    public void recordClear() {
+        add(new Change(CLEAR, null, null));
+    }
+
+    /**
+     * Adds the change to the pending changes, dropping every pending change first if the journal is not attached and
+     * too many have been kept.
+     */
+    private void add(Change c) {
+        if (path == null && pending.size() >= MAX_DETACHED) pending.clear();
+        pending.add(c);
+        recorded++;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) return null;
+
+        byte[] bytes = new byte[size];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeHeader(FileChannel channel, Base base) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putLong(base.length);
+        header.putInt(base.checksum);
+        header.flip();
+        while (header.hasRemaining()) channel.write(header);
+    }
+
+    /**
+     * A recorded change, holding the values it changed to. It is only turned into a record when it is flushed as the
+     * keys of the nodes it refers to depend on the journal it is written to.
+     */
+    private static class Change {
+        private final byte type;
+        private final Node node;
+        private final Node other;
+        private int x;
+        private int y;
+        private int width;
+        private int height;
+        private String id;
+        private String prompt;
+        private String response;
+        private String text;
+
+        private Change(byte type, Node node, Node other) {
+            this.type = type;
+            this.node = node;
+            this.other = other;
+        }
+
+        /**
+         * Writes the change as a record framed with its length and checksum, updating the keys for added and removed
+         * nodes.
+         *
+         * @param keys {@link Keys} The keys of the journal being written.
+         * @param out  {@link ByteArrayOutputStream} The records being written.
+         */
+        private void write(Keys keys, ByteArrayOutputStream out) {
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(record);
+            try {
+                data.writeByte(type);
+                switch (type) {
+                    case MOVE:
+                        data.writeInt(keys.get(node));
+                        data.writeInt(x);
+                        data.writeInt(y);
+                        break;
+                    case EDIT:
+                        data.writeInt(keys.get(node));
+                        writeString(data, id);
+                        writeString(data, prompt);
+                        writeString(data, response);
+                        break;
+                    case EFFECT:
+                        data.writeInt(keys.get(node));
+                        writeString(data, text);
+                        break;
+                    case CONNECT:
+                    case DISCONNECT:
+                        data.writeInt(keys.get(node));
+                        data.writeInt(keys.get(other));
+                        break;
+                    case GUARD:
+                        data.writeInt(keys.get(node));
+                        data.writeInt(keys.get(other));
+                        writeString(data, text);
+                        break;
+                    case ADD:
+                        data.writeInt(keys.add(node));
+                        writeString(data, id);
+                        data.writeInt(x);
+                        data.writeInt(y);
+                        writeString(data, prompt);
+                        writeString(data, response);
+                        data.writeInt(width);
+                        data.writeInt(height);
+                        break;
+                    case REMOVE:
+                        data.writeInt(keys.get(node));
+                        keys.remove(node);
+                        break;
+                    case CLEAR:
+                        keys.clear();
+                        break;
+                }
+
+                CRC32 crc = new CRC32();
+                crc.update(record.toByteArray());
+                DataOutputStream framed = new DataOutputStream(out);
+                framed.writeInt(record.size());
+                framed.writeInt((int) crc.getValue());
+                record.writeTo(framed);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Writes the string as its UTF-8 length followed by the bytes, or a length of -1 if it is <code>null</code>.
+         */
+        private static void writeString(DataOutputStream out, String s) throws IOException {
+            if (s == null) {
+                out.writeInt(-1);
+                return;
+            }
+
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * The key of every node in a journal. Changes being flushed are written against a child of the journal's keys so
+     * the keys only change once the records have been written, as {@link #commit()} copies the child into its parent.
+     * A child marks removed nodes with a key of -1.
+     */
+    private static class Keys {
+        private final Keys parent;
+        private final Map<Node, Integer> map = new IdentityHashMap<>();
+        private boolean cleared;
+        private int next;
+
+        private Keys(Keys parent) {
+            this.parent = parent;
+            if (parent != null) next = parent.next;
+        }
+
+        /**
+         * @param order {@link List} The nodes of a story file in the order they are stored, <code>null</code> for
+         *              nodes that have been removed.
+         * @return {@link Keys} The keys for the story file.
+         */
+        private static Keys of(List<Node> order) {
+            Keys keys = new Keys(null);
+            for (int i = 0; i < order.size(); i++) {
+                if (order.get(i) != null) keys.map.put(order.get(i), i);
+            }
+            keys.next = order.size();
+            return keys;
+        }
+
+        private int get(Node n) {
+            for (Keys k = this; k != null; k = k.parent) {
+                Integer key = k.map.get(n);
+                if (key != null && key >= 0) return key;
+                if (key != null || k.cleared) break;
+            }
+            throw new IllegalStateException("Node " + n.getId() + " is not in the journal.");
+        }
+
+        private int add(Node n) {
+            map.put(n, next);
+            return next++;
+        }
+
+        private void remove(Node n) {
+            if (parent == null) {
+                map.remove(n);
+            } else {
+                map.put(n, -1);
+            }
+        }
+
+        private void clear() {
+            map.clear();
+            cleared = true;
+        }
+
+        private void commit() {
+            if (cleared) parent.map.clear();
+            for (Map.Entry<Node, Integer> e : map.entrySet()) {
+                if (e.getValue() < 0) {
+                    parent.map.remove(e.getKey());
+                } else {
+                    parent.map.put(e.getKey(), e.getValue());
+                }
+            }
+            parent.next = next;
+        }
+    }
+
+    /**
+     * The length and CRC-32 of a story file, used to check a journal belongs to it.
+     */
+    public static class Base {
+        private final long length;
+        private final int checksum;
+
+        private Base(long length, int checksum) {
+            this.length = length;
+            this.checksum = checksum;
+        }
+
+        /**
+         * Reads the whole file to compute its checksum.
+         *
+         * @param story {@link Path} The story file.
+         * @return {@link Base} The state of the file.
+         * @throws IOException if the file could not be read.
+         */
+        public static Base of(Path story) throws IOException {
+            CRC32 crc = new CRC32();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+            try (FileChannel channel = FileChannel.open(story, StandardOpenOption.READ)) {
+                long length = 0;
+                int read;
+                while ((read = channel.read(buffer)) >= 0) {
+                    length += read;
+                    buffer.flip();
+                    crc.update(buffer);
+                    buffer.clear();
+                }
+                return new Base(length, (int) crc.getValue());
+            }
+        }
+    }
+
+    /**
+     * A story loaded through {@link #load(Path, ProgressPassback)}.
+     */
+    public static class Replay {
+        private final StoryGraph graph;
+        private final Base base;
+        private final long valid;
+        private final int records;
+        private final Keys keys;
+        private final boolean staged;
+
+        /**
+         * @param graph {@link StoryGraph} A story read without a journal.
+         */
+        public Replay(StoryGraph graph) {
+            this(graph, null, -1, 0, Collections.emptyList(), false);
+        }
+
+        private Replay(StoryGraph graph, Base base, long valid, int records, List<Node> byKey, boolean staged) {
+            this.graph = graph;
+            this.base = base;
+            this.valid = valid;
+            this.records = records;
+            this.keys = Keys.of(byKey);
+            this.staged = staged;
+        }
+
+        /**
+         * @return {@link StoryGraph} The story with the journal applied.
+         */
+        public StoryGraph getGraph() {
+            return graph;
+        }
+
+        /**
+         * @return {@link Base} The state of the story file or <code>null</code> if it was read without a journal.
+         */
+        public Base getBase() {
+            return base;
+        }
+
+        /**
+         * @return <code>long</code> The length of the valid part of the journal or -1 if there was no journal for the
+         * story.
+         */
+        public long getValid() {
+            return valid;
+        }
+
+        /**
+         * @return <code>int</code> The number of records replayed.
+         */
+        public int getRecords() {
+            return records;
+        }
+    }
+}
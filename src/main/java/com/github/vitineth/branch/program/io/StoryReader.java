@@ -0,0 +1,265 @@
+package com.github.vitineth.branch.program.io;
+
+import com.github.vitineth.branch.program.node.Node;
+import com.github.vitineth.branch.program.node.StoryGraph;
+import com.github.vitineth.branch.program.passbacks.ProgressPassback;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Reads a story saved in the JSON format written by {@link StoryWriter}:
+ * <pre>
+ * {
+ *   "node.id": {
+ *     "id": "node.id",
+ *     "prompt": "node.prompt",
+ *     "response": "node.response",
+ *     "draw": {
+ *       "x": node.x,
+ *       "y": node.y,
+ *       "w": node.width,
+ *       "h": node.height
+ *     },
+ *     "connections": [
+ *       "node.connections[0]",
+ *       "node.connections[1]"
+ *     ],
+ *     "effect": "node.effect",
+ *     "guards": {
+ *       "node.connections[1]": "guard"
+ *     }
+ *   }
+ * }
+ * </pre>
+ * The <code>effect</code> and <code>guards</code> are optional and only written when a node has them.
+ * The file is read a token at a time with a {@link JsonReader} and each {@link Node} is created as soon as its object
+ * has been read, so no document tree or copy of the file is ever held in memory. Connections may refer to nodes later
+ * in the file so they are kept with each node until the end of the file and then resolved in a single pass. References
+ * to nodes that have already been read are stored as the node itself rather than its id.
+ * <p/>
+ * Nodes are added to the graph in the order they appear in the file. If two nodes share an id the later one replaces
+ * the earlier one.
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public class StoryReader {
+
+    /**
+     * The size of the buffer between the file and the decoder.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Reads the story from a UTF-8 encoded file.
+     *
+     * @param path {@link Path} The file to read.
+     * @return {@link StoryGraph} The loaded story.
+     * @throws IOException         if the file could not be read.
+     * @throws JsonSyntaxException if the file is not a valid story.
+     */
+    public static StoryGraph read(Path path) throws IOException {
+        return read(path, ProgressPassback.NONE);
+    }
+
+    /**
+     * Reads the story from a UTF-8 encoded file. The graph is only ever touched by the calling thread so this can be
+     * run in the background and the result handed over once it returns.
+     *
+     * @param path     {@link Path} The file to read.
+     * @param progress {@link ProgressPassback} Told how much of the file has been read.
+     * @return {@link StoryGraph} The loaded story.
+     * @throws IOException         if the file could not be read.
+     * @throws JsonSyntaxException if the file is not a valid story.
+     */
+    public static StoryGraph read(Path path, ProgressPassback progress) throws IOException {
+        long size = Math.max(1, Files.size(path));
+        InputStream counting = new FilterInputStream(Files.newInputStream(path)) {
+            private long read = 0;
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int count = super.read(b, off, len);
+                if (count > 0) {
+                    read += count;
+                    progress.progress(Math.min(1, (double) read / size));
+                }
+                return count;
+            }
+        };
+
+        try (Reader reader = new InputStreamReader(new BufferedInputStream(counting, BUFFER_SIZE), StandardCharsets.UTF_8)) {
+            return read(reader);
+        }
+    }
+
+    /**
+     * Reads the story from the given reader. The reader is not closed.
+     *
+     * @param in {@link Reader} The source of the JSON.
+     * @return {@link StoryGraph} The loaded story.
+     * @throws IOException         if the reader fails.
+     * @throws JsonSyntaxException if the JSON is not a valid story.
+     */
+    public static StoryGraph read(Reader in) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        Map<String, Node> byId = new LinkedHashMap<>();
+        Map<Node, Object[]> targets = new HashMap<>();
+        Map<Node, Map<String, String>> guards = new HashMap<>();
+
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                reader.nextName();
+                readNode(reader, byId, targets, guards);
+            }
+            reader.endObject();
+            if (reader.peek() != JsonToken.END_DOCUMENT) throw new JsonSyntaxException("Unexpected data after the story.");
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new JsonSyntaxException(e.getMessage(), e);
+        } catch (EOFException e) {
+            throw new JsonSyntaxException("The story ends unexpectedly.", e);
+        }
+
+        StoryGraph graph = new StoryGraph();
+        for (Node n : byId.values()) graph.add(n);
+
+        for (Node n : byId.values()) {
+            for (Object target : targets.remove(n)) {
+                Node d = target instanceof Node ? (Node) target : byId.get(target);
+                if (d == null) {
+                    System.err.println("No matching node for connection " + target + " from " + n.getId() + ".");
+                    continue;
+                }
+                if (d.getHandle() == -1) d = byId.get(d.getId());
+                graph.connect(n, d);
+            }
+
+            Map<String, String> guarded = guards.remove(n);
+            if (guarded == null) continue;
+            for (Node d : n.getConnections()) {
+                String guard = guarded.get(d.getId());
+                if (guard != null) graph.setGuard(n, d, guard);
+            }
+        }
+
+        return graph;
+    }
+
+    /**
+     * Reads a single node object and records it and its connections.
+     *
+     * @param reader  {@link JsonReader} The reader positioned at the start of the node object.
+     * @param byId    {@link Map} The nodes read so far by id.
+     * @param targets {@link Map} The connections of each node, either as the {@link Node} or its id.
+     * @param guards  {@link Map} The guards of each node that has any by the id of the destination.
+     * @throws IOException if the reader fails.
+     */
+    private static void readNode(JsonReader reader, Map<String, Node> byId, Map<Node, Object[]> targets, Map<Node, Map<String, String>> guards) throws IOException {
+        String id = null;
+        String prompt = "";
+        String response = "";
+        String effect = null;
+        Map<String, String> guarded = null;
+        int x = 0, y = 0, w = -1, h = -1;
+        Object[] connections = new Object[0];
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = reader.nextString();
+                    break;
+                case "prompt":
+                    prompt = reader.nextString();
+                    break;
+                case "response":
+                    response = reader.nextString();
+                    break;
+                case "draw":
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case "x":
+                                x = reader.nextInt();
+                                break;
+                            case "y":
+                                y = reader.nextInt();
+                                break;
+                            case "w":
+                                w = reader.nextInt();
+                                break;
+                            case "h":
+                                h = reader.nextInt();
+                                break;
+                            default:
+                                reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                case "connections":
+                    connections = readConnections(reader, byId);
+                    break;
+                case "effect":
+                    effect = reader.nextString();
+                    break;
+                case "guards":
+                    guarded = new HashMap<>();
+                    reader.beginObject();
+                    while (reader.hasNext()) guarded.put(reader.nextName(), reader.nextString());
+                    reader.endObject();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (id == null) throw new JsonSyntaxException("A node is missing its id.");
+
+        Node n = new Node(x, y, id, prompt, response);
+        if (w >= 0) n.setWidth(w);
+        if (h >= 0) n.setHeight(h);
+        n.setEffect(effect);
+
+        Node replaced = byId.remove(id);
+        if (replaced != null) {
+            targets.remove(replaced);
+            guards.remove(replaced);
+        }
+        byId.put(id, n);
+        targets.put(n, connections);
+        if (guarded != null) guards.put(n, guarded);
+    }
+
+    /**
+     * Reads the array of connection ids, replacing the ids of nodes that have already been read with the node.
+     *
+     * @param reader {@link JsonReader} The reader positioned at the start of the array.
+     * @param byId   {@link Map} The nodes read so far by id.
+     * @return {@link Object} array The connections in order.
+     * @throws IOException if the reader fails.
+     */
+    private static Object[] readConnections(JsonReader reader, Map<String, Node> byId) throws IOException {
+        List<Object> connections = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String target = reader.nextString();
+            Node known = byId.get(target);
+            connections.add(known != null ? known : target);
+        }
+        reader.endArray();
+        return connections.toArray();
+    }
+}
@@ -0,0 +1,128 @@
+package com.github.vitineth.branch.program.io;
+
+import com.github.vitineth.branch.program.node.StorySnapshot;
+import com.github.vitineth.branch.program.passbacks.ProgressPassback;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes a {@link StorySnapshot} in the JSON format read by {@link StoryReader}. The output is the same as serializing
+ * the equivalent Gson <code>JsonObject</code> with a default <code>Gson</code> instance (compact with HTML characters
+ * escaped) but each node is written as soon as it is reached, so nothing but a small buffer is held in memory. As the
+ * snapshot is immutable stories can be written on any thread.
+ * <p/>
+ * Files are written through {@link StoryFiles#replace(Path, StoryFiles.Content)} so a failed save leaves the previous
+ * file untouched.
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public class StoryWriter {
+
+    /**
+     * The size of the buffer between the encoder and the file.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * The number of nodes written between each progress report.
+     */
+    private static final int PROGRESS_INTERVAL = 1024;
+
+    /**
+     * Writes the story to the file as UTF-8, replacing it once everything has been written and synced.
+     *
+     * @param story    {@link StorySnapshot} The story to write.
+     * @param path     {@link Path} The file to write.
+     * @param progress {@link ProgressPassback} Told how many of the nodes have been written.
+     * @throws IOException if the file could not be written. The original file is left in place.
+     */
+    public static void write(StorySnapshot story, Path path, ProgressPassback progress) throws IOException {
+        StoryFiles.replace(path, channel -> {
+            Writer out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8), BUFFER_SIZE);
+            write(story, out, progress);
+            out.flush();
+        });
+    }
+
+    /**
+     * Writes the story to the given writer. The writer is flushed but not closed.
+     * <p/>
+     * If more than one node has the same id only the last one is written, in the position of the first, matching how
+     * a <code>JsonObject</code> replaces an existing member.
+     *
+     * @param story    {@link StorySnapshot} The story to write.
+     * @param out      {@link Writer} The destination of the JSON.
+     * @param progress {@link ProgressPassback} Told how many of the nodes have been written.
+     * @throws IOException if the writer fails.
+     */
+    public static void write(StorySnapshot story, Writer out, ProgressPassback progress) throws IOException {
+        Map<String, Integer> last = new HashMap<>();
+        for (int i = 0; i < story.size(); i++) last.put(story.getId(i), i);
+
+        JsonWriter writer = new JsonWriter(out);
+        writer.setHtmlSafe(true);
+        writer.setSerializeNulls(false);
+
+        writer.beginObject();
+        for (int i = 0; i < story.size(); i++) {
+            if (i % PROGRESS_INTERVAL == 0) progress.progress((double) i / story.size());
+
+            Integer w = last.remove(story.getId(i));
+            if (w == null) continue;
+
+            writer.name(story.getId(w));
+            writeNode(writer, story, w);
+        }
+        writer.endObject();
+        writer.flush();
+        progress.progress(1);
+    }
+
+    /**
+     * Writes a single node object.
+     *
+     * @param writer {@link JsonWriter} The writer to use.
+     * @param story  {@link StorySnapshot} The story the node is in.
+     * @param n      <code>int</code> The index of the node to write.
+     * @throws IOException if the writer fails.
+     */
+    private static void writeNode(JsonWriter writer, StorySnapshot story, int n) throws IOException {
+        writer.beginObject();
+        writer.name("id").value(story.getId(n));
+        writer.name("prompt").value(story.getPrompt(n));
+        writer.name("response").value(story.getResponse(n));
+        writer.name("effect").value(story.getEffect(n));
+
+        writer.name("draw").beginObject();
+        writer.name("x").value(story.getX(n));
+        writer.name("y").value(story.getY(n));
+        writer.name("w").value(story.getWidth(n));
+        writer.name("h").value(story.getHeight(n));
+        writer.endObject();
+
+        writer.name("connections").beginArray();
+        for (int c = 0; c < story.connectionCount(n); c++) writer.value(story.getId(story.getConnection(n, c)));
+        writer.endArray();
+
+        boolean guarded = false;
+        for (int c = 0; c < story.connectionCount(n); c++) {
+            String guard = story.getGuard(n, c);
+            if (guard == null) continue;
+
+            if (!guarded) writer.name("guards").beginObject();
+            guarded = true;
+            writer.name(story.getId(story.getConnection(n, c))).value(guard);
+        }
+        if (guarded) writer.endObject();
+        writer.endObject();
+    }
+}
@@ -0,0 +1,245 @@
+package com.github.vitineth.branch.program.io;
+
+import com.github.vitineth.branch.program.node.Node;
+import com.github.vitineth.branch.program.node.StorySnapshot;
+import com.github.vitineth.branch.program.passbacks.ProgressPassback;
+import com.github.vitineth.branch.program.utils.DrawUtils;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Writes a {@link StorySnapshot} as an SVG that looks like the canvas at full zoom. Each node is written as soon as it
+ * is reached, with its text wrapped by {@link DrawUtils#wrapLines(String, int, Graphics2D)} exactly as
+ * {@link Node#draw(Graphics2D, boolean, int, int)} wraps it, so nothing but the current node is held in memory and
+ * the size of the file depends on the number of nodes rather than the area they cover. The grid is a single repeating
+ * pattern and the connections are written as a few large paths underneath the nodes.
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public class SvgExporter {
+
+    /**
+     * The extension of SVG files.
+     */
+    public static final String EXTENSION = ".svg";
+    /**
+     * The size of the buffer between the text and the file.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * The number of nodes written between each progress report.
+     */
+    private static final int PROGRESS_INTERVAL = 1024;
+    /**
+     * The most connections written in a single path so viewers never have to parse one huge attribute.
+     */
+    private static final int PATH_SEGMENTS = 1024;
+    /**
+     * The font size of the node ids, the same as the canvas.
+     */
+    private static final float ID_FONT_SIZE = 12;
+
+    /**
+     * @param path {@link Path} The file to check.
+     * @return <code>boolean</code> If the file has the {@link #EXTENSION} in any case.
+     */
+    public static boolean isSvg(Path path) {
+        return path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(EXTENSION);
+    }
+
+    /**
+     * Writes the story to the file as UTF-8, replacing it once everything has been written and synced.
+     *
+     * @param story    {@link StorySnapshot} The story to write, which must have at least one node.
+     * @param path     {@link Path} The file to write.
+     * @param progress {@link ProgressPassback} Told how many of the nodes have been written.
+     * @throws IOException if the file could not be written. The original file is left in place.
+     */
+    public static void write(StorySnapshot story, Path path, ProgressPassback progress) throws IOException {
+        StoryFiles.replace(path, channel -> {
+            Writer out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8), BUFFER_SIZE);
+            write(story, out, progress);
+            out.flush();
+        });
+    }
+
+    /**
+     * Writes the story as an SVG to the given writer. The writer is flushed but not closed.
+     *
+     * @param story    {@link StorySnapshot} The story to write, which must have at least one node.
+     * @param out      {@link Writer} The destination of the SVG.
+     * @param progress {@link ProgressPassback} Told how many of the nodes have been written.
+     * @throws IOException if the writer fails.
+     */
+    public static void write(StorySnapshot story, Writer out, ProgressPassback progress) throws IOException {
+        Rectangle area = ImageExporter.getBounds(story);
+        int x = area.x;
+        int y = area.y;
+        int width = area.width;
+        int height = area.height;
+
+        Graphics2D g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        Font idFont = g.getFont().deriveFont(ID_FONT_SIZE);
+        Font textFont = idFont.deriveFont(idFont.getSize() - 4f);
+        int idDescent = g.getFontMetrics(idFont).getDescent();
+        int lineHeight = g.getFontMetrics(textFont).getHeight();
+        g.setFont(textFont);
+
+        Color border = new Color(0, 150, 0);
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + width + "\" height=\"" + height
+                + "\" viewBox=\"" + x + " " + y + " " + width + " " + height + "\" font-family=\""
+                + escape(idFont.getFamily()) + ", sans-serif\">\n");
+        writeGrid(out, x, y, width, height);
+
+        out.write("<g fill=\"none\" stroke=\"" + rgb(DrawUtils.CONNECTION_COLOR) + "\">\n<path d=\"");
+        int written = 0;
+        for (int i = 0; i < story.size(); i++) {
+            for (int c = 0; c < story.connectionCount(i); c++) {
+                if (written > 0 && written % PATH_SEGMENTS == 0) out.write("\"/>\n<path d=\"");
+                int d = story.getConnection(i, c);
+                out.write("M" + (story.getX(i) + story.getWidth(i)) + " " + story.getConnectorY(i) + "L" + story.getX(d) + " " + story.getConnectorY(d));
+                written++;
+            }
+        }
+        out.write("\"/>\n</g>\n");
+
+        out.write("<g stroke=\"" + rgb(border) + "\" font-size=\"" + textFont.getSize2D() + "\">\n");
+        for (int i = 0; i < story.size(); i++) {
+            if (i % PROGRESS_INTERVAL == 0) progress.progress((double) i / story.size());
+            writeNode(out, story, i, g, idDescent, lineHeight, border.darker());
+        }
+        out.write("</g>\n</svg>\n");
+        out.flush();
+        g.dispose();
+        progress.progress(1);
+    }
+
+    /**
+     * Writes the background grid as a pattern matching {@link DrawUtils#drawGrid(Graphics2D, int, int, int, int, int, int)}
+     * anchored at the canvas origin.
+     */
+    private static void writeGrid(Writer out, long x, long y, long width, long height) throws IOException {
+        int spacing = DrawUtils.GRID_SPACING;
+        int size = spacing * 2;
+        Color line = Color.DARK_GRAY;
+        out.write("<defs><pattern id=\"grid\" patternUnits=\"userSpaceOnUse\" width=\"" + size + "\" height=\"" + size + "\">"
+                + "<rect width=\"" + size + "\" height=\"" + size + "\" fill=\"" + rgb(Color.GRAY) + "\"/>"
+                + "<path d=\"M0 0V" + size + "M0 0H" + size + "\" stroke=\"" + rgb(line.darker()) + "\" stroke-width=\"0.8\"/>"
+                + "<path d=\"M" + spacing + " 0V" + size + "M0 " + spacing + "H" + size + "\" stroke=\"" + rgb(line.brighter()) + "\"/>"
+                + "</pattern></defs>\n");
+        out.write("<rect x=\"" + x + "\" y=\"" + y + "\" width=\"" + width + "\" height=\"" + height + "\" fill=\"url(#grid)\"/>\n");
+    }
+
+    /**
+     * Writes a single node with the same layout as {@link Node#draw(Graphics2D, boolean, int, int)}.
+     *
+     * @param out        {@link Writer} The destination of the SVG.
+     * @param story      {@link StorySnapshot} The story the node is in.
+     * @param n          <code>int</code> The index of the node.
+     * @param g          {@link Graphics2D} Used to measure the text, with the prompt font set.
+     * @param idDescent  <code>int</code> The descent of the id font.
+     * @param lineHeight <code>int</code> The line height of the prompt font.
+     * @param connector  {@link Color} The colour of the connectors.
+     * @throws IOException if the writer fails.
+     */
+    private static void writeNode(Writer out, StorySnapshot story, int n, Graphics2D g, int idDescent, int lineHeight, Color connector) throws IOException {
+        int x = story.getX(n);
+        int y = story.getY(n);
+        int w = story.getWidth(n);
+        int h = story.getHeight(n);
+        int middle = Node.getConnectorY(y, h);
+
+        out.write("<rect x=\"" + x + "\" y=\"" + y + "\" width=\"" + w + "\" height=\"" + h + "\" rx=\"5\" fill=\"white\"/>");
+        out.write("<path d=\"M" + x + " " + (y + Node.HEADER_HEIGHT) + "h" + w + "M" + x + " " + middle + "h" + w + "\"/>");
+        out.write("<g stroke=\"none\" fill=\"" + rgb(connector) + "\">");
+        out.write("<circle cx=\"" + x + "\" cy=\"" + middle + "\" r=\"" + Node.CONNECTOR_RADIUS + "\"/>");
+        out.write("<circle cx=\"" + (x + w) + "\" cy=\"" + middle + "\" r=\"" + Node.CONNECTOR_RADIUS + "\"/>");
+        out.write("</g>");
+
+        out.write("<g stroke=\"none\" fill=\"black\">");
+        out.write("<text x=\"" + (x + 3) + "\" y=\"" + (y + Node.HEADER_HEIGHT - idDescent) + "\" font-size=\"" + ID_FONT_SIZE + "\">" + escape(story.getId(n)) + "</text>");
+        writeLines(out, story.getPrompt(n), x + 3, y + Node.HEADER_HEIGHT + lineHeight, w, lineHeight, g);
+        writeLines(out, story.getResponse(n), x + 3, middle + lineHeight, w, lineHeight, g);
+        out.write("</g>\n");
+    }
+
+    /**
+     * Wraps the text to the inner width of the node and writes the lines as a single text element.
+     */
+    private static void writeLines(Writer out, String text, int x, int y, int width, int lineHeight, Graphics2D g) throws IOException {
+        if (text == null || text.isEmpty()) return;
+
+        String[] lines = DrawUtils.wrapLines(text, width - 6, g);
+        out.write("<text>");
+        for (int i = 0; i < lines.length && i < Node.MAX_LINES; i++) {
+            out.write("<tspan x=\"" + x + "\" y=\"" + (y + i * lineHeight) + "\">" + escape(lines[i]) + "</tspan>");
+        }
+        out.write("</text>");
+    }
+
+    /**
+     * @param c {@link Color} The colour.
+     * @return {@link String} The colour as a hex string.
+     */
+    private static String rgb(Color c) {
+        return String.format("#%06x", c.getRGB() & 0xFFFFFF);
+    }
+
+    /**
+     * Escapes the text for use in XML content or an attribute, dropping any characters XML cannot contain.
+     *
+     * @param s {@link String} The raw text.
+     * @return {@link String} The escaped text.
+     */
+    private static String escape(String s) {
+        if (s == null) return "";
+
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '&':
+                    sb.append("&amp;");
+                    break;
+                case '<':
+                    sb.append("&lt;");
+                    break;
+                case '>':
+                    sb.append("&gt;");
+                    break;
+                case '"':
+                    sb.append("&quot;");
+                    break;
+                default:
+                    if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+                        if (c < 0xFFFE && (!Character.isSurrogate(c) || isPaired(s, i))) sb.append(c);
+                    }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param s {@link String} The text.
+     * @param i <code>int</code> The position of a surrogate.
+     * @return <code>boolean</code> If the surrogate is part of a valid pair.
+     */
+    private static boolean isPaired(String s, int i) {
+        char c = s.charAt(i);
+        if (Character.isHighSurrogate(c)) return i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1));
+        return i > 0 && Character.isHighSurrogate(s.charAt(i - 1));
+    }
+}
@@ -0,0 +1,437 @@
+package com.github.vitineth.branch.program.layout;
+
+import com.github.vitineth.branch.program.node.StorySnapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+
+/**
+ * A force directed layout of a story that is run one step at a time so it can be animated. Every node pushes every
+ * other node away, connected nodes pull each other together whichever way the connection goes and a weak pull towards
+ * the middle keeps separate parts of the story from drifting apart. How far a node can move in a step starts high and
+ * cools down each step until the layout settles.
+ * <p/>
+ * The push of every node on every other would take time quadratic in the number of nodes, so the nodes are put into a
+ * Barnes-Hut quadtree each step and the nodes in any square that is small compared to its distance are treated as a
+ * single node at their centre of mass. The forces on each node only read the positions from the last step, so the
+ * nodes are split into chunks worked on in parallel. Positions are the centres of the nodes and are kept in
+ * <code>double</code> arrays indexed the same way as the {@link StorySnapshot} the layout was made from.
+ * <p/>
+ * A layout must only be used by one thread at a time, although that thread can change from step to step.
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public class ForceLayout {
+
+    /**
+     * The distance connected nodes settle at when nothing else is pushing on them.
+     */
+    private static final double IDEAL = 300;
+    /**
+     * The size of a square over its distance below which its nodes are treated as one. Below
+     * <code>1 / sqrt(2)</code> a square is never close enough to be treated as one by a node inside it.
+     */
+    private static final double THETA = 0.7;
+    /**
+     * The most nodes kept in a square before it is split.
+     */
+    private static final int LEAF_SIZE = 8;
+    /**
+     * The deepest a square is split, so nodes on top of each other still end up in a leaf.
+     */
+    private static final int MAX_DEPTH = 24;
+    /**
+     * The strength of the pull towards the middle, chosen so the nodes settle at about {@link #IDEAL} apart.
+     */
+    private static final double GRAVITY = 1;
+    /**
+     * How much the furthest a node can move shrinks each step.
+     */
+    private static final double COOLING = 0.97;
+    /**
+     * The movement in pixels below which the layout is settled.
+     */
+    private static final double SETTLED = 1;
+    /**
+     * The number of nodes in each chunk worked on in parallel.
+     */
+    private static final int CHUNK = 512;
+
+    /**
+     * The pool the chunks of each step are worked on.
+     */
+    private final ForkJoinPool pool;
+    /**
+     * The number of nodes.
+     */
+    private final int size;
+    /**
+     * The centre of each node.
+     */
+    private final double[] x, y;
+    /**
+     * Half of the width and height of each node, to turn centres into locations.
+     */
+    private final double[] halfWidth, halfHeight;
+    /**
+     * The force on each node in the current step.
+     */
+    private final double[] forceX, forceY;
+    /**
+     * The nodes connected to each node in either direction, from <code>adjacentStart[i]</code> up to
+     * <code>adjacentStart[i + 1]</code>.
+     */
+    private final int[] adjacent, adjacentStart;
+    /**
+     * If each node is kept where it is.
+     */
+    private final boolean[] fixed;
+    /**
+     * The furthest a node can move in the next step.
+     */
+    private double temperature = IDEAL;
+    /**
+     * The furthest any node moved in the last step.
+     */
+    private double movement = Double.MAX_VALUE;
+
+    /**
+     * The nodes in tree order, each square of the tree covering a range of them.
+     */
+    private final int[] order;
+    /**
+     * Scratch space for splitting a range of {@link #order} into quadrants.
+     */
+    private final int[] scratch;
+    /**
+     * The range of {@link #order} covered by each square, from <code>first</code> up to <code>last</code>.
+     */
+    private int[] first = new int[64], last = new int[64];
+    /**
+     * The four children of each square, or <code>-1</code> where there are none. The first child of a leaf is
+     * <code>-2</code>.
+     */
+    private int[] children = new int[256];
+    /**
+     * The centre of mass of each square.
+     */
+    private double[] massX = new double[64], massY = new double[64];
+    /**
+     * The width of each square.
+     */
+    private double[] extent = new double[64];
+    /**
+     * The number of squares in the tree.
+     */
+    private int squares;
+
+    /**
+     * @param story {@link StorySnapshot} The story to lay out, starting from its current locations.
+     * @param pool  {@link ForkJoinPool} The pool the chunks of each step are worked on.
+     */
+    public ForceLayout(StorySnapshot story, ForkJoinPool pool) {
+        this.pool = pool;
+        this.size = story.size();
+        this.x = new double[size];
+        this.y = new double[size];
+        this.halfWidth = new double[size];
+        this.halfHeight = new double[size];
+        this.forceX = new double[size];
+        this.forceY = new double[size];
+        this.fixed = new boolean[size];
+        this.order = new int[size];
+        this.scratch = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            halfWidth[i] = story.getWidth(i) / 2d;
+            halfHeight[i] = story.getHeight(i) / 2d;
+            x[i] = story.getX(i) + halfWidth[i];
+            y[i] = story.getY(i) + halfHeight[i];
+        }
+
+        adjacentStart = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            for (int c = 0; c < story.connectionCount(i); c++) {
+                int j = story.getConnection(i, c);
+                if (j == i) continue;
+                adjacentStart[i + 1]++;
+                adjacentStart[j + 1]++;
+            }
+        }
+        for (int i = 0; i < size; i++) adjacentStart[i + 1] += adjacentStart[i];
+        adjacent = new int[adjacentStart[size]];
+        int[] fill = Arrays.copyOf(adjacentStart, size);
+        for (int i = 0; i < size; i++) {
+            for (int c = 0; c < story.connectionCount(i); c++) {
+                int j = story.getConnection(i, c);
+                if (j == i) continue;
+                adjacent[fill[i]++] = j;
+                adjacent[fill[j]++] = i;
+            }
+        }
+    }
+
+    /**
+     * @return <code>int</code> The number of nodes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param node <code>int</code> The index of the node.
+     * @return <code>int</code> The x location of the node.
+     */
+    public int getX(int node) {
+        return (int) Math.round(x[node] - halfWidth[node]);
+    }
+
+    /**
+     * @param node <code>int</code> The index of the node.
+     * @return <code>int</code> The y location of the node.
+     */
+    public int getY(int node) {
+        return (int) Math.round(y[node] - halfHeight[node]);
+    }
+
+    /**
+     * @param node  <code>int</code> The index of the node.
+     * @param fixed <code>boolean</code> If the node should be kept where it is. Fixed nodes still push and pull the
+     *              others.
+     */
+    public void setFixed(int node, boolean fixed) {
+        this.fixed[node] = fixed;
+    }
+
+    /**
+     * Moves a node, such as a fixed node that has been dragged somewhere else.
+     *
+     * @param node <code>int</code> The index of the node.
+     * @param x    <code>int</code> The new x location.
+     * @param y    <code>int</code> The new y location.
+     */
+    public void moveTo(int node, int x, int y) {
+        this.x[node] = x + halfWidth[node];
+        this.y[node] = y + halfHeight[node];
+    }
+
+    /**
+     * @return <code>boolean</code> If no node moved by more than a pixel in the last step.
+     */
+    public boolean isSettled() {
+        return movement < SETTLED;
+    }
+
+    /**
+     * Moves every node that is not fixed along the force on it, by no more than the current temperature, and cools
+     * the temperature down.
+     *
+     * @return <code>double</code> The furthest any node moved.
+     */
+    public double step() {
+        if (size == 0) return movement = 0;
+
+        buildTree();
+        double step = temperature;
+        double centreX = massX[0];
+        double centreY = massY[0];
+        int chunks = (size + CHUNK - 1) / CHUNK;
+        inParallel(chunks, c -> {
+            int[] stack = new int[4 * MAX_DEPTH + 4];
+            for (int i = c * CHUNK; i < Math.min(size, (c + 1) * CHUNK); i++) {
+                if (!fixed[i]) force(i, stack, centreX, centreY);
+            }
+        });
+
+        double[] moved = new double[chunks];
+        inParallel(chunks, c -> {
+            double most = 0;
+            for (int i = c * CHUNK; i < Math.min(size, (c + 1) * CHUNK); i++) {
+                if (fixed[i]) continue;
+                double length = Math.sqrt(forceX[i] * forceX[i] + forceY[i] * forceY[i]);
+                if (length == 0) continue;
+                double scale = Math.min(length, step) / length;
+                x[i] += forceX[i] * scale;
+                y[i] += forceY[i] * scale;
+                most = Math.max(most, length * scale);
+            }
+            moved[c] = most;
+        });
+
+        temperature *= COOLING;
+        movement = 0;
+        for (double m : moved) movement = Math.max(movement, m);
+        return movement;
+    }
+
+    /**
+     * Adds up the force on a node: the push of every other node, approximated by the tree, the pull of its
+     * connections and the pull towards the middle.
+     *
+     * @param i       <code>int</code> The index of the node.
+     * @param stack   <code>int[]</code> Scratch space for walking the tree.
+     * @param centreX <code>double</code> The x of the centre of mass of every node.
+     * @param centreY <code>double</code> The y of the centre of mass of every node.
+     */
+    private void force(int i, int[] stack, double centreX, double centreY) {
+        double fx = 0;
+        double fy = 0;
+        double k2 = IDEAL * IDEAL;
+
+        int depth = 0;
+        stack[depth++] = 0;
+        while (depth > 0) {
+            int s = stack[--depth];
+            double dx = x[i] - massX[s];
+            double dy = y[i] - massY[s];
+            double d2 = dx * dx + dy * dy;
+
+            if (children[4 * s] == -2) {
+                for (int p = first[s]; p < last[s]; p++) {
+                    int j = order[p];
+                    if (j == i) continue;
+                    double ex = x[i] - x[j];
+                    double ey = y[i] - y[j];
+                    double e2 = ex * ex + ey * ey;
+                    if (e2 < 1e-4) {
+                        ex = i < j ? -0.01 : 0.01;
+                        ey = (i ^ j) % 2 == 0 ? 0.01 : -0.01;
+                        e2 = 2e-4;
+                    }
+                    fx += ex * k2 / e2;
+                    fy += ey * k2 / e2;
+                }
+            } else if (extent[s] * extent[s] < THETA * THETA * d2) {
+                double mass = last[s] - first[s];
+                fx += dx * k2 * mass / d2;
+                fy += dy * k2 * mass / d2;
+            } else {
+                for (int q = 0; q < 4; q++) {
+                    if (children[4 * s + q] >= 0) stack[depth++] = children[4 * s + q];
+                }
+            }
+        }
+
+        for (int a = adjacentStart[i]; a < adjacentStart[i + 1]; a++) {
+            int j = adjacent[a];
+            double dx = x[j] - x[i];
+            double dy = y[j] - y[i];
+            double d = Math.sqrt(dx * dx + dy * dy);
+            fx += dx * d / IDEAL;
+            fy += dy * d / IDEAL;
+        }
+
+        forceX[i] = fx - GRAVITY * (x[i] - centreX);
+        forceY[i] = fy - GRAVITY * (y[i] - centreY);
+    }
+
+    /**
+     * Puts every node into a new quadtree covering all of them.
+     */
+    private void buildTree() {
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+
+        double width = Math.max(maxX - minX, maxY - minY) + 1;
+        squares = 0;
+        build(0, size, minX + width / 2, minY + width / 2, width, 0);
+    }
+
+    /**
+     * Adds the square covering a range of {@link #order}, splitting it into quadrants until each has at most
+     * {@link #LEAF_SIZE} nodes.
+     *
+     * @return <code>int</code> The index of the square.
+     */
+    private int build(int from, int to, double cx, double cy, double width, int depth) {
+        int s = squares++;
+        if (s == first.length) {
+            int capacity = s * 2;
+            first = Arrays.copyOf(first, capacity);
+            last = Arrays.copyOf(last, capacity);
+            massX = Arrays.copyOf(massX, capacity);
+            massY = Arrays.copyOf(massY, capacity);
+            extent = Arrays.copyOf(extent, capacity);
+            children = Arrays.copyOf(children, capacity * 4);
+        }
+
+        double sumX = 0, sumY = 0;
+        for (int p = from; p < to; p++) {
+            sumX += x[order[p]];
+            sumY += y[order[p]];
+        }
+        first[s] = from;
+        last[s] = to;
+        massX[s] = sumX / (to - from);
+        massY[s] = sumY / (to - from);
+        extent[s] = width;
+        Arrays.fill(children, 4 * s, 4 * s + 4, -1);
+
+        if (to - from <= LEAF_SIZE || depth == MAX_DEPTH) {
+            children[4 * s] = -2;
+            return s;
+        }
+
+        int[] counts = new int[4];
+        for (int p = from; p < to; p++) counts[quadrant(order[p], cx, cy)]++;
+        int[] starts = new int[5];
+        starts[0] = from;
+        for (int q = 0; q < 4; q++) starts[q + 1] = starts[q] + counts[q];
+        int[] fill = Arrays.copyOf(starts, 4);
+        for (int p = from; p < to; p++) scratch[fill[quadrant(order[p], cx, cy)]++] = order[p];
+        System.arraycopy(scratch, from, order, from, to - from);
+
+        double half = width / 2;
+        for (int q = 0; q < 4; q++) {
+            if (counts[q] == 0) continue;
+            double qx = cx + ((q & 1) == 0 ? -half / 2 : half / 2);
+            double qy = cy + ((q & 2) == 0 ? -half / 2 : half / 2);
+            int child = build(starts[q], starts[q + 1], qx, qy, half, depth + 1);
+            children[4 * s + q] = child;
+        }
+        return s;
+    }
+
+    /**
+     * @return <code>int</code> The quadrant of the node around the given centre: 1 if it is right of it, plus 2 if it
+     * is below it.
+     */
+    private int quadrant(int i, double cx, double cy) {
+        return (x[i] >= cx ? 1 : 0) | (y[i] >= cy ? 2 : 0);
+    }
+
+    /**
+     * Runs the action for every chunk on the {@link #pool} and waits for them all to finish.
+     *
+     * @param count  <code>int</code> The number of chunks.
+     * @param action {@link IntConsumer} The action, which must be safe to run for different chunks at once.
+     */
+    private void inParallel(int count, IntConsumer action) {
+        if (count <= 1) {
+            for (int i = 0; i < count; i++) action.accept(i);
+            return;
+        }
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            tasks.add(pool.submit(() -> action.accept(index)));
+        }
+        for (ForkJoinTask<?> task : tasks) task.join();
+    }
+}
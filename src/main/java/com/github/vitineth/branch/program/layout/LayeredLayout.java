@@ -0,0 +1,687 @@
+package com.github.vitineth.branch.program.layout;
+
+import com.github.vitineth.branch.program.node.StorySnapshot;
+import com.github.vitineth.branch.program.passbacks.ProgressPassback;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+
+/**
+ * A layered (Sugiyama) layout of a story, running from left to right in the same direction as the connections are
+ * drawn. The layout is made in four steps:
+ * <ol>
+ * <li>Cycles are broken by reversing every connection that leads back to a node still being explored by a depth first
+ * search from the starting nodes.</li>
+ * <li>Each node is put in the column one after the furthest of the nodes connecting to it, then nodes nothing
+ * connects to are moved up to just before the first node they connect to. Connections spanning more than one column
+ * are split by a point in each column they cross.</li>
+ * <li>The order of each column is improved by sorting it by the average position of its neighbours, sweeping forwards
+ * and then backwards. The columns are cut into one run for each thread of the pool and every run is swept at the same
+ * time, keeping the columns at the cuts fixed. Every other sweep moves the cuts by half a run so changes can cross
+ * them. The order with the fewest crossings is kept.</li>
+ * <li>Each column is placed as close to the average height of its neighbours as it can be without changing its order
+ * or overlapping, sweeping over the same runs.</li>
+ * </ol>
+ * The improvement steps run until they stop getting better or the time budget runs out, so the time taken for a story
+ * of any size is bounded by the budget and the linear cost of the other steps.
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public class LayeredLayout {
+
+    /**
+     * The default time budget in milliseconds.
+     */
+    public static final long DEFAULT_BUDGET = 3000;
+    /**
+     * The distance of the first column and the highest node from the origin.
+     */
+    private static final int MARGIN = 30;
+    /**
+     * The horizontal gap between columns.
+     */
+    private static final int COLUMN_GAP = 80;
+    /**
+     * The vertical gap below each node.
+     */
+    private static final int NODE_GAP = 30;
+    /**
+     * The vertical gap below each point of a connection spanning more than one column.
+     */
+    private static final int POINT_GAP = 10;
+    /**
+     * The number of points allowed for each node. Connections spanning the most columns are left out of the ordering
+     * once the points run out so a few very long connections cannot make the layout quadratic.
+     */
+    private static final int POINTS_PER_NODE = 32;
+    /**
+     * The most ordering or placement iterations that are run, however much budget is left.
+     */
+    private static final int MAX_ITERATIONS = 64;
+    /**
+     * The fewest columns in each run swept by a single thread.
+     */
+    private static final int MIN_RUN = 16;
+    /**
+     * The number of ordering iterations without fewer crossings after which ordering stops.
+     */
+    private static final int PATIENCE = 6;
+    /**
+     * The share of the budget given to ordering, the rest being left for placement.
+     */
+    private static final double ORDER_SHARE = 0.75;
+
+    /**
+     * The story being laid out.
+     */
+    private final StorySnapshot story;
+    /**
+     * The pool the columns of each phase are worked on.
+     */
+    private final ForkJoinPool pool;
+    /**
+     * The new x location of each node by index.
+     */
+    private final int[] x;
+    /**
+     * The new y location of each node by index.
+     */
+    private final int[] y;
+    /**
+     * The number of crossings between columns in the final order.
+     */
+    private long crossings;
+
+    /**
+     * The number of nodes and points.
+     */
+    private int vertices;
+    /**
+     * The column of each node and point. Nodes come first, in the same order as the story.
+     */
+    private int[] column;
+    /**
+     * The nodes and points of each column in order.
+     */
+    private int[][] columns;
+    /**
+     * The position of each node and point in its column.
+     */
+    private int[] position;
+    /**
+     * The neighbours of each node and point in the column before it, from <code>leftStart[v]</code> up to
+     * <code>leftStart[v + 1]</code>.
+     */
+    private int[] left, leftStart;
+    /**
+     * The neighbours of each node and point in the column after it, from <code>rightStart[v]</code> up to
+     * <code>rightStart[v + 1]</code>.
+     */
+    private int[] right, rightStart;
+
+    /**
+     * @param story {@link StorySnapshot} The story being laid out.
+     * @param pool  {@link ForkJoinPool} The pool the columns of each phase are worked on.
+     */
+    private LayeredLayout(StorySnapshot story, ForkJoinPool pool) {
+        this.story = story;
+        this.pool = pool;
+        this.x = new int[story.size()];
+        this.y = new int[story.size()];
+    }
+
+    /**
+     * Lays out the story on the common pool.
+     *
+     * @param story    {@link StorySnapshot} The story to lay out.
+     * @param budget   <code>long</code> Roughly how long to spend improving the layout in milliseconds.
+     * @param progress {@link ProgressPassback} Told how far through the layout is.
+     * @return {@link LayeredLayout} The new location of every node.
+     */
+    public static LayeredLayout layout(StorySnapshot story, long budget, ProgressPassback progress) {
+        return layout(story, budget, ForkJoinPool.commonPool(), progress);
+    }
+
+    /**
+     * Lays out the story.
+     *
+     * @param story    {@link StorySnapshot} The story to lay out.
+     * @param budget   <code>long</code> Roughly how long to spend improving the layout in milliseconds.
+     * @param pool     {@link ForkJoinPool} The pool the columns of each phase are worked on.
+     * @param progress {@link ProgressPassback} Told how far through the layout is.
+     * @return {@link LayeredLayout} The new location of every node.
+     */
+    public static LayeredLayout layout(StorySnapshot story, long budget, ForkJoinPool pool, ProgressPassback progress) {
+        LayeredLayout layout = new LayeredLayout(story, pool);
+        if (story.size() > 0) layout.run(budget, progress);
+        return layout;
+    }
+
+    /**
+     * @param node <code>int</code> The index of the node in the story.
+     * @return <code>int</code> The new x location of the node.
+     */
+    public int getX(int node) {
+        return x[node];
+    }
+
+    /**
+     * @param node <code>int</code> The index of the node in the story.
+     * @return <code>int</code> The new y location of the node.
+     */
+    public int getY(int node) {
+        return y[node];
+    }
+
+    /**
+     * @return <code>long</code> The number of times connections cross between columns, counting the connections that
+     * were left out of the ordering as if they did not exist.
+     */
+    public long getCrossings() {
+        return crossings;
+    }
+
+    /**
+     * Runs every step of the layout.
+     */
+    private void run(long budget, ProgressPassback progress) {
+        long start = System.nanoTime();
+        long nanos = Math.max(0, budget) * 1_000_000L;
+
+        int[][] edges = breakCycles();
+        int[] layers = assignColumns(edges[0], edges[1], edges[2][0]);
+        split(edges[0], edges[1], edges[2][0], layers);
+        progress.progress(0.1);
+
+        order(start + (long) (nanos * ORDER_SHARE), progress);
+        place(start + nanos, progress);
+        progress.progress(1);
+    }
+
+    /**
+     * Explores the story depth first from the nodes nothing connects to, and then from any node not yet reached,
+     * reversing each connection back to a node still being explored. Self connections are left out.
+     *
+     * @return <code>int[][]</code> The origins and destinations of the connections once the cycles are broken,
+     * followed by an array holding their count.
+     */
+    private int[][] breakCycles() {
+        int n = story.size();
+        int[] incoming = new int[n];
+        for (int v = 0; v < n; v++) {
+            for (int c = 0; c < story.connectionCount(v); c++) incoming[story.getConnection(v, c)]++;
+        }
+
+        int[] from = new int[story.connectionCount()];
+        int[] to = new int[from.length];
+        int count = 0;
+
+        byte[] state = new byte[n];
+        int[] stack = new int[n];
+        int[] next = new int[n];
+        for (int pass = 0; pass < 2; pass++) {
+            for (int s = 0; s < n; s++) {
+                if (state[s] != 0 || (pass == 0 && incoming[s] != 0)) continue;
+
+                int depth = 0;
+                stack[depth++] = s;
+                state[s] = 1;
+                while (depth > 0) {
+                    int v = stack[depth - 1];
+                    if (next[v] == story.connectionCount(v)) {
+                        state[v] = 2;
+                        depth--;
+                        continue;
+                    }
+
+                    int w = story.getConnection(v, next[v]++);
+                    if (w == v) continue;
+                    if (state[w] == 1) {
+                        from[count] = w;
+                        to[count++] = v;
+                        continue;
+                    }
+
+                    from[count] = v;
+                    to[count++] = w;
+                    if (state[w] == 0) {
+                        state[w] = 1;
+                        stack[depth++] = w;
+                    }
+                }
+            }
+        }
+        return new int[][]{from, to, {count}};
+    }
+
+    /**
+     * Puts every node in the column after the furthest node connecting to it, then moves the nodes nothing connects
+     * to up to the column before the first node they connect to.
+     *
+     * @return <code>int[]</code> The column of each node.
+     */
+    private int[] assignColumns(int[] from, int[] to, int count) {
+        int n = story.size();
+        int[] outStart = new int[n + 1];
+        int[] incoming = new int[n];
+        for (int e = 0; e < count; e++) {
+            outStart[from[e] + 1]++;
+            incoming[to[e]]++;
+        }
+        for (int v = 0; v < n; v++) outStart[v + 1] += outStart[v];
+        int[] out = new int[count];
+        int[] fill = Arrays.copyOf(outStart, n);
+        for (int e = 0; e < count; e++) out[fill[from[e]]++] = to[e];
+
+        int[] layer = new int[n];
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+        int[] remaining = Arrays.copyOf(incoming, n);
+        for (int v = 0; v < n; v++) if (remaining[v] == 0) queue[tail++] = v;
+        while (head < tail) {
+            int v = queue[head++];
+            for (int i = outStart[v]; i < outStart[v + 1]; i++) {
+                int w = out[i];
+                layer[w] = Math.max(layer[w], layer[v] + 1);
+                if (--remaining[w] == 0) queue[tail++] = w;
+            }
+        }
+
+        for (int v = 0; v < n; v++) {
+            if (incoming[v] != 0 || outStart[v] == outStart[v + 1]) continue;
+            int first = Integer.MAX_VALUE;
+            for (int i = outStart[v]; i < outStart[v + 1]; i++) first = Math.min(first, layer[out[i]]);
+            layer[v] = first - 1;
+        }
+        return layer;
+    }
+
+    /**
+     * Splits every connection spanning more than one column with a point in each column it crosses, builds the
+     * neighbours of every node and point and puts each column in its starting order. The first column keeps the
+     * order the nodes are in on the canvas from top to bottom and each later column is sorted once by the average
+     * position of its neighbours in the column before.
+     */
+    private void split(int[] from, int[] to, int count, int[] layer) {
+        int n = story.size();
+
+        long[] spans = new long[count];
+        long points = 0;
+        for (int e = 0; e < count; e++) {
+            int span = layer[to[e]] - layer[from[e]];
+            spans[e] = (long) span << 32 | e;
+            points += span - 1;
+        }
+        long limit = Math.max(1 << 16, (long) n * POINTS_PER_NODE);
+        int kept = count;
+        if (points > limit) {
+            Arrays.sort(spans);
+            points = 0;
+            for (kept = 0; kept < count; kept++) {
+                int span = (int) (spans[kept] >>> 32);
+                if (points + span - 1 > limit) break;
+                points += span - 1;
+            }
+        }
+
+        vertices = n + (int) points;
+        column = Arrays.copyOf(layer, vertices);
+        int segments = 0;
+        for (int k = 0; k < kept; k++) segments += (int) (spans[k] >>> 32);
+        int[] segmentFrom = new int[segments];
+        int[] segmentTo = new int[segments];
+        int point = n, segment = 0;
+        for (int k = 0; k < kept; k++) {
+            int e = (int) spans[k];
+            int previous = from[e];
+            for (int c = layer[from[e]] + 1; c < layer[to[e]]; c++) {
+                column[point] = c;
+                segmentFrom[segment] = previous;
+                segmentTo[segment++] = point;
+                previous = point++;
+            }
+            segmentFrom[segment] = previous;
+            segmentTo[segment++] = to[e];
+        }
+
+        leftStart = new int[vertices + 1];
+        rightStart = new int[vertices + 1];
+        for (int s = 0; s < segments; s++) {
+            rightStart[segmentFrom[s] + 1]++;
+            leftStart[segmentTo[s] + 1]++;
+        }
+        for (int v = 0; v < vertices; v++) {
+            rightStart[v + 1] += rightStart[v];
+            leftStart[v + 1] += leftStart[v];
+        }
+        left = new int[segments];
+        right = new int[segments];
+        int[] leftFill = Arrays.copyOf(leftStart, vertices);
+        int[] rightFill = Arrays.copyOf(rightStart, vertices);
+        for (int s = 0; s < segments; s++) {
+            right[rightFill[segmentFrom[s]]++] = segmentTo[s];
+            left[leftFill[segmentTo[s]]++] = segmentFrom[s];
+        }
+
+        int depth = 0;
+        for (int v = 0; v < vertices; v++) depth = Math.max(depth, column[v] + 1);
+        int[] sizes = new int[depth];
+        for (int v = 0; v < vertices; v++) sizes[column[v]]++;
+        columns = new int[depth][];
+        for (int c = 0; c < depth; c++) columns[c] = new int[sizes[c]];
+        Arrays.fill(sizes, 0);
+        position = new int[vertices];
+
+        long[] keys = new long[columns.length == 0 ? 0 : columns[0].length];
+        int first = 0;
+        for (int v = 0; v < n; v++) if (column[v] == 0) keys[first++] = (long) story.getY(v) << 32 | v;
+        Arrays.sort(keys);
+        for (int i = 0; i < keys.length; i++) {
+            int v = (int) keys[i];
+            columns[0][i] = v;
+            position[v] = i;
+        }
+        for (int v = 0; v < vertices; v++) {
+            if (column[v] == 0) continue;
+            position[v] = sizes[column[v]]++;
+            columns[column[v]][position[v]] = v;
+        }
+        for (int c = 1; c < depth; c++) sortColumn(c, true, false);
+    }
+
+    /**
+     * Sweeps the columns forwards and backwards, sorting each by the average position of its neighbours, until the
+     * number of crossings stops going down or the deadline passes. The order with the fewest crossings is kept.
+     *
+     * @param deadline <code>long</code> The {@link System#nanoTime()} to stop by.
+     * @param progress {@link ProgressPassback} Told how far through the layout is.
+     */
+    private void order(long deadline, ProgressPassback progress) {
+        long begun = System.nanoTime();
+        long best = countCrossings();
+        int[][] bestOrder = copyColumns();
+
+        int run = runLength();
+        int stale = 0;
+        for (int i = 0; i < MAX_ITERATIONS && stale < PATIENCE && best > 0 && System.nanoTime() < deadline; i++) {
+            sweep(run, run < columns.length && i % 2 == 1 ? run / 2 : 0, c -> sortColumn(c, true, false), c -> sortColumn(c, false, true));
+
+            long current = countCrossings();
+            if (current < best) {
+                best = current;
+                bestOrder = copyColumns();
+                stale = 0;
+            } else {
+                stale++;
+            }
+            double spent = (System.nanoTime() - begun) / (double) Math.max(1, deadline - begun);
+            progress.progress(0.1 + 0.6 * Math.min(1, Math.max(spent, (i + 1) / (double) MAX_ITERATIONS)));
+        }
+
+        columns = bestOrder;
+        for (int[] c : columns) {
+            for (int i = 0; i < c.length; i++) position[c[i]] = i;
+        }
+        crossings = best;
+    }
+
+    /**
+     * @return <code>int</code> The number of columns in each run, splitting them between the threads of the pool.
+     */
+    private int runLength() {
+        int runs = Math.max(1, Math.min(pool.getParallelism(), columns.length / MIN_RUN));
+        return (columns.length + runs - 1) / runs;
+    }
+
+    /**
+     * Cuts the columns into runs and sweeps every run forwards and then backwards at the same time. The columns at the
+     * cuts are left as they are so no two runs touch the same column, and each run only reads the cut columns at its
+     * ends.
+     *
+     * @param run      <code>int</code> The number of columns between cuts.
+     * @param shift    <code>int</code> The column of the first cut, or 0 for the first cut to be at <code>run</code>.
+     * @param forward  {@link IntConsumer} Called with each column of a run from first to last.
+     * @param backward {@link IntConsumer} Called with each column of a run from last to first.
+     */
+    private void sweep(int run, int shift, IntConsumer forward, IntConsumer backward) {
+        int first = shift == 0 ? run : shift;
+        int cuts = first >= columns.length ? 0 : (columns.length - 1 - first) / run + 1;
+        inParallel(cuts + 1, k -> {
+            int from = k == 0 ? -1 : first + (k - 1) * run;
+            int to = k == cuts ? columns.length : first + k * run;
+            for (int c = from + 1; c < to; c++) forward.accept(c);
+            for (int c = to - 1; c > from; c--) backward.accept(c);
+        });
+    }
+
+    /**
+     * Sorts a column by the average relative position of the neighbours of each node and point. Anything without
+     * neighbours keeps its own relative position, and ties keep their current order.
+     *
+     * @param c     <code>int</code> The column.
+     * @param lefts <code>boolean</code> If the neighbours in the column before are counted.
+     * @param rights <code>boolean</code> If the neighbours in the column after are counted.
+     */
+    private void sortColumn(int c, boolean lefts, boolean rights) {
+        int[] order = columns[c];
+        double leftSize = c > 0 ? columns[c - 1].length : 1;
+        double rightSize = c + 1 < columns.length ? columns[c + 1].length : 1;
+
+        long[] keys = new long[order.length];
+        for (int i = 0; i < order.length; i++) {
+            int v = order[i];
+            double sum = 0;
+            int count = 0;
+            if (lefts) {
+                for (int j = leftStart[v]; j < leftStart[v + 1]; j++) sum += (position[left[j]] + 0.5) / leftSize;
+                count += leftStart[v + 1] - leftStart[v];
+            }
+            if (rights) {
+                for (int j = rightStart[v]; j < rightStart[v + 1]; j++) sum += (position[right[j]] + 0.5) / rightSize;
+                count += rightStart[v + 1] - rightStart[v];
+            }
+            double centre = count == 0 ? (i + 0.5) / order.length : sum / count;
+            keys[i] = (long) (centre * (1 << 30)) << 32 | i;
+        }
+        Arrays.sort(keys);
+
+        int[] sorted = new int[order.length];
+        for (int i = 0; i < keys.length; i++) {
+            int v = order[(int) keys[i]];
+            sorted[i] = v;
+            position[v] = i;
+        }
+        columns[c] = sorted;
+    }
+
+    /**
+     * @return <code>long</code> The number of crossings between every pair of columns, counted in parallel.
+     */
+    private long countCrossings() {
+        long[] counts = new long[Math.max(0, columns.length - 1)];
+        inParallel(counts.length, c -> counts[c] = countCrossings(c));
+        long total = 0;
+        for (long count : counts) total += count;
+        return total;
+    }
+
+    /**
+     * Counts the crossings between a column and the next by listing the positions the connections reach in the next
+     * column in the order they leave the first, and counting the pairs that are out of order with a Fenwick tree.
+     *
+     * @param c <code>int</code> The first column.
+     * @return <code>long</code> The number of crossings.
+     */
+    private long countCrossings(int c) {
+        int[] order = columns[c];
+        int size = columns[c + 1].length;
+        int[] tree = new int[size + 1];
+        int[] targets = new int[16];
+
+        long count = 0;
+        int inserted = 0;
+        for (int v : order) {
+            int degree = rightStart[v + 1] - rightStart[v];
+            if (degree > targets.length) targets = new int[Math.max(degree, targets.length * 2)];
+            for (int j = 0; j < degree; j++) targets[j] = position[right[rightStart[v] + j]];
+            Arrays.sort(targets, 0, degree);
+
+            for (int j = 0; j < degree; j++) {
+                int p = targets[j] + 1;
+                int before = 0;
+                for (int i = p; i > 0; i -= i & -i) before += tree[i];
+                count += inserted - before;
+                for (int i = p; i <= size; i += i & -i) tree[i]++;
+                inserted++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return <code>int[][]</code> A copy of the order of every column.
+     */
+    private int[][] copyColumns() {
+        int[][] copy = new int[columns.length][];
+        for (int c = 0; c < columns.length; c++) copy[c] = columns[c].clone();
+        return copy;
+    }
+
+    /**
+     * Places the columns side by side and moves each node and point as close to the average connector height of its
+     * neighbours as it can go without overlapping, sweeping forwards and backwards over the same runs as the ordering,
+     * until nothing moves by more than a pixel or the deadline passes. Every pass can only bring connected nodes closer together overall so the
+     * placement settles rather than wanders.
+     *
+     * @param deadline <code>long</code> The {@link System#nanoTime()} to stop by.
+     * @param progress {@link ProgressPassback} Told how far through the layout is.
+     */
+    private void place(long deadline, ProgressPassback progress) {
+        int n = story.size();
+        int[] height = new int[vertices];
+        int[] connector = new int[vertices];
+        int[] gap = new int[vertices];
+        Arrays.fill(gap, POINT_GAP);
+        for (int v = 0; v < n; v++) {
+            height[v] = story.getHeight(v);
+            connector[v] = story.getConnectorY(v) - story.getY(v);
+            gap[v] = NODE_GAP;
+        }
+
+        double[] top = new double[vertices];
+        for (int[] c : columns) {
+            double cursor = 0;
+            for (int v : c) {
+                top[v] = cursor;
+                cursor += height[v] + gap[v];
+            }
+        }
+
+        double[] moved = new double[columns.length];
+        IntConsumer placer = c -> moved[c] = Math.max(moved[c], placeColumn(columns[c], top, height, connector, gap));
+        int run = runLength();
+        for (int i = 0; i < MAX_ITERATIONS && (i == 0 || System.nanoTime() < deadline); i++) {
+            Arrays.fill(moved, 0);
+            sweep(run, run < columns.length && i % 2 == 1 ? run / 2 : 0, placer, placer);
+            progress.progress(0.7 + 0.3 * (i + 1) / MAX_ITERATIONS);
+
+            double most = 0;
+            for (double m : moved) most = Math.max(most, m);
+            if (most < 1) break;
+        }
+
+        int[] columnX = new int[columns.length];
+        int cursor = MARGIN;
+        for (int c = 0; c < columns.length; c++) {
+            int width = 0;
+            for (int v : columns[c]) if (v < n) width = Math.max(width, story.getWidth(v));
+            columnX[c] = cursor;
+            cursor += width + COLUMN_GAP;
+        }
+
+        double highest = Double.MAX_VALUE;
+        for (int v = 0; v < n; v++) highest = Math.min(highest, top[v]);
+        for (int v = 0; v < n; v++) {
+            x[v] = columnX[column[v]];
+            y[v] = (int) Math.round(top[v] - highest) + MARGIN;
+        }
+    }
+
+    /**
+     * Moves a column as close to the average connector height of the neighbours of each node and point as it can go
+     * while keeping its order and gaps. This is an isotonic regression, solved by pooling adjacent blocks that would
+     * overlap and moving each block to the average of what its members want.
+     *
+     * @return <code>double</code> The furthest anything in the column moved.
+     */
+    private double placeColumn(int[] order, double[] top, int[] height, int[] connector, int[] gap) {
+        int size = order.length;
+        double[] offset = new double[size];
+        double[] sum = new double[size];
+        int[] count = new int[size];
+        int[] first = new int[size];
+        int blocks = 0;
+
+        double cursor = 0;
+        for (int i = 0; i < size; i++) {
+            int v = order[i];
+            offset[i] = cursor;
+            cursor += height[v] + gap[v];
+
+            double total = 0;
+            int neighbours = leftStart[v + 1] - leftStart[v] + rightStart[v + 1] - rightStart[v];
+            for (int j = leftStart[v]; j < leftStart[v + 1]; j++) total += top[left[j]] + connector[left[j]];
+            for (int j = rightStart[v]; j < rightStart[v + 1]; j++) total += top[right[j]] + connector[right[j]];
+            double wanted = neighbours == 0 ? top[v] : total / neighbours - connector[v];
+
+            sum[blocks] = wanted - offset[i];
+            count[blocks] = 1;
+            first[blocks++] = i;
+            while (blocks > 1 && sum[blocks - 2] / count[blocks - 2] > sum[blocks - 1] / count[blocks - 1]) {
+                sum[blocks - 2] += sum[blocks - 1];
+                count[blocks - 2] += count[blocks - 1];
+                blocks--;
+            }
+        }
+
+        double moved = 0;
+        for (int b = 0; b < blocks; b++) {
+            double base = sum[b] / count[b];
+            int end = b + 1 < blocks ? first[b + 1] : size;
+            for (int i = first[b]; i < end; i++) {
+                double next = base + offset[i];
+                moved = Math.max(moved, Math.abs(next - top[order[i]]));
+                top[order[i]] = next;
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Runs the action for every index on the {@link #pool} and waits for them all to finish.
+     *
+     * @param count  <code>int</code> The number of indexes.
+     * @param action {@link IntConsumer} The action, which must be safe to run for different indexes at once.
+     */
+    private void inParallel(int count, IntConsumer action) {
+        if (count <= 1) {
+            for (int i = 0; i < count; i++) action.accept(i);
+            return;
+        }
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            tasks.add(pool.submit(() -> action.accept(index)));
+        }
+        for (ForkJoinTask<?> task : tasks) task.join();
+    }
+}
@@ -3,9 +3,8 @@ package com.github.vitineth.branch.program.node;
 import com.github.vitineth.branch.program.utils.DrawUtils;
 
 import java.awt.*;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.awt.font.FontRenderContext;
+import java.util.*;
 
 /**
  * An option node.
@@ -22,6 +21,18 @@ public class Node {
      * The default font size.
      */
     private final float BASE_FONT_SIZE = 12;
+    /**
+     * How far the connectors extend past the left and right edges of the node.
+     */
+    public static final int CONNECTOR_RADIUS = 4;
+    /**
+     * The height of the strip at the top of the node holding its id, above the prompt.
+     */
+    public static final int HEADER_HEIGHT = 15;
+    /**
+     * The most lines of the prompt or the response drawn in the node.
+     */
+    public static final int MAX_LINES = 7;
     /**
      * The x location of the node
      */
@@ -38,14 +49,6 @@ public class Node {
      * The height of the node
      */
     private int height = 160;
-    /**
-     * The last supplied draw offset to be applied when a raw x and y value are supplied.
-     */
-    private int ox;
-    /**
-     * The last supplied draw offset to be applied when a raw x and y value are supplied.
-     */
-    private int oy;
     /**
      * The string id of the node
      */
@@ -59,9 +62,67 @@ public class Node {
      */
     private String response;
     /**
-     * All connected nodes.
+     * Java statements run on the story state when a player reaches the node, or <code>null</code> for none.
+     */
+    private String effect;
+    /**
+     * The Java condition on the story state that has to hold for each connection to be chosen, or <code>null</code>
+     * until the first connection has a guard. Connections without an entry can always be chosen.
+     */
+    private Map<Node, String> guards;
+    /**
+     * All connected nodes in the order they were connected.
      */
-    private List<Node> connections = new ArrayList<>();
+    private final Set<Node> connections = new LinkedHashSet<>();
+    /**
+     * All nodes with a connection to this node.
+     */
+    private final Set<Node> incoming = new HashSet<>();
+    /**
+     * The read only view of {@link #connections}.
+     */
+    private final Set<Node> connectionsView = Collections.unmodifiableSet(connections);
+    /**
+     * The read only view of {@link #incoming}.
+     */
+    private final Set<Node> incomingView = Collections.unmodifiableSet(incoming);
+    /**
+     * The handle given to the node by the {@link StoryGraph} it belongs to or -1 if it does not belong to one.
+     */
+    private int handle = -1;
+
+    /**
+     * The font the text layout was last built for or <code>null</code> if it needs to be rebuilt.
+     */
+    private Font layoutFont;
+    /**
+     * The render context the text layout was last built for.
+     */
+    private FontRenderContext layoutContext;
+    /**
+     * The font used for the id, derived from {@link #layoutFont}.
+     */
+    private Font idFont;
+    /**
+     * The font used for the prompt and response, derived from {@link #layoutFont}.
+     */
+    private Font textFont;
+    /**
+     * The descent of the {@link #idFont}.
+     */
+    private int idDescent;
+    /**
+     * The line height of the {@link #textFont}.
+     */
+    private int lineHeight;
+    /**
+     * The wrapped lines of the prompt.
+     */
+    private String[] promptLines;
+    /**
+     * The wrapped lines of the response.
+     */
+    private String[] responseLines;
 
     public Node(int x, int y, String id, String prompt, String response) {
         this.x = x;
@@ -75,90 +136,154 @@ public class Node {
         //Alter coordinates to include offsets.
         int dx = x;
         int dy = y;
-        this.ox = ox;
-        this.oy = oy;
         x = x + ox;
         y = y + oy;
 
+        //Text layout.
+        Font font = g.getFont();
+        FontRenderContext context = g.getFontRenderContext();
+        if (!font.equals(layoutFont) || !context.equals(layoutContext)) layoutText(g, font, context);
+
         //Selection modifier.
         g.setColor(selected ? new Color(230, 230, 255) : Color.WHITE);
-        g.setFont(g.getFont().deriveFont(BASE_FONT_SIZE));
         g.fillRoundRect(x, y, width, height, 10, 10);
 
         //Text details.
         g.setColor(Color.BLACK);
 
         //Text
-        g.drawString(id, x + 3, y + 15 - g.getFontMetrics().getDescent());
-        g.setFont(g.getFont().deriveFont(g.getFont().getSize() - 4f));
-        drawString(getPrompt(), x + 3, y + 15 + g.getFontMetrics().getHeight(), g);
-        drawString(getResponse(), x + 3, ((y + 15 + y + height) / 2) + g.getFontMetrics().getHeight(), g);
+        g.setFont(idFont);
+        g.drawString(id, x + 3, y + HEADER_HEIGHT - idDescent);
+        g.setFont(textFont);
+        drawLines(promptLines, x + 3, y + HEADER_HEIGHT + lineHeight, g);
+        drawLines(responseLines, x + 3, getConnectorY() + lineHeight, g);
+        g.setFont(font);
 
         //Outline color.
         g.setColor(new Color(0, 150, 0));
 
         //Inner lines.
-        g.drawLine(x, y + 15, x + width, y + 15);
-        g.drawLine(x, (y + 15 + y + height) / 2, x + width, (y + 15 + y + height) / 2);
+        g.drawLine(x, y + HEADER_HEIGHT, x + width, y + HEADER_HEIGHT);
+        g.drawLine(x, getConnectorY(), x + width, getConnectorY());
 
         //Outer border.
         g.drawRoundRect(x, y, width, height, 10, 10);
 
         //Node connector.
         g.setColor(g.getColor().darker());
-        g.fillOval(x - 4, ((y + 15 + y + height) / 2) - 4, 8, 8);
-        g.fillOval((x + width) - 4, ((y + 15 + y + height) / 2) - 4, 8, 8);
+        g.fillOval(x - CONNECTOR_RADIUS, getConnectorY() - CONNECTOR_RADIUS, CONNECTOR_RADIUS * 2, CONNECTOR_RADIUS * 2);
+        g.fillOval((x + width) - CONNECTOR_RADIUS, getConnectorY() - CONNECTOR_RADIUS, CONNECTOR_RADIUS * 2, CONNECTOR_RADIUS * 2);
         g.setColor(g.getColor().brighter());
 
-        //Connections.
-        drawConnections(g);
-
         //Reset coordinates.
         x = dx;
         y = dy;
     }
 
     /**
-     * Draws a cyan line between all connected components.
-     * @param g {@link Graphics2D} The graphics object to draw on to.
+     * Derives the fonts from the given base font and wraps the prompt and response to the width of the node. The result
+     * is kept until the text, width, font or render context changes so repainting does not measure any text.
+     * @param g {@link Graphics2D} The graphics object used to measure the text.
+     * @param font {@link Font} The base font of the graphics object.
+     * @param context {@link FontRenderContext} The render context of the graphics object.
      */
-    private void drawConnections(Graphics2D g) {
-        Color c = g.getColor();
-        g.setColor(Color.CYAN);
-        for (Node n : connections) {
-            int ox = n.getX() + n.ox;
-            int oy = n.getY() + n.oy;
-            g.drawLine(x + width, (y + 15 + y + height) / 2,
-                    ox, (oy + 15 + oy + height) / 2);
-        }
-        g.setColor(c);
+    private void layoutText(Graphics2D g, Font font, FontRenderContext context) {
+        idFont = font.deriveFont(BASE_FONT_SIZE);
+        textFont = idFont.deriveFont(idFont.getSize() - 4f);
+        idDescent = g.getFontMetrics(idFont).getDescent();
+        lineHeight = g.getFontMetrics(textFont).getHeight();
+
+        g.setFont(textFont);
+        promptLines = wrapLines(getPrompt(), g);
+        responseLines = wrapLines(getResponse(), g);
+        g.setFont(font);
+
+        layoutFont = font;
+        layoutContext = context;
     }
 
     /**
-     * Draws a given string using line wrapping at the starting x and y on the given {@link Graphics2D} value.
+     * Wraps the given text to the inner width of the node keeping at most {@link #MAX_LINES} lines.
      * @param text {@link String} The raw text.
+     * @param g {@link Graphics2D} The graphics object with the text font set.
+     * @return {@link String}[] The wrapped lines.
+     */
+    private String[] wrapLines(String text, Graphics2D g) {
+        String[] parts = DrawUtils.wrapLines(text, width - 6, g);
+        if (parts.length > MAX_LINES) parts = Arrays.copyOf(parts, MAX_LINES);
+        return parts;
+    }
+
+    /**
+     * Draws the given lines starting at the given x and y on the given {@link Graphics2D} value.
+     * @param lines {@link String}[] The wrapped lines.
      * @param startX <code>int</code> The x location;
      * @param startY <code>int</code> The y location;
      * @param g {@link Graphics2D} The graphics object to draw on to.
      */
-    private void drawString(String text, int startX, int startY, Graphics2D g) {
-        String[] parts = DrawUtils.wrapLines(text, width - ((startX - x) * 2), g);
-        if (parts.length > 7) parts = Arrays.copyOf(parts, 7);
+    private void drawLines(String[] lines, int startX, int startY, Graphics2D g) {
         int y = startY;
-        for (String s : parts) {
+        for (String s : lines) {
             g.drawString(s, startX, y);
-            y += g.getFontMetrics().getHeight();
+            y += lineHeight;
         }
     }
 
     /**
-     * If the given x and y coordinate is within the node. This factors in the last supplied drawing offset.
-     * @param x <code>int</code> The raw x location.
-     * @param y <code>int</code> The raw y location.
+     * Drops the cached text layout so it is rebuilt on the next draw.
+     */
+    private void invalidateLayout() {
+        layoutFont = null;
+    }
+
+    /**
+     * Draws the node as a plain box without any text or connectors. Used when the canvas is zoomed too far out for
+     * the text to be read.
+     * @param g {@link Graphics2D} The graphics object to draw on to.
+     * @param selected <code>boolean</code> If the node is selected.
+     */
+    public void drawSimple(Graphics2D g, boolean selected) {
+        g.setColor(selected ? new Color(230, 230, 255) : Color.WHITE);
+        g.fillRoundRect(x, y, width, height, 10, 10);
+        g.setColor(new Color(0, 150, 0));
+        g.drawRoundRect(x, y, width, height, 10, 10);
+    }
+
+    /**
+     * If the given x and y coordinate is within the node. The point has to be in canvas space so points on the
+     * component have to be passed through the inverse of the canvas offset and zoom first.
+     * @param x <code>int</code> The x location in canvas space.
+     * @param y <code>int</code> The y location in canvas space.
      * @return <code>boolean</code> if the point is contained.
      */
     public boolean contains(int x, int y) {
-        return x > getX() + ox && y > getY() + oy && x < getX() + ox + width && y < getY() + oy + height;
+        return x > getX() && y > getY() && x < getX() + width && y < getY() + height;
+    }
+
+    /**
+     * @return {@link Rectangle} The bounds of the node in canvas space, excluding the connectors which overhang the
+     * sides by up to {@link #CONNECTOR_RADIUS}.
+     */
+    public Rectangle getBounds() {
+        return new Rectangle(x, y, width, height);
+    }
+
+    /**
+     * @return <code>int</code> The y location of both connectors (and so of the ends of every connection) in canvas
+     * space.
+     */
+    public int getConnectorY() {
+        return getConnectorY(y, height);
+    }
+
+    /**
+     * @param y      <code>int</code> The y location of a node.
+     * @param height <code>int</code> The height of the node.
+     * @return <code>int</code> The y location of both connectors of the node, halfway between the bottom of the
+     * header and the bottom of the node, which is also where the prompt ends and the response starts.
+     */
+    public static int getConnectorY(int y, int height) {
+        return (y + HEADER_HEIGHT + y + height) / 2;
     }
 
     public int getX() {
@@ -191,6 +316,7 @@ public class Node {
 
     public void setPrompt(String prompt) {
         this.prompt = prompt;
+        invalidateLayout();
     }
 
     public String getResponse() {
@@ -199,6 +325,24 @@ public class Node {
 
     public void setResponse(String response) {
         this.response = response;
+        invalidateLayout();
+    }
+
+    public String getEffect() {
+        return effect;
+    }
+
+    public void setEffect(String effect) {
+        this.effect = effect;
+    }
+
+    /**
+     * @param to {@link Node} The destination of a connection from this node.
+     * @return {@link String} The guard of the connection or <code>null</code> if it has none. Guards are changed
+     * through {@link StoryGraph#setGuard(Node, Node, String)}.
+     */
+    public String getGuard(Node to) {
+        return guards == null ? null : guards.get(to);
     }
 
     public int getWidth() {
@@ -207,6 +351,7 @@ public class Node {
 
     public void setWidth(int width) {
         this.width = width;
+        invalidateLayout();
     }
 
     public int getHeight() {
@@ -217,11 +362,81 @@ public class Node {
         this.height = height;
     }
 
-    public List<Node> getConnections() {
-        return connections;
+    public int getHandle() {
+        return handle;
     }
 
-    public void setConnections(List<Node> connections) {
-        this.connections = connections;
+    void setHandle(int handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * @return {@link Set} A read only view of the nodes this node connects to in the order they were connected.
+     * Connections are changed through {@link StoryGraph#connect(Node, Node)} and
+     * {@link StoryGraph#disconnect(Node, Node)}.
+     */
+    public Set<Node> getConnections() {
+        return connectionsView;
+    }
+
+    /**
+     * @return {@link Set} A read only view of the nodes that connect to this node.
+     */
+    public Set<Node> getIncoming() {
+        return incomingView;
+    }
+
+    /**
+     * Adds a connection from this node to the given node, recording it on both ends.
+     *
+     * @param to {@link Node} The node to connect to.
+     * @return <code>boolean</code> If the connection did not already exist.
+     */
+    boolean link(Node to) {
+        if (!connections.add(to)) return false;
+        to.incoming.add(this);
+        return true;
+    }
+
+    /**
+     * Removes the connection from this node to the given node on both ends.
+     *
+     * @param to {@link Node} The node to disconnect from.
+     * @return <code>boolean</code> If the connection existed.
+     */
+    boolean unlink(Node to) {
+        if (!connections.remove(to)) return false;
+        to.incoming.remove(this);
+        if (guards != null) guards.remove(to);
+        return true;
+    }
+
+    /**
+     * Sets the guard of the connection from this node to the given node.
+     *
+     * @param to    {@link Node} The destination of the connection, which must exist.
+     * @param guard {@link String} The guard or <code>null</code> to remove it.
+     */
+    void guard(Node to, String guard) {
+        if (guard == null) {
+            if (guards != null) guards.remove(to);
+        } else {
+            if (guards == null) guards = new HashMap<>();
+            guards.put(to, guard);
+        }
+    }
+
+    /**
+     * Removes every connection to and from this node.
+     */
+    void unlinkAll() {
+        for (Node n : connections) n.incoming.remove(this);
+        for (Node n : incoming) {
+            n.connections.remove(this);
+            if (n.guards != null) n.guards.remove(this);
+        }
+        connections.clear();
+        incoming.clear();
+        guards = null;
     }
 }
@@ -0,0 +1,508 @@
+package com.github.vitineth.branch.program.node;
+
+import java.util.*;
+
+/**
+ * An inverted index over the words in the id, prompt and response of a collection of nodes, keyed by the handles of
+ * the nodes. A word is a run of letters and digits and is matched without case.
+ * <p/>
+ * Every word is given a term number the first time it is seen and each term keeps a posting list of the handles of
+ * the nodes that contain it. Nodes also keep their own words as term numbers in order, which is all a phrase needs to
+ * be checked once the nodes containing every word of it have been found. Removing a node does not search the posting
+ * lists for it: each posting is tagged with the generation of its handle, which is moved on when the node is removed,
+ * and a list is only compacted once half of it is out of date. A word is forgotten as soon as no node contains it and
+ * its term number is given to the next new word. Editing a node is a removal and an insert.
+ * <p/>
+ * Queries are made of words separated by spaces, all of which have to match:
+ * <pre>
+ * dragon            nodes containing the word dragon
+ * drag*             nodes containing a word starting with drag
+ * "the old castle"  nodes containing the words one after another in the id, prompt or response
+ * </pre>
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public class SearchIndex {
+
+    /**
+     * The term placed between the words of the id, prompt and response so phrases cannot cross from one to the next.
+     */
+    private static final int SEPARATOR = -1;
+    /**
+     * The words of a node with no text at all.
+     */
+    private static final int[] NO_TERMS = new int[0];
+
+    /**
+     * The term number of every word seen so far.
+     */
+    private final Map<String, Integer> ids = new HashMap<>();
+    /**
+     * Every word seen so far in order, for prefix queries.
+     */
+    private final NavigableMap<String, Integer> sorted = new TreeMap<>();
+    /**
+     * The postings of each term as pairs of a handle and the generation of the handle when it was added.
+     */
+    private int[][] postings = new int[16][];
+    /**
+     * The number of <code>int</code>s used in each of the {@link #postings}.
+     */
+    private int[] lengths = new int[16];
+    /**
+     * The number of postings of each term that are out of date.
+     */
+    private int[] stale = new int[16];
+    /**
+     * The word of each term, or <code>null</code> if the term number is free.
+     */
+    private String[] termWords = new String[16];
+    /**
+     * The number of term numbers handed out, including those now free.
+     */
+    private int termCount = 0;
+    /**
+     * The term numbers of forgotten words, to be given to new words before any new number.
+     */
+    private int[] free = new int[16];
+    /**
+     * The number of {@link #free} term numbers.
+     */
+    private int freeCount = 0;
+
+    /**
+     * The words of each indexed node as term numbers by handle, or <code>null</code> if the handle is not indexed.
+     */
+    private int[][] terms = new int[16][];
+    /**
+     * The generation of each handle, moved on every time the node with the handle is removed from the index.
+     */
+    private int[] generations = new int[16];
+    /**
+     * The number of indexed nodes.
+     */
+    private int size = 0;
+
+    /**
+     * The mark of each term, compared against {@link #stamp} to visit each term of a node only once.
+     */
+    private int[] termMarks = new int[16];
+    /**
+     * The mark of each handle, compared against {@link #stamp} while collecting and filtering.
+     */
+    private int[] handleMarks = new int[16];
+    /**
+     * The counter used to mark handles and terms already seen by the current operation.
+     */
+    private int stamp = 0;
+
+    /**
+     * Adds the words of the node to the index. If it is already indexed it is just updated.
+     *
+     * @param n {@link Node} The node to add, which must have a handle.
+     */
+    public void insert(Node n) {
+        int handle = n.getHandle();
+        if (handle < 0) throw new IllegalArgumentException("The node must be in a graph to be indexed.");
+        ensureHandle(handle);
+        if (terms[handle] != null) unlink(handle);
+
+        int[] words = tokenize(n);
+        terms[handle] = words;
+        size++;
+
+        int mark = nextStamp();
+        for (int t : words) {
+            if (t == SEPARATOR || termMarks[t] == mark) continue;
+            termMarks[t] = mark;
+            append(t, handle, generations[handle]);
+        }
+    }
+
+    /**
+     * Removes the node from the index if it is indexed. This has to be called while the node still has its handle.
+     *
+     * @param n {@link Node} The node to remove.
+     */
+    public void remove(Node n) {
+        int handle = n.getHandle();
+        if (handle >= 0 && handle < terms.length && terms[handle] != null) unlink(handle);
+    }
+
+    /**
+     * Re-indexes the words of the node after its id, prompt or response has changed.
+     *
+     * @param n {@link Node} The node that has changed.
+     */
+    public void update(Node n) {
+        insert(n);
+    }
+
+    /**
+     * Removes every node and forgets every word.
+     */
+    public void clear() {
+        ids.clear();
+        sorted.clear();
+        postings = new int[16][];
+        lengths = new int[16];
+        stale = new int[16];
+        termWords = new String[16];
+        termCount = 0;
+        free = new int[16];
+        freeCount = 0;
+        terms = new int[16][];
+        generations = new int[16];
+        termMarks = new int[16];
+        handleMarks = new int[16];
+        size = 0;
+    }
+
+    /**
+     * Empties the index and adds every node.
+     *
+     * @param nodes {@link Collection} The nodes to index.
+     */
+    public void rebuild(Collection<Node> nodes) {
+        clear();
+        for (Node n : nodes) insert(n);
+    }
+
+    /**
+     * @return <code>int</code> The number of indexed nodes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds every node matching the query. The words are looked up from the one with the fewest postings so the cost
+     * is led by the rarest word rather than the size of the story.
+     *
+     * @param query {@link String} The query.
+     * @return <code>int[]</code> The handles of the matching nodes in ascending order, empty if the query has no
+     * words or nothing matches.
+     */
+    public int[] search(String query) {
+        List<int[]> clauses = new ArrayList<>();
+        List<int[]> phrases = new ArrayList<>();
+        if (!parse(query, clauses, phrases)) return new int[0];
+
+        clauses.sort(Comparator.comparingLong(this::cost));
+        int[] candidates = collect(clauses.get(0));
+        int count = candidates.length;
+        for (int i = 1; i < clauses.size() && count > 0; i++) count = filter(candidates, count, clauses.get(i));
+
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int handle = candidates[i];
+            boolean matches = true;
+            for (int[] phrase : phrases) {
+                if (!containsPhrase(terms[handle], phrase)) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches) candidates[kept++] = handle;
+        }
+
+        int[] result = Arrays.copyOf(candidates, kept);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Splits the query into clauses, each a set of terms of which a node needs any one, and phrases, the terms a node
+     * needs one after another. Every word of a phrase is also added as a clause of its own.
+     *
+     * @param query   {@link String} The query.
+     * @param clauses {@link List} Where the clauses are added.
+     * @param phrases {@link List} Where the phrases of more than one word are added.
+     * @return <code>boolean</code> If there was at least one clause and every clause can match something.
+     */
+    private boolean parse(String query, List<int[]> clauses, List<int[]> phrases) {
+        boolean quoted = false;
+        List<Integer> phrase = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= query.length(); i++) {
+            char c = i < query.length() ? query.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+                continue;
+            }
+
+            if (word.length() > 0) {
+                String w = word.toString();
+                word.setLength(0);
+                int[] clause;
+                if (c == '*' && !quoted) {
+                    clause = sorted.subMap(w, true, w + Character.MAX_VALUE, false).values().stream().mapToInt(Integer::intValue).toArray();
+                } else {
+                    Integer t = ids.get(w);
+                    clause = t == null ? new int[0] : new int[]{t};
+                }
+                if (clause.length == 0) return false;
+                clauses.add(clause);
+                if (quoted) phrase.add(clause[0]);
+            }
+
+            if (c == '"' || (i == query.length() && quoted)) {
+                if (quoted && phrase.size() > 1) phrases.add(phrase.stream().mapToInt(Integer::intValue).toArray());
+                phrase.clear();
+                quoted = !quoted;
+            }
+        }
+        return !clauses.isEmpty();
+    }
+
+    /**
+     * @param clause <code>int[]</code> The terms of the clause.
+     * @return <code>long</code> The number of postings that have to be read to collect the clause.
+     */
+    private long cost(int[] clause) {
+        long cost = 0;
+        for (int t : clause) cost += lengths[t] >> 1;
+        return cost;
+    }
+
+    /**
+     * @param clause <code>int[]</code> The terms of the clause.
+     * @return <code>int[]</code> The handles of every node containing any of the terms, each only once.
+     */
+    private int[] collect(int[] clause) {
+        int[] found = new int[16];
+        int count = 0;
+        int mark = nextStamp();
+        for (int t : clause) {
+            int[] list = postings[t];
+            for (int i = 0; i < lengths[t]; i += 2) {
+                int handle = list[i];
+                if (list[i + 1] != generations[handle] || handleMarks[handle] == mark) continue;
+                handleMarks[handle] = mark;
+                if (count == found.length) found = Arrays.copyOf(found, count * 2);
+                found[count++] = handle;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Keeps only the candidates containing one of the terms of the clause. A handful of candidates are checked
+     * against their own words, otherwise the postings of the clause are marked and the candidates checked against
+     * the marks, whichever reads less.
+     *
+     * @param candidates <code>int[]</code> The handles of the candidates, filtered in place.
+     * @param count      <code>int</code> The number of candidates.
+     * @param clause     <code>int[]</code> The terms of the clause.
+     * @return <code>int</code> The number of candidates kept.
+     */
+    private int filter(int[] candidates, int count, int[] clause) {
+        long words = 0;
+        for (int i = 0; i < count && words < Integer.MAX_VALUE; i++) words += terms[candidates[i]].length;
+
+        int kept = 0;
+        if (clause.length == 1 && words < cost(clause)) {
+            for (int i = 0; i < count; i++) {
+                if (contains(terms[candidates[i]], clause[0])) candidates[kept++] = candidates[i];
+            }
+            return kept;
+        }
+
+        int mark = nextStamp();
+        for (int t : clause) {
+            int[] list = postings[t];
+            for (int i = 0; i < lengths[t]; i += 2) {
+                if (list[i + 1] == generations[list[i]]) handleMarks[list[i]] = mark;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (handleMarks[candidates[i]] == mark) candidates[kept++] = candidates[i];
+        }
+        return kept;
+    }
+
+    /**
+     * @param words <code>int[]</code> The words of a node.
+     * @param term  <code>int</code> The term to look for.
+     * @return <code>boolean</code> If the node contains the term.
+     */
+    private static boolean contains(int[] words, int term) {
+        for (int w : words) {
+            if (w == term) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param words  <code>int[]</code> The words of a node.
+     * @param phrase <code>int[]</code> The terms of the phrase.
+     * @return <code>boolean</code> If the terms appear one after another in the words.
+     */
+    private static boolean containsPhrase(int[] words, int[] phrase) {
+        outer:
+        for (int i = 0; i + phrase.length <= words.length; i++) {
+            for (int j = 0; j < phrase.length; j++) {
+                if (words[i + j] != phrase[j]) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Drops the words of the handle and moves its generation on so its postings are out of date, compacting any list
+     * that is now more than half out of date and forgetting any word no other node contains.
+     *
+     * @param handle <code>int</code> The handle of an indexed node.
+     */
+    private void unlink(int handle) {
+        generations[handle]++;
+        int mark = nextStamp();
+        for (int t : terms[handle]) {
+            if (t == SEPARATOR || termMarks[t] == mark) continue;
+            termMarks[t] = mark;
+            if (++stale[t] * 2 == lengths[t]) release(t);
+            else if (stale[t] * 4 > lengths[t]) compact(t);
+        }
+        terms[handle] = null;
+        size--;
+    }
+
+    /**
+     * Removes the out of date postings of the term, shrinking the list if it is now mostly empty.
+     *
+     * @param t <code>int</code> The term.
+     */
+    private void compact(int t) {
+        int[] list = postings[t];
+        int kept = 0;
+        for (int i = 0; i < lengths[t]; i += 2) {
+            if (list[i + 1] != generations[list[i]]) continue;
+            list[kept++] = list[i];
+            list[kept++] = list[i + 1];
+        }
+        lengths[t] = kept;
+        stale[t] = 0;
+        if (list.length > 16 && kept < list.length / 4) postings[t] = Arrays.copyOf(list, Math.max(16, kept * 2));
+    }
+
+    /**
+     * Forgets the word of a term whose postings are all out of date and frees its term number.
+     *
+     * @param t <code>int</code> The term.
+     */
+    private void release(int t) {
+        ids.remove(termWords[t]);
+        sorted.remove(termWords[t]);
+        termWords[t] = null;
+        postings[t] = new int[4];
+        lengths[t] = 0;
+        stale[t] = 0;
+        if (freeCount == free.length) free = Arrays.copyOf(free, freeCount * 2);
+        free[freeCount++] = t;
+    }
+
+    /**
+     * Adds a posting to the term.
+     *
+     * @param t          <code>int</code> The term.
+     * @param handle     <code>int</code> The handle of the node containing it.
+     * @param generation <code>int</code> The current generation of the handle.
+     */
+    private void append(int t, int handle, int generation) {
+        int[] list = postings[t];
+        if (lengths[t] + 2 > list.length) list = postings[t] = Arrays.copyOf(list, list.length * 2);
+        list[lengths[t]++] = handle;
+        list[lengths[t]++] = generation;
+    }
+
+    /**
+     * Splits the id, prompt and response of the node into words and looks up the term of each, adding new terms for
+     * words that have not been seen before.
+     *
+     * @param n {@link Node} The node.
+     * @return <code>int[]</code> The terms of the words in order with a {@link #SEPARATOR} between each part.
+     */
+    private int[] tokenize(Node n) {
+        int[] words = new int[16];
+        int count = 0;
+        StringBuilder word = new StringBuilder();
+        String[] parts = {n.getId(), n.getPrompt(), n.getResponse()};
+        for (int p = 0; p < parts.length; p++) {
+            String text = parts[p] == null ? "" : parts[p];
+            for (int i = 0; i <= text.length(); i++) {
+                char c = i < text.length() ? text.charAt(i) : ' ';
+                if (Character.isLetterOrDigit(c)) {
+                    word.append(Character.toLowerCase(c));
+                } else if (word.length() > 0) {
+                    if (count == words.length) words = Arrays.copyOf(words, count * 2);
+                    words[count++] = term(word.toString());
+                    word.setLength(0);
+                }
+            }
+            if (p < parts.length - 1 && count > 0 && words[count - 1] != SEPARATOR) {
+                if (count == words.length) words = Arrays.copyOf(words, count * 2);
+                words[count++] = SEPARATOR;
+            }
+        }
+        return count == 0 ? NO_TERMS : Arrays.copyOf(words, count);
+    }
+
+    /**
+     * @param word {@link String} The word, in lower case.
+     * @return <code>int</code> The term of the word, added if it is not in the index.
+     */
+    private int term(String word) {
+        Integer existing = ids.get(word);
+        if (existing != null) return existing;
+
+        int t;
+        if (freeCount > 0) {
+            t = free[--freeCount];
+        } else {
+            if (termCount == postings.length) {
+                postings = Arrays.copyOf(postings, termCount * 2);
+                lengths = Arrays.copyOf(lengths, termCount * 2);
+                stale = Arrays.copyOf(stale, termCount * 2);
+                termWords = Arrays.copyOf(termWords, termCount * 2);
+                termMarks = Arrays.copyOf(termMarks, termCount * 2);
+            }
+            t = termCount++;
+            postings[t] = new int[4];
+        }
+        termWords[t] = word;
+        ids.put(word, t);
+        sorted.put(word, t);
+        return t;
+    }
+
+    /**
+     * Grows the arrays kept by handle to fit the handle.
+     *
+     * @param handle <code>int</code> The handle.
+     */
+    private void ensureHandle(int handle) {
+        if (handle >= terms.length) {
+            int capacity = Math.max(handle + 1, terms.length * 2);
+            terms = Arrays.copyOf(terms, capacity);
+            generations = Arrays.copyOf(generations, capacity);
+            handleMarks = Arrays.copyOf(handleMarks, capacity);
+        }
+    }
+
+    /**
+     * @return <code>int</code> A stamp no handle or term is marked with yet.
+     */
+    private int nextStamp() {
+        if (++stamp == 0) {
+            Arrays.fill(termMarks, 0);
+            Arrays.fill(handleMarks, 0);
+            stamp = 1;
+        }
+        return stamp;
+    }
+}
@@ -0,0 +1,166 @@
+package com.github.vitineth.branch.program.node;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+
+/**
+ * The set of selected nodes stored as node handles (see {@link Node#getHandle()}). Membership is held in a
+ * {@link BitSet} so checking a node while drawing is constant time and selecting every node does not create any
+ * objects per node.
+ * <p/>
+ * The order nodes were individually selected in is kept so the first and second selected node can be used as the
+ * origin and destination of a connection. Nodes selected in bulk through {@link #selectAll(BitSet)} come after them in
+ * handle order.
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public class Selection {
+
+    /**
+     * Every selected handle.
+     */
+    private final BitSet members = new BitSet();
+    /**
+     * The handles that are listed in {@link #order}.
+     */
+    private final BitSet ordered = new BitSet();
+    /**
+     * The individually selected handles in the order they were selected.
+     */
+    private int[] order = new int[8];
+    /**
+     * The number of used entries in {@link #order}.
+     */
+    private int orderSize = 0;
+    /**
+     * The number of selected handles.
+     */
+    private int size = 0;
+
+    /**
+     * Adds the handle to the end of the selection if it is not already selected.
+     *
+     * @param handle <code>int</code> The handle to select.
+     * @return <code>boolean</code> If the selection changed.
+     */
+    public boolean add(int handle) {
+        if (members.get(handle)) return false;
+
+        members.set(handle);
+        ordered.set(handle);
+        if (orderSize == order.length) order = Arrays.copyOf(order, orderSize * 2);
+        order[orderSize++] = handle;
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes the handle from the selection.
+     *
+     * @param handle <code>int</code> The handle to deselect.
+     * @return <code>boolean</code> If the selection changed.
+     */
+    public boolean remove(int handle) {
+        if (!members.get(handle)) return false;
+
+        members.clear(handle);
+        size--;
+        if (ordered.get(handle)) {
+            ordered.clear(handle);
+            for (int i = 0; i < orderSize; i++) {
+                if (order[i] == handle) {
+                    System.arraycopy(order, i + 1, order, i, orderSize - i - 1);
+                    orderSize--;
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the selection with the given handles.
+     *
+     * @param handles {@link BitSet} The handles to select.
+     */
+    public void selectAll(BitSet handles) {
+        clear();
+        members.or(handles);
+        size = members.cardinality();
+    }
+
+    /**
+     * Deselects everything.
+     */
+    public void clear() {
+        members.clear();
+        ordered.clear();
+        orderSize = 0;
+        size = 0;
+    }
+
+    /**
+     * @param handle <code>int</code> The handle to check.
+     * @return <code>boolean</code> If the handle is selected.
+     */
+    public boolean contains(int handle) {
+        return handle >= 0 && members.get(handle);
+    }
+
+    /**
+     * @return <code>int</code> The number of selected handles.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return <code>boolean</code> If nothing is selected.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the handle at the given position in selection order.
+     *
+     * @param position <code>int</code> The position, starting at 0.
+     * @return <code>int</code> The handle at that position.
+     * @throws IndexOutOfBoundsException if the position is not less than {@link #size()}.
+     */
+    public int get(int position) {
+        if (position < 0 || position >= size) throw new IndexOutOfBoundsException("Position: " + position + ", size: " + size);
+        if (position < orderSize) return order[position];
+
+        int remaining = position - orderSize;
+        for (int h = members.nextSetBit(0); h >= 0; h = members.nextSetBit(h + 1)) {
+            if (ordered.get(h)) continue;
+            if (remaining-- == 0) return h;
+        }
+        throw new IllegalStateException("Selection is out of sync.");
+    }
+
+    /**
+     * Calls the consumer with every selected handle in selection order.
+     *
+     * @param consumer {@link IntConsumer} The consumer to call.
+     */
+    public void forEach(IntConsumer consumer) {
+        for (int i = 0; i < orderSize; i++) consumer.accept(order[i]);
+        for (int h = members.nextSetBit(0); h >= 0; h = members.nextSetBit(h + 1)) {
+            if (!ordered.get(h)) consumer.accept(h);
+        }
+    }
+
+    /**
+     * @return {@link BitSet} A copy of the selected handles.
+     */
+    public BitSet toBitSet() {
+        return (BitSet) members.clone();
+    }
+}
@@ -0,0 +1,344 @@
+package com.github.vitineth.branch.program.node;
+
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+
+/**
+ * A uniform grid over the bounds of a collection of nodes. Each node is bucketed into every cell its bounds touch so
+ * area and point lookups only have to look at the nodes in the cells they cover rather than every node on the canvas.
+ * All coordinates are in canvas space (without any drawing offsets applied).
+ * <p/>
+ * Nodes are returned in the order they were first inserted so the results can be drawn in the same order as the
+ * backing node list.
+ * <p/>
+ * An index must only be used by one thread at a time, but one can be built on another thread from locations the
+ * nodes have not been moved to yet with {@link #insert(Node, int, int)} and handed over once they have.
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public class SpatialIndex {
+
+    /**
+     * The default width and height of a single cell. This is roughly two nodes wide so most nodes touch at most four
+     * cells.
+     */
+    public static final int DEFAULT_CELL_SIZE = 256;
+
+    /**
+     * The width and height of each cell.
+     */
+    private final int cellSize;
+    /**
+     * The nodes bucketed into each cell keyed by {@link #key(int, int)}.
+     */
+    private final Map<Long, List<Entry>> cells = new HashMap<>();
+    /**
+     * The entry of every node that is currently indexed.
+     */
+    private final Map<Node, Entry> entries = new IdentityHashMap<>();
+    /**
+     * The insertion counter used to order the results.
+     */
+    private long sequence = 0;
+    /**
+     * The counter used to mark entries already collected by the current query.
+     */
+    private int stamp = 0;
+    /**
+     * The number of times the index has been changed.
+     */
+    private int modifications = 0;
+
+    public SpatialIndex() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    public SpatialIndex(int cellSize) {
+        if (cellSize <= 0) throw new IllegalArgumentException("Cell size must be positive.");
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Adds the node to the index using its current bounds. If it is already indexed it is just updated.
+     *
+     * @param n {@link Node} The node to add.
+     */
+    public void insert(Node n) {
+        Entry e = entries.get(n);
+        if (e != null) {
+            update(n);
+            return;
+        }
+
+        e = new Entry(n, sequence++);
+        entries.put(n, e);
+        link(e);
+        modifications++;
+    }
+
+    /**
+     * Adds the node to the index at the given location rather than its current one. The node is not read other than
+     * for its size, so this can be called on another thread while the node is still somewhere else, as long as it is
+     * moved to the location before the index is used.
+     *
+     * @param n {@link Node} The node to add, which must not be indexed already.
+     * @param x <code>int</code> The x location the node is indexed at in canvas space.
+     * @param y <code>int</code> The y location the node is indexed at in canvas space.
+     * @throws IllegalArgumentException if the node is already indexed.
+     */
+    public void insert(Node n, int x, int y) {
+        if (entries.containsKey(n)) throw new IllegalArgumentException("Node " + n.getId() + " is already indexed.");
+
+        Entry e = new Entry(n, sequence++);
+        e.x = x;
+        e.y = y;
+        e.w = n.getWidth();
+        e.h = n.getHeight();
+        entries.put(n, e);
+        bucket(e);
+        modifications++;
+    }
+
+    /**
+     * Removes the node from the index if it is indexed.
+     *
+     * @param n {@link Node} The node to remove.
+     */
+    public void remove(Node n) {
+        Entry e = entries.remove(n);
+        if (e == null) return;
+        unlink(e);
+        modifications++;
+    }
+
+    /**
+     * Re-buckets the node after its location or size has changed. Nodes that have not moved out of their cells are
+     * left in place. If the node is not indexed it will be inserted.
+     *
+     * @param n {@link Node} The node that has changed.
+     */
+    public void update(Node n) {
+        Entry e = entries.get(n);
+        if (e == null) {
+            insert(n);
+            return;
+        }
+
+        modifications++;
+        int x1 = cell(n.getX());
+        int y1 = cell(n.getY());
+        int x2 = cell(n.getX() + n.getWidth());
+        int y2 = cell(n.getY() + n.getHeight());
+        if (x1 == e.cx1 && y1 == e.cy1 && x2 == e.cx2 && y2 == e.cy2) {
+            e.capture();
+            return;
+        }
+
+        unlink(e);
+        link(e);
+    }
+
+    /**
+     * Removes every node from the index.
+     */
+    public void clear() {
+        cells.clear();
+        entries.clear();
+        sequence = 0;
+        modifications++;
+    }
+
+    /**
+     * Empties the index and adds every node in the given order.
+     *
+     * @param nodes {@link Collection} The nodes to index.
+     */
+    public void rebuild(Collection<Node> nodes) {
+        clear();
+        for (Node n : nodes) insert(n);
+    }
+
+    /**
+     * @param n {@link Node} The node to check.
+     * @return <code>boolean</code> If the node is currently indexed.
+     */
+    public boolean contains(Node n) {
+        return entries.containsKey(n);
+    }
+
+    /**
+     * @return <code>int</code> The number of indexed nodes.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return <code>int</code> A count that changes every time a node is added, removed or updated, so a caller can
+     * tell if the index has been changed since it last looked.
+     */
+    public int getModifications() {
+        return modifications;
+    }
+
+    /**
+     * Returns every node whose bounds intersect the given area in insertion order.
+     *
+     * @param area {@link Rectangle} The area in canvas space.
+     * @return {@link List} The intersecting nodes.
+     */
+    public List<Node> query(Rectangle area) {
+        List<Entry> found = new ArrayList<>();
+        int mark = ++stamp;
+
+        int x1 = cell(area.x);
+        int y1 = cell(area.y);
+        int x2 = cell(area.x + area.width);
+        int y2 = cell(area.y + area.height);
+        for (int cx = x1; cx <= x2; cx++) {
+            for (int cy = y1; cy <= y2; cy++) {
+                List<Entry> bucket = cells.get(key(cx, cy));
+                if (bucket == null) continue;
+
+                for (Entry e : bucket) {
+                    if (e.stamp == mark) continue;
+                    e.stamp = mark;
+                    if (e.x < area.x + area.width && e.x + e.w > area.x && e.y < area.y + area.height && e.y + e.h > area.y) {
+                        found.add(e);
+                    }
+                }
+            }
+        }
+
+        return sorted(found);
+    }
+
+    /**
+     * Returns every node that contains the given point in insertion order. This uses the same exclusive bounds as
+     * {@link Node#contains(int, int)}.
+     *
+     * @param x <code>int</code> The x location in canvas space.
+     * @param y <code>int</code> The y location in canvas space.
+     * @return {@link List} The nodes containing the point.
+     */
+    public List<Node> query(int x, int y) {
+        List<Entry> found = new ArrayList<>();
+        List<Entry> bucket = cells.get(key(cell(x), cell(y)));
+        if (bucket != null) {
+            for (Entry e : bucket) {
+                if (x > e.x && y > e.y && x < e.x + e.w && y < e.y + e.h) found.add(e);
+            }
+        }
+
+        return sorted(found);
+    }
+
+    /**
+     * Returns the first inserted node containing the given point.
+     *
+     * @param x <code>int</code> The x location in canvas space.
+     * @param y <code>int</code> The y location in canvas space.
+     * @return {@link Node} The node or <code>null</code> if there is none at that point.
+     */
+    public Node nodeAt(int x, int y) {
+        List<Entry> bucket = cells.get(key(cell(x), cell(y)));
+        if (bucket == null) return null;
+
+        Entry first = null;
+        for (Entry e : bucket) {
+            if (x > e.x && y > e.y && x < e.x + e.w && y < e.y + e.h && (first == null || e.order < first.order)) {
+                first = e;
+            }
+        }
+        return first == null ? null : first.node;
+    }
+
+    /**
+     * Captures the current bounds of the entry and adds it to every cell they touch.
+     *
+     * @param e {@link Entry} The entry to add.
+     */
+    private void link(Entry e) {
+        e.capture();
+        bucket(e);
+    }
+
+    /**
+     * Adds the entry to every cell its bounds touch.
+     *
+     * @param e {@link Entry} The entry to add, with its bounds set.
+     */
+    private void bucket(Entry e) {
+        e.cx1 = cell(e.x);
+        e.cy1 = cell(e.y);
+        e.cx2 = cell(e.x + e.w);
+        e.cy2 = cell(e.y + e.h);
+        for (int cx = e.cx1; cx <= e.cx2; cx++) {
+            for (int cy = e.cy1; cy <= e.cy2; cy++) {
+                cells.computeIfAbsent(key(cx, cy), k -> new ArrayList<>(4)).add(e);
+            }
+        }
+    }
+
+    /**
+     * Removes the entry from every cell it was last added to, dropping any cells that become empty.
+     *
+     * @param e {@link Entry} The entry to remove.
+     */
+    private void unlink(Entry e) {
+        for (int cx = e.cx1; cx <= e.cx2; cx++) {
+            for (int cy = e.cy1; cy <= e.cy2; cy++) {
+                Long key = key(cx, cy);
+                List<Entry> bucket = cells.get(key);
+                if (bucket == null) continue;
+
+                bucket.remove(e);
+                if (bucket.isEmpty()) cells.remove(key);
+            }
+        }
+    }
+
+    private int cell(int v) {
+        return Math.floorDiv(v, cellSize);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    private static List<Node> sorted(List<Entry> found) {
+        if (found.size() > 1) found.sort((a, b) -> Long.compare(a.order, b.order));
+
+        List<Node> nodes = new ArrayList<>(found.size());
+        for (Entry e : found) nodes.add(e.node);
+        return nodes;
+    }
+
+    /**
+     * The indexed bounds of a node and the range of cells it was added to.
+     */
+    private static class Entry {
+        private final Node node;
+        private final long order;
+        private int x, y, w, h;
+        private int cx1, cy1, cx2, cy2;
+        private int stamp;
+
+        private Entry(Node node, long order) {
+            this.node = node;
+            this.order = order;
+        }
+
+        private void capture() {
+            x = node.getX();
+            y = node.getY();
+            w = node.getWidth();
+            h = node.getHeight();
+        }
+    }
+}
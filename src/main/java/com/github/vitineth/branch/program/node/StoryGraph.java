@@ -0,0 +1,233 @@
+package com.github.vitineth.branch.program.node;
+
+import java.util.*;
+
+/**
+ * The nodes making up a story in the order they are drawn. Every node is given a handle when it is added which stays
+ * the same until it is removed, unlike its position in the list, so it can be used to refer to the node from a
+ * {@link Selection}. Handles of removed nodes are reused by later nodes. New nodes are drawn last and a removed node
+ * has its place in the draw order taken by the last node, so removing does not have to shift the rest of the list.
+ * <p/>
+ * Connections are only changed through the graph so both the outgoing and incoming connections of each node are kept
+ * in step. Both are hash sets so connecting and disconnecting are constant time and removing a node only touches the
+ * nodes it is connected to.
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public class StoryGraph {
+
+    /**
+     * The nodes in draw order.
+     */
+    private final List<Node> nodes = new ArrayList<>();
+    /**
+     * The read only view of {@link #nodes} handed out to callers.
+     */
+    private final List<Node> view = Collections.unmodifiableList(nodes);
+    /**
+     * The node for each handle.
+     */
+    private Node[] handles = new Node[16];
+    /**
+     * The position in {@link #nodes} of the node with each handle.
+     */
+    private int[] positions = new int[16];
+    /**
+     * The handles currently in use.
+     */
+    private final BitSet live = new BitSet();
+    /**
+     * No handle below this one is free, so searching for a free handle can start here rather than at 0.
+     */
+    private int firstFree = 0;
+
+    /**
+     * Adds the node to the end of the draw order and gives it a handle.
+     *
+     * @param n {@link Node} The node to add.
+     * @throws IllegalArgumentException if the node already belongs to a graph.
+     */
+    public void add(Node n) {
+        if (n.getHandle() != -1) throw new IllegalArgumentException("Node " + n.getId() + " already has a handle.");
+
+        int handle = live.nextClearBit(firstFree);
+        firstFree = handle + 1;
+        if (handle >= handles.length) {
+            int capacity = Math.max(handle + 1, handles.length * 2);
+            handles = Arrays.copyOf(handles, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+        }
+        handles[handle] = n;
+        positions[handle] = nodes.size();
+        live.set(handle);
+        n.setHandle(handle);
+        nodes.add(n);
+    }
+
+    /**
+     * Adds a connection from the origin to the destination.
+     *
+     * @param origin      {@link Node} The node the connection starts at.
+     * @param destination {@link Node} The node the connection ends at.
+     * @return <code>boolean</code> If the connection did not already exist.
+     * @throws IllegalArgumentException if either node is not in this graph.
+     */
+    public boolean connect(Node origin, Node destination) {
+        check(origin);
+        check(destination);
+        return origin.link(destination);
+    }
+
+    /**
+     * Removes the connection from the origin to the destination.
+     *
+     * @param origin      {@link Node} The node the connection starts at.
+     * @param destination {@link Node} The node the connection ends at.
+     * @return <code>boolean</code> If the connection existed.
+     */
+    public boolean disconnect(Node origin, Node destination) {
+        return origin.unlink(destination);
+    }
+
+    /**
+     * Sets the guard of the connection from the origin to the destination. The guard is dropped if the connection is
+     * removed.
+     *
+     * @param origin      {@link Node} The node the connection starts at.
+     * @param destination {@link Node} The node the connection ends at.
+     * @param guard       {@link String} The Java condition that has to hold for the connection to be chosen, or
+     *                    <code>null</code> to remove it.
+     * @throws IllegalArgumentException if there is no connection from the origin to the destination.
+     */
+    public void setGuard(Node origin, Node destination, String guard) {
+        if (!isConnected(origin, destination)) throw new IllegalArgumentException("The nodes are not connected.");
+        origin.guard(destination, guard);
+    }
+
+    /**
+     * @param origin      {@link Node} The node the connection starts at.
+     * @param destination {@link Node} The node the connection ends at.
+     * @return <code>boolean</code> If there is a connection from the origin to the destination.
+     */
+    public boolean isConnected(Node origin, Node destination) {
+        return origin.getConnections().contains(destination);
+    }
+
+    /**
+     * Removes the node along with every connection to and from it, moving the last node in the draw order into its
+     * place. The cost is linear in the number of connections of the node.
+     *
+     * @param n {@link Node} The node to remove.
+     * @return <code>boolean</code> If the node was in the graph.
+     */
+    public boolean remove(Node n) {
+        if (get(n.getHandle()) != n) return false;
+
+        n.unlinkAll();
+        release(n);
+        return true;
+    }
+
+    /**
+     * Removes every node with one of the given handles along with every connection to and from them, one at a time as
+     * {@link #remove(Node)} does, so the cost is linear in the number of nodes and connections removed.
+     *
+     * @param removed {@link BitSet} The handles of the nodes to remove.
+     * @return {@link List} The removed nodes in the order they were removed, which is the order of their handles.
+     */
+    public List<Node> removeAll(BitSet removed) {
+        List<Node> result = new ArrayList<>();
+        for (int h = removed.nextSetBit(0); h >= 0; h = removed.nextSetBit(h + 1)) {
+            Node n = get(h);
+            if (n == null) continue;
+            n.unlinkAll();
+            release(n);
+            result.add(n);
+        }
+        return result;
+    }
+
+    /**
+     * Removes every node.
+     */
+    public void clear() {
+        for (Node n : nodes) {
+            n.unlinkAll();
+            n.setHandle(-1);
+        }
+        nodes.clear();
+        Arrays.fill(handles, null);
+        live.clear();
+        firstFree = 0;
+    }
+
+    /**
+     * Replaces every node with the given nodes in the given order.
+     *
+     * @param loaded {@link Collection} The new nodes.
+     */
+    public void setAll(Collection<Node> loaded) {
+        clear();
+        for (Node n : loaded) add(n);
+    }
+
+    /**
+     * @param handle <code>int</code> The handle of the node.
+     * @return {@link Node} The node with the handle or <code>null</code> if it is not in use.
+     */
+    public Node get(int handle) {
+        return handle >= 0 && handle < handles.length ? handles[handle] : null;
+    }
+
+    /**
+     * @return {@link List} A read only view of the nodes in draw order.
+     */
+    public List<Node> getNodes() {
+        return view;
+    }
+
+    /**
+     * @return {@link BitSet} A copy of the handles in use.
+     */
+    public BitSet getHandles() {
+        return (BitSet) live.clone();
+    }
+
+    /**
+     * @return <code>int</code> The number of nodes.
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * @param n {@link Node} The node to check.
+     * @throws IllegalArgumentException if the node is not in this graph.
+     */
+    private void check(Node n) {
+        if (get(n.getHandle()) != n) throw new IllegalArgumentException("Node " + n.getId() + " is not in this graph.");
+    }
+
+    /**
+     * Takes a removed node out of the draw order, filling its place with the last node, and frees its handle.
+     *
+     * @param n {@link Node} The removed node.
+     */
+    private void release(Node n) {
+        int position = positions[n.getHandle()];
+        Node last = nodes.remove(nodes.size() - 1);
+        if (last != n) {
+            nodes.set(position, last);
+            positions[last.getHandle()] = position;
+        }
+
+        handles[n.getHandle()] = null;
+        live.clear(n.getHandle());
+        firstFree = Math.min(firstFree, n.getHandle());
+        n.setHandle(-1);
+    }
+}
@@ -0,0 +1,221 @@
+package com.github.vitineth.branch.program.node;
+
+import java.util.List;
+
+/**
+ * An immutable copy of every node in a {@link StoryGraph} taken on the thread that owns the graph so it can be saved
+ * or rendered on another thread while the graph keeps changing. Nodes are referred to by their index in draw order and
+ * the connections of every node are stored together in a single array with the connections of node <code>i</code>
+ * running from <code>connectionStart[i]</code> up to <code>connectionStart[i + 1]</code>.
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public class StorySnapshot {
+
+    /**
+     * The id of each node.
+     */
+    private final String[] ids;
+    /**
+     * The prompt of each node.
+     */
+    private final String[] prompts;
+    /**
+     * The response of each node.
+     */
+    private final String[] responses;
+    /**
+     * The effect of each node.
+     */
+    private final String[] effects;
+    /**
+     * The x, y, width and height of each node, four values per node.
+     */
+    private final int[] bounds;
+    /**
+     * The position in {@link #connections} of the first connection of each node followed by the total connection
+     * count.
+     */
+    private final int[] connectionStart;
+    /**
+     * The index of the destination of every connection.
+     */
+    private final int[] connections;
+    /**
+     * The guard of every connection, in the same order as {@link #connections}.
+     */
+    private final String[] guards;
+
+    private StorySnapshot(String[] ids, String[] prompts, String[] responses, String[] effects, int[] bounds, int[] connectionStart, int[] connections, String[] guards) {
+        this.ids = ids;
+        this.prompts = prompts;
+        this.responses = responses;
+        this.effects = effects;
+        this.bounds = bounds;
+        this.connectionStart = connectionStart;
+        this.connections = connections;
+        this.guards = guards;
+    }
+
+    /**
+     * Copies every node and connection of the graph. This is linear in the size of the graph and must be called on the
+     * thread that modifies it.
+     *
+     * @param graph {@link StoryGraph} The graph to copy.
+     * @return {@link StorySnapshot} The copy.
+     */
+    public static StorySnapshot of(StoryGraph graph) {
+        List<Node> nodes = graph.getNodes();
+        int size = nodes.size();
+
+        int[] indexOf = new int[graph.getHandles().length()];
+        int edges = 0;
+        for (int i = 0; i < size; i++) {
+            Node n = nodes.get(i);
+            indexOf[n.getHandle()] = i;
+            edges += n.getConnections().size();
+        }
+
+        String[] ids = new String[size];
+        String[] prompts = new String[size];
+        String[] responses = new String[size];
+        String[] effects = new String[size];
+        int[] bounds = new int[size * 4];
+        int[] connectionStart = new int[size + 1];
+        int[] connections = new int[edges];
+        String[] guards = new String[edges];
+
+        int e = 0;
+        for (int i = 0; i < size; i++) {
+            Node n = nodes.get(i);
+            ids[i] = n.getId();
+            prompts[i] = n.getPrompt();
+            responses[i] = n.getResponse();
+            effects[i] = n.getEffect();
+            bounds[i * 4] = n.getX();
+            bounds[i * 4 + 1] = n.getY();
+            bounds[i * 4 + 2] = n.getWidth();
+            bounds[i * 4 + 3] = n.getHeight();
+
+            connectionStart[i] = e;
+            for (Node c : n.getConnections()) {
+                guards[e] = n.getGuard(c);
+                connections[e++] = indexOf[c.getHandle()];
+            }
+        }
+        connectionStart[size] = e;
+
+        return new StorySnapshot(ids, prompts, responses, effects, bounds, connectionStart, connections, guards);
+    }
+
+    /**
+     * Creates a new graph with a new copy of every node and connection in this snapshot.
+     *
+     * @return {@link StoryGraph} The new graph.
+     */
+    public StoryGraph toGraph() {
+        StoryGraph graph = new StoryGraph();
+        Node[] created = new Node[size()];
+        for (int i = 0; i < created.length; i++) {
+            Node n = new Node(getX(i), getY(i), ids[i], prompts[i], responses[i]);
+            n.setWidth(getWidth(i));
+            n.setHeight(getHeight(i));
+            n.setEffect(effects[i]);
+            graph.add(n);
+            created[i] = n;
+        }
+
+        for (int i = 0; i < created.length; i++) {
+            for (int c = connectionStart[i]; c < connectionStart[i + 1]; c++) {
+                graph.connect(created[i], created[connections[c]]);
+                if (guards[c] != null) graph.setGuard(created[i], created[connections[c]], guards[c]);
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * @return <code>int</code> The number of nodes.
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * @return <code>int</code> The number of connections between all nodes.
+     */
+    public int connectionCount() {
+        return connections.length;
+    }
+
+    public String getId(int node) {
+        return ids[node];
+    }
+
+    public String getPrompt(int node) {
+        return prompts[node];
+    }
+
+    public String getResponse(int node) {
+        return responses[node];
+    }
+
+    public String getEffect(int node) {
+        return effects[node];
+    }
+
+    public int getX(int node) {
+        return bounds[node * 4];
+    }
+
+    public int getY(int node) {
+        return bounds[node * 4 + 1];
+    }
+
+    public int getWidth(int node) {
+        return bounds[node * 4 + 2];
+    }
+
+    public int getHeight(int node) {
+        return bounds[node * 4 + 3];
+    }
+
+    /**
+     * @param node <code>int</code> The index of the node.
+     * @return <code>int</code> The y location of both connectors of the node, the same as
+     * {@link Node#getConnectorY()}.
+     */
+    public int getConnectorY(int node) {
+        return Node.getConnectorY(getY(node), getHeight(node));
+    }
+
+    /**
+     * @param node <code>int</code> The index of the node.
+     * @return <code>int</code> The number of connections from the node.
+     */
+    public int connectionCount(int node) {
+        return connectionStart[node + 1] - connectionStart[node];
+    }
+
+    /**
+     * @param node       <code>int</code> The index of the node.
+     * @param connection <code>int</code> The position of the connection in the node's connections.
+     * @return <code>int</code> The index of the destination node.
+     */
+    public int getConnection(int node, int connection) {
+        return connections[connectionStart[node] + connection];
+    }
+
+    /**
+     * @param node       <code>int</code> The index of the node.
+     * @param connection <code>int</code> The position of the connection in the node's connections.
+     * @return {@link String} The guard of the connection or <code>null</code> if it has none.
+     */
+    public String getGuard(int node, int connection) {
+        return guards[connectionStart[node] + connection];
+    }
+}
@@ -4,6 +4,8 @@ import com.github.vitineth.branch.program.node.Node;
 import com.github.vitineth.branch.program.window.primary.BranchComponent;
 import com.github.vitineth.branch.program.window.DetailWindow;
 
+import java.util.Map;
+
 /**
  * An interface to facilitate the passing of nodes between the {@link DetailWindow} and the {@link BranchComponent}.
  * <p/>
@@ -19,6 +21,7 @@ public interface NodePassback {
      * A callback to be used when the node is saved
      * @param oldNode {@link Node} The original node so it can be used in a lookup to determine an index.
      * @param newNode {@link Node} The newly edited node.
+     * @param guards {@link Map} The new guard of each connection from the original node, <code>null</code> for none.
      */
-    void detailsAltered(Node oldNode, Node newNode);
+    void detailsAltered(Node oldNode, Node newNode, Map<Node, String> guards);
 }
@@ -0,0 +1,25 @@
+package com.github.vitineth.branch.program.passbacks;
+
+/**
+ * An interface to report how far through a long running task such as loading or saving a story the task is.
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public interface ProgressPassback {
+
+    /**
+     * A passback that ignores all progress.
+     */
+    ProgressPassback NONE = fraction -> {
+    };
+
+    /**
+     * @param fraction <code>double</code> How much of the task is complete between 0 and 1.
+     */
+    void progress(double fraction);
+
+}
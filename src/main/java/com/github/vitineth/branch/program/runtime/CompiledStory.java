@@ -0,0 +1,306 @@
+package com.github.vitineth.branch.program.runtime;
+
+import com.github.vitineth.branch.program.io.StoryFiles;
+import com.github.vitineth.branch.program.io.StoryJournal;
+import com.github.vitineth.branch.program.node.StoryGraph;
+import com.github.vitineth.branch.program.node.StorySnapshot;
+import com.github.vitineth.branch.program.passbacks.ProgressPassback;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * A story compiled into an immutable automaton for playing it back. Each node becomes a state numbered from 1 in the
+ * order of the graph, and state 0 is a virtual start state whose choices are the nodes with no incoming connections
+ * (or the first node if every node is in a cycle). The choices of every state are stored together in a single array
+ * with the choices of state <code>s</code> running from <code>choiceStart[s]</code> up to
+ * <code>choiceStart[s + 1]</code>, and every distinct id, prompt and response is stored once in a shared string table.
+ * <p/>
+ * Nothing is allocated after compiling: a session is just the <code>int</code> of its current state, moved on with
+ * {@link #choose(int, int)}, so one compiled story can be shared by any number of sessions on any number of threads.
+ * <pre>
+ * int state = story.start();
+ * while (story.choices(state) > 0) state = story.choose(state, pick(story, state));
+ * </pre>
+ * <p/>
+ * The guards and effects of the story are kept as source so that {@link ConditionalStory} can compile them against the
+ * state type of the host; they are ignored by {@link #choose(int, int)}.
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public class CompiledStory {
+
+    /**
+     * The virtual state every session starts in.
+     */
+    public static final int START = 0;
+
+    /**
+     * Every distinct string used by the story.
+     */
+    private final String[] strings;
+    /**
+     * The position in {@link #strings} of the id, prompt and response of each state, three values per state, or -1 for
+     * <code>null</code>.
+     */
+    private final int[] text;
+    /**
+     * The position in {@link #choices} of the first choice of each state followed by the total choice count.
+     */
+    private final int[] choiceStart;
+    /**
+     * The state each choice leads to.
+     */
+    private final int[] choices;
+    /**
+     * The state of each id. If more than one node has the same id the last one is used.
+     */
+    private final Map<String, Integer> states;
+    /**
+     * The guard of each choice, aligned with {@link #choices}, or <code>null</code> if the choice is unconditional.
+     */
+    private final String[] guards;
+    /**
+     * The effect of each state or <code>null</code> if the state has none.
+     */
+    private final String[] effects;
+
+    private CompiledStory(String[] strings, int[] text, int[] choiceStart, int[] choices, Map<String, Integer> states, String[] guards, String[] effects) {
+        this.strings = strings;
+        this.text = text;
+        this.choiceStart = choiceStart;
+        this.choices = choices;
+        this.states = states;
+        this.guards = guards;
+        this.effects = effects;
+    }
+
+    /**
+     * Compiles the story in the given file, replaying the journal of binary stories.
+     *
+     * @param path {@link Path} The story file.
+     * @return {@link CompiledStory} The compiled story.
+     * @throws IOException if the file could not be read or is not a valid story.
+     */
+    public static CompiledStory load(Path path) throws IOException {
+        StoryGraph graph = StoryFiles.isBinary(path) ? StoryJournal.load(path, ProgressPassback.NONE).getGraph() : StoryFiles.read(path, ProgressPassback.NONE);
+        return compile(StorySnapshot.of(graph));
+    }
+
+    /**
+     * Compiles the given story.
+     *
+     * @param story {@link StorySnapshot} The story.
+     * @return {@link CompiledStory} The compiled story.
+     */
+    public static CompiledStory compile(StorySnapshot story) {
+        int size = story.size();
+        Map<String, Integer> indices = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        int[] text = new int[(size + 1) * 3];
+        Arrays.fill(text, 0, 3, -1);
+        String[] effects = new String[size + 1];
+
+        Map<String, Integer> states = new HashMap<>();
+        boolean[] incoming = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            text[(i + 1) * 3] = intern(story.getId(i), indices, strings);
+            text[(i + 1) * 3 + 1] = intern(story.getPrompt(i), indices, strings);
+            text[(i + 1) * 3 + 2] = intern(story.getResponse(i), indices, strings);
+            effects[i + 1] = story.getEffect(i);
+            if (story.getId(i) != null) states.put(story.getId(i), i + 1);
+            for (int c = 0; c < story.connectionCount(i); c++) incoming[story.getConnection(i, c)] = true;
+        }
+
+        int roots = 0;
+        for (boolean b : incoming) if (!b) roots++;
+        if (roots == 0 && size > 0) {
+            incoming[0] = false;
+            roots = 1;
+        }
+
+        int[] choiceStart = new int[size + 2];
+        int[] choices = new int[roots + story.connectionCount()];
+        String[] guards = new String[choices.length];
+        int c = 0;
+        for (int i = 0; i < size; i++) if (!incoming[i]) choices[c++] = i + 1;
+        for (int i = 0; i < size; i++) {
+            choiceStart[i + 1] = c;
+            for (int j = 0; j < story.connectionCount(i); j++) {
+                guards[c] = story.getGuard(i, j);
+                choices[c++] = story.getConnection(i, j) + 1;
+            }
+        }
+        choiceStart[size + 1] = c;
+
+        return new CompiledStory(strings.toArray(new String[strings.size()]), text, choiceStart, choices, states, guards, effects);
+    }
+
+    /**
+     * @param s       {@link String} The string to find.
+     * @param indices {@link Map} The index of every string added so far.
+     * @param strings {@link List} Every string added so far in index order.
+     * @return <code>int</code> The index of the string in the string table, adding it if it is new, or -1 if it is
+     * <code>null</code>.
+     */
+    private static int intern(String s, Map<String, Integer> indices, List<String> strings) {
+        if (s == null) return -1;
+
+        Integer index = indices.get(s);
+        if (index != null) return index;
+
+        indices.put(s, strings.size());
+        strings.add(s);
+        return strings.size() - 1;
+    }
+
+    /**
+     * @return <code>int</code> The state a new session starts in.
+     */
+    public int start() {
+        return START;
+    }
+
+    /**
+     * @param state <code>int</code> The state.
+     * @return <code>int</code> The number of choices that can be made from the state. The story ends at states with
+     * no choices.
+     */
+    public int choices(int state) {
+        return choiceStart[state + 1] - choiceStart[state];
+    }
+
+    /**
+     * @param state  <code>int</code> The current state.
+     * @param choice <code>int</code> The choice being made, from 0 up to {@link #choices(int)}.
+     * @return <code>int</code> The state the choice leads to.
+     * @throws IndexOutOfBoundsException if the state or choice does not exist.
+     */
+    public int choose(int state, int choice) {
+        return choices[position(state, choice)];
+    }
+
+    /**
+     * @param state  <code>int</code> The current state.
+     * @param choice <code>int</code> The choice being made, from 0 up to {@link #choices(int)}.
+     * @return <code>int</code> The position of the choice among the choices of every state, which is how
+     * {@link StoryLogic#guard(int, Object)} identifies it.
+     * @throws IndexOutOfBoundsException if the state or choice does not exist.
+     */
+    int position(int state, int choice) {
+        if (choice < 0 || choice >= choices(state)) throw new IndexOutOfBoundsException("State " + state + " has no choice " + choice + ".");
+        return choiceStart[state] + choice;
+    }
+
+    /**
+     * @param position <code>int</code> The position of a choice among the choices of every state.
+     * @return <code>int</code> The state the choice leads to.
+     */
+    int target(int position) {
+        return choices[position];
+    }
+
+    /**
+     * @param state <code>int</code> The state.
+     * @return <code>boolean</code> If the story has ended at the state.
+     */
+    public boolean isEnd(int state) {
+        return choices(state) == 0;
+    }
+
+    /**
+     * @return <code>int</code> The number of states including the virtual start state.
+     */
+    public int size() {
+        return choiceStart.length - 1;
+    }
+
+    /**
+     * @param id {@link String} The id of a node.
+     * @return <code>int</code> The state of the node or -1 if there is no node with the id.
+     */
+    public int stateOf(String id) {
+        Integer state = states.get(id);
+        return state == null ? -1 : state;
+    }
+
+    /**
+     * @param state <code>int</code> The state.
+     * @return {@link String} The id of the node of the state, or <code>null</code> for the start state.
+     */
+    public String getId(int state) {
+        return string(text[state * 3]);
+    }
+
+    /**
+     * @param state <code>int</code> The state.
+     * @return {@link String} The prompt of the node of the state, or <code>null</code> for the start state.
+     */
+    public String getPrompt(int state) {
+        return string(text[state * 3 + 1]);
+    }
+
+    /**
+     * @param state <code>int</code> The state.
+     * @return {@link String} The response of the node of the state, or <code>null</code> for the start state.
+     */
+    public String getResponse(int state) {
+        return string(text[state * 3 + 2]);
+    }
+
+    /**
+     * @param state  <code>int</code> The state.
+     * @param choice <code>int</code> The choice, from 0 up to {@link #choices(int)}.
+     * @return {@link String} The Java condition that has to hold for the choice to be available, or <code>null</code>
+     * if it is always available.
+     * @throws IndexOutOfBoundsException if the state or choice does not exist.
+     */
+    public String getGuard(int state, int choice) {
+        return guards[position(state, choice)];
+    }
+
+    /**
+     * @param state <code>int</code> The state.
+     * @return {@link String} The Java statements run when the state is reached, or <code>null</code> if there are none.
+     */
+    public String getEffect(int state) {
+        return effects[state];
+    }
+
+    /**
+     * @return <code>boolean</code> If any choice has a guard or any state has an effect.
+     */
+    public boolean hasLogic() {
+        for (String guard : guards) if (guard != null) return true;
+        for (String effect : effects) if (effect != null) return true;
+        return false;
+    }
+
+    /**
+     * @return <code>int</code> The number of choices of every state together.
+     */
+    int choiceCount() {
+        return choices.length;
+    }
+
+    /**
+     * @param position <code>int</code> The position of a choice among the choices of every state.
+     * @return {@link String} The guard of the choice or <code>null</code>.
+     */
+    String guardAt(int position) {
+        return guards[position];
+    }
+
+    /**
+     * @param index <code>int</code> The position in the string table or -1.
+     * @return {@link String} The string or <code>null</code> for -1.
+     */
+    private String string(int index) {
+        return index == -1 ? null : strings[index];
+    }
+}
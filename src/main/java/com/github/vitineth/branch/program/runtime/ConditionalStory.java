@@ -0,0 +1,131 @@
+package com.github.vitineth.branch.program.runtime;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A {@link CompiledStory} played back together with its compiled guards and effects. A session is the <code>int</code>
+ * of its current state along with an instance of the state type, which the effects change as the story goes on and
+ * the guards read to decide which choices are available.
+ * <pre>
+ * StoryState vars = new StoryState();
+ * int state = story.start();
+ * while (!story.isEnd(state)) state = story.choose(state, pick(story, state, vars), vars);
+ * </pre>
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @param <S> The type of the state of each session.
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public class ConditionalStory<S> {
+
+    /**
+     * The story being played.
+     */
+    private final CompiledStory story;
+    /**
+     * The compiled guards and effects of the story.
+     */
+    private final StoryLogic<S> logic;
+
+    /**
+     * @param story {@link CompiledStory} The story being played.
+     * @param logic {@link StoryLogic} The compiled guards and effects of the story.
+     */
+    private ConditionalStory(CompiledStory story, StoryLogic<S> logic) {
+        this.story = story;
+        this.logic = logic;
+    }
+
+    /**
+     * Compiles the story in the given file along with its guards and effects.
+     *
+     * @param path {@link Path} The story file.
+     * @param type {@link Class} The type of the state the guards and effects are written against.
+     * @param <S>  The type of the state.
+     * @return {@link ConditionalStory} The compiled story.
+     * @throws IOException              if the file could not be read or is not a valid story.
+     * @throws IllegalArgumentException if the guards and effects do not compile.
+     * @see StoryLogicCompiler#compile(CompiledStory, Class)
+     */
+    public static <S> ConditionalStory<S> load(Path path, Class<S> type) throws IOException {
+        return of(CompiledStory.load(path), type);
+    }
+
+    /**
+     * Compiles the guards and effects of the story.
+     *
+     * @param story {@link CompiledStory} The story.
+     * @param type  {@link Class} The type of the state the guards and effects are written against.
+     * @param <S>   The type of the state.
+     * @return {@link ConditionalStory} The compiled story.
+     * @throws IllegalArgumentException if the guards and effects do not compile.
+     * @see StoryLogicCompiler#compile(CompiledStory, Class)
+     */
+    public static <S> ConditionalStory<S> of(CompiledStory story, Class<S> type) {
+        return new ConditionalStory<>(story, StoryLogicCompiler.compile(story, type));
+    }
+
+    /**
+     * @return {@link CompiledStory} The story being played, for its text and choices.
+     */
+    public CompiledStory getStory() {
+        return story;
+    }
+
+    /**
+     * @return <code>int</code> The state a new session starts in.
+     */
+    public int start() {
+        return story.start();
+    }
+
+    /**
+     * @param state <code>int</code> The state.
+     * @return <code>int</code> The number of choices from the state, whether or not they are available.
+     */
+    public int choices(int state) {
+        return story.choices(state);
+    }
+
+    /**
+     * @param state <code>int</code> The state.
+     * @return <code>boolean</code> If the state has no choices at all.
+     */
+    public boolean isEnd(int state) {
+        return story.isEnd(state);
+    }
+
+    /**
+     * @param state  <code>int</code> The current state.
+     * @param choice <code>int</code> The choice, from 0 up to {@link #choices(int)}.
+     * @param vars   {@link Object} The state of the session.
+     * @return <code>boolean</code> If the guard of the choice holds.
+     * @throws IndexOutOfBoundsException if the state or choice does not exist.
+     */
+    public boolean available(int state, int choice, S vars) {
+        return logic.guard(story.position(state, choice), vars);
+    }
+
+    /**
+     * Makes a choice and runs the effect of the state it leads to.
+     *
+     * @param state  <code>int</code> The current state.
+     * @param choice <code>int</code> The choice being made, from 0 up to {@link #choices(int)}.
+     * @param vars   {@link Object} The state of the session, changed by the effect.
+     * @return <code>int</code> The state the choice leads to.
+     * @throws IndexOutOfBoundsException if the state or choice does not exist.
+     * @throws IllegalStateException     if the guard of the choice does not hold.
+     */
+    public int choose(int state, int choice, S vars) {
+        int position = story.position(state, choice);
+        if (!logic.guard(position, vars)) throw new IllegalStateException("Choice " + choice + " of state " + state + " is not available.");
+
+        int next = story.target(position);
+        logic.effect(next, vars);
+        return next;
+    }
+}
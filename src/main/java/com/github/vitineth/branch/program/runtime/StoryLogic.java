@@ -0,0 +1,35 @@
+package com.github.vitineth.branch.program.runtime;
+
+/**
+ * The guards and effects of a {@link CompiledStory} compiled into plain Java by {@link StoryLogicCompiler}. Every guard
+ * and effect becomes its own small static method in a single generated subclass, reached through nested switches of
+ * at most 256 cases, so every method stays small enough for the JIT to compile and inline and evaluating a choice
+ * costs no more than a hand written condition.
+ * <p/>
+ * This class is public only so the generated classes, which are defined by their own class loader, can extend it.
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @param <S> The type of the state the guards and effects are written against.
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public abstract class StoryLogic<S> {
+
+    /**
+     * @param choice <code>int</code> The position of the choice among the choices of every state, as given by
+     *               {@link CompiledStory#position(int, int)}.
+     * @param state  {@link Object} The state of the session.
+     * @return <code>boolean</code> If the guard of the choice holds, or <code>true</code> if it has no guard.
+     */
+    public abstract boolean guard(int choice, S state);
+
+    /**
+     * Runs the effect of a state, doing nothing if it has no effect.
+     *
+     * @param node  <code>int</code> The state that has been reached.
+     * @param state {@link Object} The state of the session.
+     */
+    public abstract void effect(int node, S state);
+}
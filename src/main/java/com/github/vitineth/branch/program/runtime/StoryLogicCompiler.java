@@ -0,0 +1,303 @@
+package com.github.vitineth.branch.program.runtime;
+
+import org.mdkt.compiler.InMemoryJavaCompiler;
+
+import javax.tools.ToolProvider;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Generates the source of a {@link StoryLogic} for a story and compiles it with {@link InMemoryJavaCompiler}. Guards
+ * are Java boolean expressions and effects are Java statements, both written against a variable named
+ * <code>state</code> of the state type given by the host.
+ * <p/>
+ * A class file can only hold so many methods, so the choices and states are split into parts of {@link #PART_SIZE}
+ * positions and the guards and effects of each part are compiled together into one class. Most stories fit in a
+ * single part, whose class is used directly; larger stories pick the part with a single array lookup. Each class is
+ * cached against the state type by a SHA-256 hash of its source, so loading the same story again, or a story with only
+ * a few parts changed, only runs the compiler on what is new. The cache of a state type holds at most
+ * {@link #CACHE_SIZE} classes and goes with the type if it is unloaded.
+ * <p/>
+ * The generated class only refers to {@link StoryLogic} and the state type, so both have to be public and visible to
+ * the system class loader.
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public class StoryLogicCompiler {
+
+    /**
+     * The package of the generated classes.
+     */
+    private static final String PACKAGE = StoryLogic.class.getPackage().getName();
+    /**
+     * The number of bits of a position handled by each level of dispatch, giving switches of at most 256 cases.
+     */
+    private static final int LEVEL_BITS = 8;
+    /**
+     * The number of bits of a position that select the part it is compiled into.
+     */
+    private static final int PART_BITS = 12;
+    /**
+     * The number of choices and states compiled into each class.
+     */
+    private static final int PART_SIZE = 1 << PART_BITS;
+    /**
+     * The most compiled classes cached for each state type, dropping the least recently used past this.
+     */
+    private static final int CACHE_SIZE = 1024;
+    /**
+     * The compiled classes for each state type by the hash of their source.
+     */
+    private static final ClassValue<Map<String, Class<?>>> CACHE = new ClassValue<Map<String, Class<?>>>() {
+        @Override
+        protected Map<String, Class<?>> computeValue(Class<?> type) {
+            return Collections.synchronizedMap(new LinkedHashMap<String, Class<?>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Class<?>> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+        }
+    };
+
+    /**
+     * Compiles the guards and effects of the story, reusing the classes compiled for identical parts before.
+     *
+     * @param story {@link CompiledStory} The story.
+     * @param type  {@link Class} The type of the state the guards and effects are written against.
+     * @param <S>   The type of the state.
+     * @return {@link StoryLogic} The compiled logic.
+     * @throws IllegalArgumentException if the state type is not public or the logic does not compile. The compiler
+     *                                  errors are printed to the standard error stream.
+     * @throws IllegalStateException    if the running JVM has no Java compiler.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static <S> StoryLogic<S> compile(CompiledStory story, Class<S> type) {
+        if (!Modifier.isPublic(type.getModifiers()) || type.getCanonicalName() == null) {
+            throw new IllegalArgumentException("The state type " + type.getName() + " must be a public top level or static nested class.");
+        }
+
+        int positions = Math.max(story.choiceCount(), story.size());
+        StoryLogic<S>[] parts = new StoryLogic[Math.max(1, (positions + PART_SIZE - 1) >>> PART_BITS)];
+        for (int i = 0; i < parts.length; i++) parts[i] = compilePart(story, type, i << PART_BITS);
+        return parts.length == 1 ? parts[0] : new Parts<>(parts);
+    }
+
+    /**
+     * Compiles the guards of the choices and the effects of the states in a single part.
+     *
+     * @param story {@link CompiledStory} The story.
+     * @param type  {@link Class} The type of the state.
+     * @param from  <code>int</code> The first position in the part.
+     * @param <S>   The type of the state.
+     * @return {@link StoryLogic} The compiled logic of the part.
+     */
+    @SuppressWarnings("unchecked")
+    private static <S> StoryLogic<S> compilePart(CompiledStory story, Class<S> type, int from) {
+        String body = generateBody(story, type.getCanonicalName(), from, from + PART_SIZE);
+        if (body == null) return (StoryLogic<S>) Unconditional.INSTANCE;
+
+        String hash = hash(type.getName() + "\n" + body);
+        Map<String, Class<?>> cache = CACHE.get(type);
+        Class<?> compiled = cache.get(hash);
+        if (compiled == null) {
+            compiled = compile(hash, type.getCanonicalName(), body);
+            Class<?> existing = cache.putIfAbsent(hash, compiled);
+            if (existing != null) compiled = existing;
+        }
+
+        try {
+            return (StoryLogic<S>) compiled.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("The compiled logic could not be created.", e);
+        }
+    }
+
+    /**
+     * Runs the compiler on the generated class.
+     *
+     * @param hash {@link String} The hash of the source, used in the name of the class.
+     * @param type {@link String} The canonical name of the state type.
+     * @param body {@link String} The members of the class.
+     * @return {@link Class} The compiled class.
+     */
+    private static Class<?> compile(String hash, String type, String body) {
+        if (ToolProvider.getSystemJavaCompiler() == null) {
+            throw new IllegalStateException("Guards and effects need a Java compiler, which this JVM does not have. Run the program with a JDK.");
+        }
+
+        String name = "Logic" + hash.substring(0, 16);
+        String source = "package " + PACKAGE + ";\n\npublic final class " + name + " extends " + StoryLogic.class.getName()
+                + "<" + type + "> {\n" + body + "}\n";
+        try {
+            return InMemoryJavaCompiler.compile(PACKAGE + "." + name, source);
+        } catch (Exception | LinkageError e) {
+            throw new IllegalArgumentException("The guards and effects of the story do not compile.", e);
+        }
+    }
+
+    /**
+     * Generates the members of the class of a part: a static method for every guard and effect followed by the
+     * dispatch methods that reach them.
+     *
+     * @param story {@link CompiledStory} The story.
+     * @param type  {@link String} The canonical name of the state type.
+     * @param from  <code>int</code> The first position in the part.
+     * @param to    <code>int</code> One more than the last position in the part.
+     * @return {@link String} The source of the members or <code>null</code> if the part has no guards or effects.
+     */
+    private static String generateBody(CompiledStory story, String type, int from, int to) {
+        StringBuilder sb = new StringBuilder();
+
+        List<Integer> guards = new ArrayList<>();
+        for (int i = from; i < Math.min(to, story.choiceCount()); i++) {
+            String guard = story.guardAt(i);
+            if (guard == null) continue;
+            guards.add(i);
+            sb.append("    // Choice ").append(i).append(" to state ").append(story.target(i)).append('\n');
+            sb.append("    private static boolean g").append(i).append("(final ").append(type).append(" state) {\n");
+            sb.append("        return (").append(guard).append("\n        );\n    }\n\n");
+        }
+
+        List<Integer> effects = new ArrayList<>();
+        for (int i = from; i < Math.min(to, story.size()); i++) {
+            String effect = story.getEffect(i);
+            if (effect == null) continue;
+            effects.add(i);
+            sb.append("    // State ").append(i).append('\n');
+            sb.append("    private static void e").append(i).append("(final ").append(type).append(" state) {\n");
+            sb.append(effect).append("\n    }\n\n");
+        }
+
+        if (guards.isEmpty() && effects.isEmpty()) return null;
+
+        dispatch(sb, true, type, "guard", toArray(guards), PART_SIZE);
+        dispatch(sb, false, type, "effect", toArray(effects), PART_SIZE);
+        return sb.toString();
+    }
+
+    /**
+     * Generates the public entry point for guards or effects and the tree of switches beneath it.
+     *
+     * @param sb    {@link StringBuilder} Where the source is written.
+     * @param guard <code>boolean</code> If the methods are guards rather than effects.
+     * @param type  {@link String} The canonical name of the state type.
+     * @param name  {@link String} The name of the entry point.
+     * @param keys  <code>int[]</code> The positions that have a method, in ascending order.
+     * @param limit <code>int</code> The number of positions in a part.
+     */
+    private static void dispatch(StringBuilder sb, boolean guard, String type, String name, int[] keys, int limit) {
+        int shift = 0;
+        while (shift < 24 && (limit - 1) >>> (shift + LEVEL_BITS) != 0) shift += LEVEL_BITS;
+
+        sb.append("    @Override\n    public ").append(guard ? "boolean " : "void ").append(name)
+                .append("(final int i, final ").append(type).append(" state) {\n");
+        if (keys.length > 0) {
+            sb.append("        ").append(guard ? "return " : "").append(name).append("_(i, state);\n");
+        } else if (guard) {
+            sb.append("        return true;\n");
+        }
+        sb.append("    }\n\n");
+        if (keys.length > 0) level(sb, guard, type, name + "_", keys, 0, keys.length, shift);
+    }
+
+    /**
+     * Generates a switch on the bits of the position at the given shift, recursing for each group of keys that shares
+     * those bits until the last level calls the guard or effect methods directly.
+     */
+    private static void level(StringBuilder sb, boolean guard, String type, String method, int[] keys, int from, int to, int shift) {
+        sb.append("    private static ").append(guard ? "boolean " : "void ").append(method)
+                .append("(final int i, final ").append(type).append(" state) {\n");
+        sb.append("        switch (").append(shift == 0 ? "i & 0xFF" : "(i >>> " + shift + ") & 0xFF").append(") {\n");
+
+        List<int[]> children = new ArrayList<>();
+        for (int start = from; start < to; ) {
+            int prefix = keys[start] >>> shift;
+            int end = start + 1;
+            while (end < to && keys[end] >>> shift == prefix) end++;
+
+            sb.append("            case ").append(prefix & 0xFF).append(": ");
+            String target = shift == 0 ? (guard ? "g" : "e") + keys[start] : method + Integer.toHexString(prefix & 0xFF) + "_";
+            String args = shift == 0 ? "(state)" : "(i, state)";
+            sb.append(guard ? "return " : "").append(target).append(args).append(guard ? ";\n" : "; return;\n");
+            if (shift > 0) children.add(new int[]{start, end});
+            start = end;
+        }
+        sb.append("            default: ").append(guard ? "return true;" : "return;").append("\n        }\n    }\n\n");
+
+        for (int[] child : children) {
+            level(sb, guard, type, method + Integer.toHexString((keys[child[0]] >>> shift) & 0xFF) + "_", keys, child[0], child[1], shift - LEVEL_BITS);
+        }
+    }
+
+    /**
+     * @param list {@link List} The integers.
+     * @return <code>int[]</code> The integers as an array.
+     */
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) array[i] = list.get(i);
+        return array;
+    }
+
+    /**
+     * @param source {@link String} The source.
+     * @return {@link String} The SHA-256 hash of the source in hex.
+     */
+    private static String hash(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    /**
+     * The logic of a part with no guards or effects.
+     */
+    private static class Unconditional extends StoryLogic<Object> {
+
+        private static final Unconditional INSTANCE = new Unconditional();
+
+        @Override
+        public boolean guard(int choice, Object state) {
+            return true;
+        }
+
+        @Override
+        public void effect(int node, Object state) {
+        }
+    }
+
+    /**
+     * The logic of a story too large for a single class, passing each call on to the part the position is in.
+     */
+    private static class Parts<S> extends StoryLogic<S> {
+
+        private final StoryLogic<S>[] parts;
+
+        private Parts(StoryLogic<S>[] parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        public boolean guard(int choice, S state) {
+            return parts[choice >>> PART_BITS].guard(choice, state);
+        }
+
+        @Override
+        public void effect(int node, S state) {
+            parts[node >>> PART_BITS].effect(node, state);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.vitineth.branch.program.runtime;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A general purpose story state for stories that do not need a state type of their own: a set of named integers that
+ * start at 0. Guards and effects use it through the <code>state</code> variable:
+ * <pre>
+ * effect: state.add("gold", 10); state.set("met_guard", 1);
+ * guard:  state.get("gold") >= 25 && state.is("met_guard")
+ * </pre>
+ * <p/>
+ * File created by Ryan (vitineth).<br>
+ * Created on 18/10/2026.
+ *
+ * @author Ryan (vitineth)
+ * @since 18/10/2026
+ */
+public class StoryState {
+
+    /**
+     * The value of every variable that has been set.
+     */
+    private final Map<String, Integer> values = new HashMap<>();
+
+    /**
+     * @param name {@link String} The name of the variable.
+     * @return <code>int</code> The value of the variable or 0 if it has not been set.
+     */
+    public int get(String name) {
+        Integer value = values.get(name);
+        return value == null ? 0 : value;
+    }
+
+    /**
+     * @param name {@link String} The name of the variable.
+     * @return <code>boolean</code> If the variable is not 0.
+     */
+    public boolean is(String name) {
+        return get(name) != 0;
+    }
+
+    /**
+     * @param name  {@link String} The name of the variable.
+     * @param value <code>int</code> The new value of the variable.
+     */
+    public void set(String name, int value) {
+        values.put(name, value);
+    }
+
+    /**
+     * @param name  {@link String} The name of the variable.
+     * @param delta <code>int</code> The amount to add to the variable.
+     * @return <code>int</code> The new value of the variable.
+     */
+    public int add(String name, int delta) {
+        int value = get(name) + delta;
+        values.put(name, value);
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return values.toString();
+    }
+}
@@ -1,7 +1,11 @@
 package com.github.vitineth.branch.program.utils;
 
 import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.image.BufferedImage;
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Utilities to help the drawing of elements.
@@ -14,23 +18,127 @@ import java.util.*;
  */
 public class DrawUtils {
 
+    /**
+     * The spacing between two adjacent grid lines. Lines alternate between a darker and a brighter shade so the
+     * repeating pattern is twice this size.
+     */
+    public static final int GRID_SPACING = 25 / 2;
+    /**
+     * The colour connections between nodes are drawn in.
+     */
+    public static final Color CONNECTION_COLOR = Color.CYAN;
+
+    /**
+     * The pre-rendered grid tiles keyed by the device configuration they were created for and then by the grid spacing.
+     * The configuration is weakly held so tiles for a screen that is no longer in use can be collected.
+     */
+    private static final Map<GraphicsConfiguration, Map<Integer, BufferedImage>> gridTiles = new WeakHashMap<>();
+
+    /**
+     * Fills the given area with the background grid using a cached tile through a {@link TexturePaint}. The pattern is
+     * anchored at the supplied offset so moving the canvas only shifts the anchor rather than redrawing any lines. It
+     * uses the default color of {@link Color#GRAY} for the background and variations on the {@link Color#DARK_GRAY}
+     * for the lines.
+     *
+     * @param g  {@link Graphics2D} The graphics object to paint on top of.
+     * @param x  <code>int</code> The x location of the area to fill.
+     * @param y  <code>int</code> The y location of the area to fill.
+     * @param w  <code>int</code> The width of the area to fill.
+     * @param h  <code>int</code> The height of the area to fill.
+     * @param ox <code>int</code> The x offset of the canvas which the grid is anchored to.
+     * @param oy <code>int</code> The y offset of the canvas which the grid is anchored to.
+     */
+    public static void drawGrid(Graphics2D g, int x, int y, int w, int h, int ox, int oy) {
+        BufferedImage tile = getGridTile(g.getDeviceConfiguration(), GRID_SPACING);
+        int size = tile.getWidth();
+
+        Paint paint = g.getPaint();
+        g.setPaint(new TexturePaint(tile, new Rectangle(Math.floorMod(ox, size), Math.floorMod(oy, size), size, size)));
+        g.fillRect(x, y, w, h);
+        g.setPaint(paint);
+    }
+
+    /**
+     * Returns the grid tile for the given configuration and spacing, rendering it the first time it is requested.
+     *
+     * @param gc      {@link GraphicsConfiguration} The configuration of the device being drawn to, can be null.
+     * @param spacing <code>int</code> The distance between two grid lines.
+     * @return {@link BufferedImage} A tile of two by two grid cells.
+     */
+    private static synchronized BufferedImage getGridTile(GraphicsConfiguration gc, int spacing) {
+        Map<Integer, BufferedImage> tiles = gridTiles.computeIfAbsent(gc, k -> new HashMap<>());
+        BufferedImage tile = tiles.get(spacing);
+        if (tile != null) return tile;
+
+        int size = spacing * 2;
+        tile = gc == null ? new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB) : gc.createCompatibleImage(size, size, Transparency.OPAQUE);
+
+        Graphics2D g = tile.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(Color.GRAY);
+        g.fillRect(0, 0, size, size);
+
+        Color c = Color.DARK_GRAY;
+        g.setStroke(new BasicStroke(0.8f));
+        g.setColor(c.darker());
+        g.drawLine(0, 0, 0, size);
+        g.drawLine(0, 0, size, 0);
+
+        g.setStroke(new BasicStroke(1f));
+        g.setColor(c.brighter());
+        g.drawLine(spacing, 0, spacing, size);
+        g.drawLine(0, spacing, size, spacing);
+        g.dispose();
+
+        tiles.put(spacing, tile);
+        return tile;
+    }
+
+    /**
+     * The per character advances for every font and render context text has been wrapped with. The contexts are
+     * normalized by {@link #getAdvances(Graphics2D)} so there are only as many as there are combinations of hints.
+     */
+    private static final Map<FontRenderContext, Map<Font, Advances>> advances = new HashMap<>();
+
     /**
      * Wraps the given string using the given font supplied with the {@link Graphics2D} and the given max width.
      * It tries to cut at spaces but if one cannot be achieved it will crop it at the raw character.
+     * <p/>
+     * The text is measured in a single pass by accumulating the cached advance of each character onto the width of the
+     * current line, which gives the same result as measuring the line with {@link FontMetrics#charsWidth(char[], int, int)}
+     * each time. Text containing characters that need complex layout (combining marks, right to left or Indic scripts)
+     * or fonts with layout attributes fall back to measuring the whole line through the {@link Font}. Text is measured
+     * in user space so the result does not depend on the zoom of the graphics object.
      * @param text {@link String} The raw text
      * @param maxWidth <code>int</code> The maximum length the text can reach.
      * @param g {@link Graphics2D} The graphics object.
      * @return {@link String}[] The array of wrapped lines.
      */
     public static String[] wrapLines(String text, int maxWidth, Graphics2D g) {
-        java.util.List<String> lines = new ArrayList<>();
+        Advances adv = getAdvances(g);
+        char[] chars = text.toCharArray();
+
+        List<String> lines = new ArrayList<>();
         int lastCut = 0;
         int active = 0;
         int lastSpace = -1;
 
-        while ((active += 1) < text.length()) {
-            if (text.charAt(active) == ' ') lastSpace = active;
-            if (g.getFontMetrics().charsWidth(text.substring(lastCut, active).toCharArray(), 0, active - lastCut) >= maxWidth) {
+        //The accumulated width of the characters between lastCut and measured.
+        int measured = 0;
+        float width = 0;
+        boolean complex = adv.layout;
+
+        while ((active += 1) < chars.length) {
+            if (chars[active] == ' ') lastSpace = active;
+
+            while (measured < active) {
+                char c = chars[measured++];
+                if (isComplex(c)) complex = true;
+                else width += adv.get(c);
+            }
+
+            int lineWidth = (int) (0.5 + (complex ? adv.measure(chars, lastCut, active) : width));
+            if (lineWidth >= maxWidth) {
                 if (lastSpace != -1) {
                     lines.add(text.substring(lastCut, lastSpace).trim());
 
@@ -42,10 +150,87 @@ public class DrawUtils {
 
                     lastCut = active;
                 }
+
+                measured = lastCut;
+                width = 0;
+                complex = adv.layout;
             }
         }
         if (lastCut != active) lines.add(text.substring(lastCut, text.length()));
         return lines.toArray(new String[lines.size()]);
     }
 
+    /**
+     * Returns the shared advances for the current font of the given graphics object. Only the anti-aliasing and
+     * fractional metrics hints of its render context are kept, dropping the transform, so every zoom level shares the
+     * same advances rather than adding new ones.
+     *
+     * @param g {@link Graphics2D} The graphics object text is being measured with.
+     * @return {@link Advances} The cached advances.
+     */
+    private static synchronized Advances getAdvances(Graphics2D g) {
+        Font font = g.getFont();
+        FontRenderContext graphics = g.getFontRenderContext();
+        FontRenderContext context = new FontRenderContext(null, graphics.getAntiAliasingHint(), graphics.getFractionalMetricsHint());
+        return advances.computeIfAbsent(context, k -> new HashMap<>()).computeIfAbsent(font, k -> new Advances(font, context));
+    }
+
+    /**
+     * Whether the character is measured through a full text layout by the {@link FontMetrics} rather than as the sum of
+     * its advances. This matches the ranges the JDK treats as complex text.
+     *
+     * @param c <code>char</code> The character to check.
+     * @return <code>boolean</code> If the character needs layout.
+     */
+    private static boolean isComplex(char c) {
+        if (c < 0x0300) return false;
+        return c <= 0x036F
+                || (c >= 0x0590 && c <= 0x06FF)
+                || (c >= 0x0900 && c <= 0x0E7F)
+                || (c >= 0x0F00 && c < 0x10A0)
+                || (c >= 0x1100 && c < 0x11FF)
+                || (c >= 0x1780 && c <= 0x17FF)
+                || (c >= 0x200C && c <= 0x200D)
+                || (c >= 0x202A && c <= 0x202E)
+                || (c >= 0x206A && c <= 0x206F)
+                || Character.isSurrogate(c);
+    }
+
+    /**
+     * The advance of every character for one font and render context, split into pages of 256 characters so only the
+     * ranges that are used take up memory. A page is measured in full the first time one of its characters is needed
+     * and never changes after it is published, so every thread rendering with an equal font and render context can
+     * share the same advances without locking.
+     */
+    private static class Advances {
+        private final Font font;
+        private final FontRenderContext context;
+        private final boolean layout;
+        private final AtomicReferenceArray<float[]> pages = new AtomicReferenceArray<>(256);
+
+        private Advances(Font font, FontRenderContext context) {
+            this.font = font;
+            this.context = context;
+            this.layout = font.hasLayoutAttributes();
+        }
+
+        private float get(char c) {
+            float[] page = pages.get(c >> 8);
+            if (page == null) {
+                page = new float[256];
+                char[] single = new char[1];
+                for (int i = 0; i < page.length; i++) {
+                    single[0] = (char) ((c & 0xFF00) | i);
+                    page[i] = (float) font.getStringBounds(single, 0, 1, context).getWidth();
+                }
+                if (!pages.compareAndSet(c >> 8, null, page)) page = pages.get(c >> 8);
+            }
+            return page[c & 0xFF];
+        }
+
+        private float measure(char[] chars, int start, int end) {
+            return (float) font.getStringBounds(chars, start, end, context).getWidth();
+        }
+    }
+
 }
@@ -9,6 +9,9 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * A class allowing the modification of a node.
@@ -25,6 +28,8 @@ public class DetailWindow extends JFrame {
     private JTextField idField;
     private JTextArea promptField;
     private JTextArea responseField;
+    private JTextArea effectField;
+    private Map<Node, JTextField> guardFields = new LinkedHashMap<>();
     private NodePassback passback;
 
     public DetailWindow(Node node, NodePassback passback) throws HeadlessException {
@@ -33,7 +38,7 @@ public class DetailWindow extends JFrame {
         this.passback = passback;
 
         setDefaultCloseOperation(DISPOSE_ON_CLOSE);
-        setSize(680, 300);
+        setSize(680, 420 + 26 * Math.min(node.getConnections().size(), 6));
 
         addWindowListener(new WindowAdapter() {
             @Override
@@ -58,11 +63,21 @@ public class DetailWindow extends JFrame {
      */
     private void saveChanges() {
         Node n = new Node(node.getX(), node.getY(), idField.getText(), promptField.getText(), responseField.getText());
-        n.setConnections(node.getConnections());
         n.setHeight(node.getHeight());
         n.setWidth(node.getWidth());
-        passback.detailsAltered(node, n);
-        node = n;
+        n.setEffect(emptyToNull(effectField.getText()));
+
+        Map<Node, String> guards = new HashMap<>();
+        for (Map.Entry<Node, JTextField> e : guardFields.entrySet()) guards.put(e.getKey(), emptyToNull(e.getValue().getText()));
+        passback.detailsAltered(node, n, guards);
+    }
+
+    /**
+     * @param text {@link String} The text of a field.
+     * @return {@link String} The text or <code>null</code> if it is blank.
+     */
+    private static String emptyToNull(String text) {
+        return text.trim().isEmpty() ? null : text;
     }
 
     /**
@@ -110,7 +125,35 @@ public class DetailWindow extends JFrame {
             }
         });
 
-        GridBagConstraints submitGBC = new GridBagConstraints(1, 3, 1, 1, 0d, 0d, GridBagConstraints.LAST_LINE_END, GridBagConstraints.NONE, new Insets(0, 0, 0, 0), 0, 0);
+        JLabel effectLabel = new JLabel("Effect: ");
+        effectLabel.setToolTipText("Java statements run on the story state when this node is reached.");
+        effectField = new JTextArea(node.getEffect() == null ? "" : node.getEffect());
+        effectField.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        add(effectLabel, new GridBagConstraints(0, 3, 1, 1, 0d, 0d, GridBagConstraints.FIRST_LINE_END, GridBagConstraints.NONE, new Insets(0, 0, 0, 0), 0, 0));
+        add(new JScrollPane(effectField), new GridBagConstraints(1, 3, 1, 1, 1d, 0.5d, 10, GridBagConstraints.BOTH, new Insets(0, 0, 0, 0), 0, 0));
+
+        if (!node.getConnections().isEmpty()) {
+            JPanel guards = new JPanel(new GridBagLayout());
+            int row = 0;
+            for (Node c : node.getConnections()) {
+                JTextField field = new JTextField(node.getGuard(c) == null ? "" : node.getGuard(c));
+                field.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+                field.setBorder(new MatteBorder(1, 1, 1, 1, Color.lightGray));
+                guardFields.put(c, field);
+
+                guards.add(new JLabel(c.getId() + " if "), new GridBagConstraints(0, row, 1, 1, 0d, 0d, GridBagConstraints.LINE_END, GridBagConstraints.NONE, new Insets(0, 0, 0, 0), 0, 0));
+                guards.add(field, new GridBagConstraints(1, row, 1, 1, 1d, 0d, 10, GridBagConstraints.HORIZONTAL, new Insets(0, 0, 0, 0), 0, 0));
+                row++;
+            }
+            guards.add(new JPanel(), new GridBagConstraints(0, row, 2, 1, 1d, 1d, 10, GridBagConstraints.BOTH, new Insets(0, 0, 0, 0), 0, 0));
+
+            JLabel guardsLabel = new JLabel("Guards: ");
+            guardsLabel.setToolTipText("Java conditions on the story state that have to hold for each choice to be available.");
+            add(guardsLabel, new GridBagConstraints(0, 4, 1, 1, 0d, 0d, GridBagConstraints.FIRST_LINE_END, GridBagConstraints.NONE, new Insets(0, 0, 0, 0), 0, 0));
+            add(new JScrollPane(guards), new GridBagConstraints(1, 4, 1, 1, 1d, 0.5d, 10, GridBagConstraints.BOTH, new Insets(0, 0, 0, 0), 0, 0));
+        }
+
+        GridBagConstraints submitGBC = new GridBagConstraints(1, 5, 1, 1, 0d, 0d, GridBagConstraints.LAST_LINE_END, GridBagConstraints.NONE, new Insets(0, 0, 0, 0), 0, 0);
 
         add(submit, submitGBC);
     }
@@ -1,9 +1,12 @@
 package com.github.vitineth.branch.program.window.primary;
 
+import com.github.vitineth.branch.program.batch.BranchBatch;
+
 import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.plaf.nimbus.NimbusLookAndFeel;
 import java.awt.*;
+import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
@@ -11,7 +14,7 @@ import java.io.IOException;
 /**
  * The parent frame for the {@link BranchComponent}. It contains a header bar with a collection of buttons which link
  * to the key combinations shown in {@link BranchComponent#keyPressed(KeyEvent)}. They use the default images in
- * the buttons.png file.
+ * the buttons.png file, and a search box on the right which moves the canvas to the nodes that match.
  * <p/>
  * File created by Ryan (vitineth).<br>
  * Created on 31/08/2016.
@@ -128,6 +131,16 @@ public class BranchAdventure extends JFrame {
         exportImageLabel.addActionListener(l -> c.imageExport());
         helpLabel.addActionListener(l -> c.help());
 
+        JTextField searchField = new JTextField(20);
+        searchField.setToolTipText("<html>Search the ids, prompts and responses, press enter for the next match [Ctrl+F]<br>"
+                + "Use \"quotes\" for a phrase and a * at the end of a word to match its start</html>");
+        searchField.addActionListener(l -> c.find(searchField.getText()));
+        searchField.registerKeyboardAction(l -> c.requestFocusInWindow(), KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), JComponent.WHEN_FOCUSED);
+        getRootPane().registerKeyboardAction(l -> {
+            searchField.requestFocusInWindow();
+            searchField.selectAll();
+        }, KeyStroke.getKeyStroke(KeyEvent.VK_F, InputEvent.CTRL_DOWN_MASK), JComponent.WHEN_IN_FOCUSED_WINDOW);
+
         GridBagConstraints minusLabelGBC = new GridBagConstraints(0, 0, 1, 1, 0d, 0d, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(0, 0, 0, 0), 0, 0);
         GridBagConstraints addLabelGBC = new GridBagConstraints(1, 0, 1, 1, 0d, 0d, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(0, 0, 0, 0), 0, 0);
         GridBagConstraints connectLabelGBC = new GridBagConstraints(2, 0, 1, 1, 0d, 0d, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(0, 0, 0, 0), 0, 0);
@@ -137,6 +150,7 @@ public class BranchAdventure extends JFrame {
         GridBagConstraints exportImageLabelGBC = new GridBagConstraints(6, 0, 1, 1, 0d, 0d, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(0, 0, 0, 0), 0, 0);
         GridBagConstraints helpLabelGBC = new GridBagConstraints(7, 0, 1, 1, 0d, 0d, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(0, 0, 0, 0), 0, 0);
         GridBagConstraints spacerGBC = new GridBagConstraints(8, 0, 1, 1, 1d, 1d, GridBagConstraints.LINE_END, GridBagConstraints.NONE, new Insets(0, 0, 0, 0), 0, 0);
+        GridBagConstraints searchFieldGBC = new GridBagConstraints(9, 0, 1, 1, 0d, 0d, GridBagConstraints.LINE_END, GridBagConstraints.NONE, new Insets(0, 0, 0, 5), 0, 0);
 
         header.add(minusLabel, minusLabelGBC);
         header.add(addLabel, addLabelGBC);
@@ -147,12 +161,24 @@ public class BranchAdventure extends JFrame {
         header.add(exportImageLabel, exportImageLabelGBC);
         header.add(helpLabel, helpLabelGBC);
         header.add(spacer, spacerGBC);
+        header.add(searchField, searchFieldGBC);
 
         add(header, BorderLayout.NORTH);
         add(c, BorderLayout.CENTER);
     }
 
+    /**
+     * Opens the editor or, if any arguments are given, runs them as a headless {@link BranchBatch} command without
+     * touching the display.
+     *
+     * @param args {@link String}[] The batch command and its arguments, or nothing to open the editor.
+     */
     public static void main(String[] args) {
+        if (args.length > 0) {
+            BranchBatch.main(args);
+            return;
+        }
+
         SwingUtilities.invokeLater(() -> new BranchAdventure().setVisible(true));
     }
 
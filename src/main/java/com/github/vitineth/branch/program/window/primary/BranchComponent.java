@@ -1,25 +1,47 @@
 package com.github.vitineth.branch.program.window.primary;
 
+import com.github.vitineth.branch.program.analysis.StoryAnalysis;
+import com.github.vitineth.branch.program.history.Edit;
+import com.github.vitineth.branch.program.history.History;
+import com.github.vitineth.branch.program.io.BinaryStoryWriter;
+import com.github.vitineth.branch.program.io.ImageExporter;
+import com.github.vitineth.branch.program.io.StoryFiles;
+import com.github.vitineth.branch.program.io.StoryJournal;
+import com.github.vitineth.branch.program.io.StoryReader;
+import com.github.vitineth.branch.program.io.SvgExporter;
+import com.github.vitineth.branch.program.layout.ForceLayout;
+import com.github.vitineth.branch.program.layout.LayeredLayout;
 import com.github.vitineth.branch.program.utils.DrawUtils;
 import com.github.vitineth.branch.program.utils.FileUtils;
 import com.github.vitineth.branch.program.node.Node;
+import com.github.vitineth.branch.program.node.SearchIndex;
+import com.github.vitineth.branch.program.node.Selection;
+import com.github.vitineth.branch.program.node.SpatialIndex;
+import com.github.vitineth.branch.program.node.StoryGraph;
+import com.github.vitineth.branch.program.node.StorySnapshot;
+import com.github.vitineth.branch.program.passbacks.ProgressPassback;
 import com.github.vitineth.branch.program.passbacks.NodePassback;
 import com.github.vitineth.branch.program.passbacks.TitlePassback;
 import com.github.vitineth.branch.program.window.DetailWindow;
 import com.google.gson.*;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
+import javax.swing.Timer;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
 import java.awt.image.BufferedImage;
+import java.nio.file.Path;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.StreamCorruptedException;
 import java.security.InvalidParameterException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * The actual mapping component of the program. It handles all nodes and their respective drawing. The add method is
@@ -31,7 +53,7 @@ import java.util.stream.Collectors;
  * @author Ryan (vitineth)
  * @since 31/08/2016
  */
-public class BranchComponent extends JPanel implements MouseMotionListener, MouseListener, KeyListener {
+public class BranchComponent extends JPanel implements MouseMotionListener, MouseListener, MouseWheelListener, KeyListener {
 
     /**
      * The x offset from the top left corner of a node when the mouse button is pressed and reset to 0 when released or
@@ -52,12 +74,53 @@ public class BranchComponent extends JPanel implements MouseMotionListener, Mous
      * The y offset of the canvas determined during the drag event if no nodes are valid.
      */
     private int offsetY = 0;
+    /**
+     * The zoom factor of the canvas, changed with the mouse wheel.
+     */
+    private double scale = 1;
+
+    /**
+     * The furthest the canvas can be zoomed out.
+     */
+    private static final double MIN_SCALE = 0.02;
+    /**
+     * The furthest the canvas can be zoomed in.
+     */
+    private static final double MAX_SCALE = 4;
+    /**
+     * The scale below which nodes are drawn as plain boxes without any text.
+     */
+    private static final double SIMPLE_SCALE = 0.45;
+    /**
+     * The scale below which nodes are drawn as single points.
+     */
+    private static final double POINT_SCALE = 0.15;
+    /**
+     * The size of a node on the component when it is drawn as a point.
+     */
+    private static final double POINT_SIZE = 3;
 
     /**
-     * The index of the node that is being moved at that moment or -1 if nothing is in the process of being moved (also
+     * The handle of the node that is being moved at that moment or -1 if nothing is in the process of being moved (also
      * used for canvas movement).
      */
     private int moving = -1;
+    /**
+     * If the node being moved has been dragged since the mouse was pressed.
+     */
+    private boolean moved = false;
+    /**
+     * The x location of the node being moved when the mouse was pressed.
+     */
+    private int movedFromX;
+    /**
+     * The y location of the node being moved when the mouse was pressed.
+     */
+    private int movedFromY;
+    /**
+     * The canvas without the moving node rendered when a move starts and dropped when it ends.
+     */
+    private BufferedImage staticLayer;
     /**
      * The last location of the mouse determined through either the {@link #mouseMoved(MouseEvent)} event or the
      * {@link #mouseDragged(MouseEvent)} event if the canvas is being used.
@@ -75,24 +138,99 @@ public class BranchComponent extends JPanel implements MouseMotionListener, Mous
      * If the layout has been modified since it was loaded or last saved.
      */
     private boolean modified;
+    /**
+     * Counts every modification so a save running in the background can tell if the layout changed after its snapshot
+     * was taken.
+     */
+    private int revision = 0;
+    /**
+     * Records every change to the graph so saving a {@link StoryFiles#BINARY_EXTENSION} file only has to append the
+     * changes to its journal.
+     */
+    private final StoryJournal journal = new StoryJournal();
+    /**
+     * The edits that can be undone and redone. The budget can be changed with the <code>branch.history.budget</code>
+     * system property in bytes.
+     */
+    private final History history = new History(Long.getLong("branch.history.budget", History.DEFAULT_BUDGET));
+    /**
+     * The load, save or export running in the background or <code>null</code> if none has been started.
+     */
+    private BackgroundTask<?> task;
+    /**
+     * How long a notice about a finished background task is shown for in milliseconds.
+     */
+    private static final int NOTICE_DURATION = 3000;
+    /**
+     * Roughly how long the automatic layout spends improving the layout in milliseconds.
+     */
+    private static final long LAYOUT_BUDGET = Long.getLong("branch.layout.budget", LayeredLayout.DEFAULT_BUDGET);
+    /**
+     * The number of times a second the {@link #animation} of the force layout is drawn.
+     */
+    private static final int FRAME_RATE = 30;
+    /**
+     * The force layout being animated or <code>null</code> if none is running.
+     */
+    private ForceAnimation animation;
+    /**
+     * The handles of the nodes that the force layout leaves where they are.
+     */
+    private BitSet pinned = new BitSet();
     /**
      * A passback interface to allow for the adjustment of the title.
      */
     private TitlePassback titlePassback;
 
     /**
-     * The list of nodes currently active on the canvas.
+     * The nodes currently active on the canvas.
+     */
+    private StoryGraph graph = new StoryGraph();
+    /**
+     * The nodes of the {@link #graph} in draw order.
+     */
+    private java.util.List<Node> nodes = graph.getNodes();
+    /**
+     * The spatial index over the bounds of every node in {@link #nodes} used for culling and hit testing.
+     */
+    private SpatialIndex index = new SpatialIndex();
+    /**
+     * The index over the words of every node in the {@link #graph} used by {@link #find(String)}.
+     */
+    private SearchIndex words = new SearchIndex();
+    /**
+     * The query last passed to {@link #find(String)} or <code>null</code> if nothing has been searched for.
+     */
+    private String lastQuery;
+    /**
+     * The handle of the node the last search moved to or <code>-1</code> if there is none.
+     */
+    private int lastMatch = -1;
+    /**
+     * The structural problems of the {@link #graph}, kept up to date by every edit.
+     */
+    private StoryAnalysis analysis;
+    /**
+     * If the nodes with problems found by the {@link #analysis} are highlighted.
+     */
+    private boolean showIssues = true;
+    /**
+     * The width of the outline drawn around nodes with problems.
+     */
+    private static final float ISSUE_STROKE = 3;
+    /**
+     * The diameter of the marker drawn on pinned nodes.
      */
-    private java.util.List<Node> nodes = new ArrayList<>();
+    private static final int PIN_SIZE = 8;
 
     /**
      * The last applied modifiers to any key pressed. Reset to 0 when the key is released.
      */
     private int modifiers = 0;
     /**
-     * The list of selected nodes (references the id of the {@link #nodes} list).
+     * The selected nodes (references the handles of the {@link #graph}).
      */
-    private java.util.List<Integer> selections = new ArrayList<>();
+    private Selection selections = new Selection();
     /**
      * The list of active notifications
      */
@@ -104,16 +242,22 @@ public class BranchComponent extends JPanel implements MouseMotionListener, Mous
         enableInputMethods(true);
         addMouseMotionListener(this);
         addMouseListener(this);
+        addMouseWheelListener(this);
         addKeyListener(this);
 
         Node n1 = new Node(30, 30, generateID(), "Welcome to the branching story program.", "Hover over each of the buttons above to see what they do.");
         Node n2 = new Node(180, 30, generateID(), "This is the PROMPT. This is what is shown as one of the choices when the story is played.", "This is the RESPONSE. It's shown when the option is clicked above the PROMPT");
-        nodes.add(n1);
-        nodes.add(n2);
+        graph.add(n1);
+        graph.add(n2);
+        index.insert(n1);
+        index.insert(n2);
+        words.insert(n1);
+        words.insert(n2);
 
         updateTitle();
 
-        n1.getConnections().add(n2);
+        graph.connect(n1, n2);
+        analysis = new StoryAnalysis(graph);
     }
 
     @Override
@@ -128,99 +272,383 @@ public class BranchComponent extends JPanel implements MouseMotionListener, Mous
         g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
         super.paintComponent(g);
 
-        g.fillRect(0, 0, getWidth(), getHeight());
-        drawGrid(g, getWidth(), getHeight());
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+        if (animation != null) animation.pending = false;
+
+        Node n = graph.get(moving);
+        if (n != null) {
+            AffineTransform device = g.getTransform();
+            double sx = device.getScaleX();
+            double sy = device.getScaleY();
+            int layerWidth = (int) Math.ceil(getWidth() * sx);
+            int layerHeight = (int) Math.ceil(getHeight() * sy);
+            if (staticLayer == null || staticLayer.getWidth() != layerWidth || staticLayer.getHeight() != layerHeight) {
+                staticLayer = renderStaticLayer(g, n, layerWidth, layerHeight, sx, sy);
+            }
+
+            Graphics2D lg = (Graphics2D) g.create();
+            lg.scale(1 / sx, 1 / sy);
+            lg.drawImage(staticLayer, 0, 0, null);
+            lg.dispose();
+
+            Graphics2D cg = (Graphics2D) g.create();
+            cg.transform(getTransform());
+
+            Path2D.Float path = new Path2D.Float();
+            for (Node c : n.getConnections()) appendConnection(path, n, c);
+            for (Node c : n.getIncoming()) appendConnection(path, c, n);
+            strokeConnections(cg, path);
+            drawNodes(cg, Collections.singletonList(n));
+            cg.dispose();
+        } else {
+            drawCanvas(g, clip, null);
+        }
+
+        for (Notification notification : notifications){
+            notification.draw(g, getWidth(), getHeight());
+        }
+    }
+
+    /**
+     * Draws the grid, connections and nodes within the given area of the component. The canvas is drawn through
+     * {@link #getTransform()} and uses less detail as the canvas is zoomed out: below {@link #SIMPLE_SCALE} the nodes
+     * are drawn without any text and below {@link #POINT_SCALE} they are drawn as points with the connections drawn
+     * between their centres.
+     *
+     * @param g        {@link Graphics2D} The graphics object to paint on top of.
+     * @param area     {@link Rectangle} The area of the component to draw.
+     * @param exclude  {@link Node} A node to leave out along with all of its connections or <code>null</code>.
+     */
+    private void drawCanvas(Graphics2D g, Rectangle area, Node exclude) {
+        Graphics2D cg = (Graphics2D) g.create();
+        cg.transform(getTransform());
+        Rectangle visible = toCanvas(area);
 
-        for (int i = 0; i < nodes.size(); i++) {
-            nodes.get(i).draw(g, selections.contains(i), offsetX, offsetY);
+        if (scale >= SIMPLE_SCALE) {
+            DrawUtils.drawGrid(cg, visible.x, visible.y, visible.width, visible.height, 0, 0);
+        } else {
+            cg.setColor(Color.GRAY);
+            cg.fill(visible);
+        }
+        if (scale < POINT_SCALE) {
+            cg.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
         }
 
-        for (Notification n : notifications){
-            n.draw(g, getWidth(), getHeight());
+        drawConnections(cg, visible, exclude);
+
+        java.util.List<Node> drawn = index.query(visible);
+        if (exclude != null) drawn.remove(exclude);
+        drawNodes(cg, drawn);
+        cg.dispose();
+    }
+
+    /**
+     * Draws the given nodes at the level of detail for the current {@link #scale}.
+     *
+     * @param g        {@link Graphics2D} The graphics object to paint on top of, already in canvas space.
+     * @param drawn    {@link java.util.List} The nodes to draw.
+     */
+    private void drawNodes(Graphics2D g, java.util.List<Node> drawn) {
+        if (scale >= SIMPLE_SCALE) {
+            for (Node n : drawn) n.draw(g, selections.contains(n.getHandle()), 0, 0);
+        } else if (scale >= POINT_SCALE) {
+            for (Node n : drawn) n.drawSimple(g, selections.contains(n.getHandle()));
+        } else {
+            float size = (float) (POINT_SIZE / scale);
+            Path2D.Float points = new Path2D.Float();
+            Path2D.Float selectedPoints = new Path2D.Float();
+            for (Node n : drawn) {
+                Path2D.Float p = selections.contains(n.getHandle()) ? selectedPoints : points;
+                float cx = n.getX() + n.getWidth() / 2f - size / 2;
+                float cy = n.getY() + n.getHeight() / 2f - size / 2;
+                p.moveTo(cx, cy);
+                p.lineTo(cx + size, cy);
+                p.lineTo(cx + size, cy + size);
+                p.lineTo(cx, cy + size);
+                p.closePath();
+            }
+            g.setColor(Color.WHITE);
+            g.fill(points);
+            g.setColor(new Color(120, 120, 255));
+            g.fill(selectedPoints);
         }
+        if (showIssues) drawIssues(g, drawn);
+        if (!pinned.isEmpty() && scale >= POINT_SCALE) drawPins(g, drawn);
     }
 
     /**
-     * Draws a default grid onto the supplied graphics object with the given width and height. It uses the default
-     * color of {@link Color#GRAY} for the backround and variations on the {@link Color#DARK_GRAY} for the lines.
+     * Marks every pinned node with a dot in its top right corner.
      *
-     * @param g {@link Graphics2D} The graphics object to paint on top of.
-     * @param w <code>int</code> The width of the grid to draw.
-     * @param h <code>int</code> The height of the grid to draw.
+     * @param g     {@link Graphics2D} The graphics object to paint on top of, already in canvas space.
+     * @param drawn {@link java.util.List} The nodes that have been drawn.
      */
-    private void drawGrid(Graphics2D g, int w, int h) {
-        int gridOffset = 25;
-        g.setColor(Color.GRAY);
-        g.fillRect(0, 0, w, h);
+    private void drawPins(Graphics2D g, java.util.List<Node> drawn) {
+        g.setColor(Color.RED.darker());
+        for (Node n : drawn) {
+            if (pinned.get(n.getHandle())) g.fillOval(n.getX() + n.getWidth() - PIN_SIZE - 4, n.getY() + 4, PIN_SIZE, PIN_SIZE);
+        }
+    }
 
-        Color c = Color.DARK_GRAY;
+    /**
+     * Outlines every node with a problem found by the {@link #analysis} in the colour of its most serious problem, or
+     * recolours its point when the canvas is zoomed out below {@link #POINT_SCALE}.
+     *
+     * @param g     {@link Graphics2D} The graphics object to paint on top of, already in canvas space.
+     * @param drawn {@link java.util.List} The nodes that have been drawn.
+     */
+    private void drawIssues(Graphics2D g, java.util.List<Node> drawn) {
+        Stroke stroke = g.getStroke();
+        g.setStroke(new BasicStroke(ISSUE_STROKE));
+        float size = (float) (POINT_SIZE / scale);
+        for (Node n : drawn) {
+            Color color = getIssueColor(analysis.getIssues(n));
+            if (color == null) continue;
+
+            g.setColor(color);
+            if (scale >= POINT_SCALE) {
+                g.drawRoundRect(n.getX(), n.getY(), n.getWidth(), n.getHeight(), 10, 10);
+            } else {
+                g.fill(new Rectangle.Float(n.getX() + n.getWidth() / 2f - size / 2, n.getY() + n.getHeight() / 2f - size / 2, size, size));
+            }
+        }
+        g.setStroke(stroke);
+    }
 
-        boolean xs = true;
-        boolean ys = true;
-        for (int x = 0; x < w; x += gridOffset / 2) {
-            for (int y = 0; y < h; y += gridOffset / 2) {
-                if (xs) {
-                    g.setStroke(new BasicStroke(0.8f));
-                    g.setColor(c.darker());
-                    g.drawLine(x, 0, x, h);
-                } else {
-                    g.setStroke(new BasicStroke(1f));
-                    g.setColor(c.brighter());
-                    g.drawLine(x, 0, x, h);
-                }
-                if (ys) {
-                    g.setStroke(new BasicStroke(0.8f));
-                    g.setColor(c.darker());
-                    g.drawLine(0, y, w, y);
-                } else {
-                    g.setStroke(new BasicStroke(1f));
-                    g.setColor(c.brighter());
-                    g.drawLine(0, y, w, y);
-                }
-                ys = !ys;
+    /**
+     * @param issues <code>int</code> The problems with a node from {@link StoryAnalysis#getIssues(Node)}.
+     * @return {@link Color} The colour of the most serious problem or <code>null</code> if there are none.
+     */
+    private static Color getIssueColor(int issues) {
+        if ((issues & StoryAnalysis.LOOP) != 0) return Color.RED;
+        if ((issues & StoryAnalysis.UNREACHABLE) != 0) return Color.MAGENTA;
+        if ((issues & StoryAnalysis.ORPHAN) != 0) return Color.YELLOW;
+        if ((issues & StoryAnalysis.DEAD_END) != 0) return Color.ORANGE;
+        return null;
+    }
+
+    /**
+     * Moves the canvas so the next node matching the query is in the middle and selects it. Searching for the same
+     * query again moves on to the match after the last one, wrapping back around to the first.
+     *
+     * @param query {@link String} The query, in the form described by {@link SearchIndex}.
+     */
+    public void find(String query) {
+        int[] matches = words.search(query);
+        if (matches.length == 0) {
+            lastQuery = null;
+            lastMatch = -1;
+            logNotice("Search", query.trim().isEmpty() ? "Enter the words to search for." : "No nodes match " + query.trim() + ".");
+            return;
+        }
+
+        boolean again = query.equals(lastQuery);
+        int next = again ? Arrays.binarySearch(matches, lastMatch + 1) : 0;
+        if (next < 0) next = -next - 1;
+        if (next == matches.length) next = 0;
+        lastQuery = query;
+        lastMatch = matches[next];
+
+        Node n = graph.get(lastMatch);
+        offsetX = (int) Math.round(getWidth() / 2d - (n.getX() + n.getWidth() / 2d) * scale);
+        offsetY = (int) Math.round(getHeight() / 2d - (n.getY() + n.getHeight() / 2d) * scale);
+        selections.clear();
+        selections.add(lastMatch);
+        if (!again) logNotice("Search", matches.length == 1 ? "1 node matches." : matches.length + " nodes match, press enter for the next.");
+        repaint();
+    }
+
+    /**
+     * Toggles the highlighting of problems found by the {@link #analysis}, showing how many there are of each kind
+     * when it is turned on.
+     */
+    private void processAnalysis() {
+        showIssues = !showIssues;
+        if (showIssues) {
+            int[] counts = analysis.count();
+            if (counts[0] + counts[1] + counts[2] + counts[3] == 0) {
+                logNotice("Analysis", "No problems found.");
+            } else {
+                logNotice("Analysis", counts[2] + " in loops with no way out (red), " + counts[0] + " unreachable (magenta), "
+                        + counts[3] + " unconnected (yellow), " + counts[1] + " dead ends without " + StoryAnalysis.END_MARKER + " (orange).");
             }
-            xs = !xs;
         }
+        repaint();
     }
 
     /**
-     * Exports the entire canvas to a file including all nodes and connection with the background grid. It will show a
-     * {@link JFileChooser} to determine where to store the file launched through {@link FileUtils#showSystemOpenDialog(Component)}
+     * Draws every connection that passes through the visible area in a single pass. The connections are collected into
+     * one path and stroked once so the colour and stroke are only set once per frame, and any connection whose bounds
+     * lie entirely outside of the area is skipped.
+     *
+     * @param g       {@link Graphics2D} The graphics object to paint on top of, already in canvas space.
+     * @param visible {@link Rectangle} The visible area in canvas space.
+     * @param exclude {@link Node} A node whose connections should be left out or <code>null</code>.
      */
-    private void exportToImageFile() {
-        int lowestX = nodes.get(0).getX();
-        int lowestY = nodes.get(0).getY();
-        int greatestX = lowestX;
-        int greatestY = lowestY;
+    private void drawConnections(Graphics2D g, Rectangle visible, Node exclude) {
+        int minX = visible.x - 1;
+        int minY = visible.y - 1;
+        int maxX = visible.x + visible.width + 1;
+        int maxY = visible.y + visible.height + 1;
+
+        Path2D.Float path = new Path2D.Float();
         for (Node n : nodes) {
-            if (n.getX() < lowestX) lowestX = n.getX();
-            if (n.getY() < lowestY) lowestY = n.getY();
+            if (n == exclude) continue;
 
-            if (n.getX() + n.getWidth() > greatestX) greatestX = n.getX() + n.getWidth();
-            if (n.getY() + n.getHeight() > greatestY) greatestY = n.getY() + n.getHeight();
+            int sx = n.getX() + n.getWidth();
+            int sy = n.getConnectorY();
+            for (Node d : n.getConnections()) {
+                if (d == exclude) continue;
+
+                int dx = d.getX();
+                int dy = d.getConnectorY();
+                if (Math.max(sx, dx) < minX || Math.min(sx, dx) > maxX || Math.max(sy, dy) < minY || Math.min(sy, dy) > maxY) {
+                    continue;
+                }
+                appendConnection(path, n, d);
+            }
         }
 
-        BufferedImage img = new BufferedImage(greatestX - lowestX, greatestY - lowestY, BufferedImage.TYPE_INT_ARGB);
+        strokeConnections(g, path);
+    }
 
-        Graphics2D g = img.createGraphics();
-        drawGrid(g, img.getWidth(), img.getHeight());
-        for (Node n : nodes) {
-            Node dn = new Node(n.getX() - lowestX, n.getY() - lowestY, n.getId(), n.getPrompt(), n.getResponse());
-            dn.draw(g, false, 0, 0);
+    /**
+     * Strokes the given connections. When zoomed out they are drawn as aliased single pixel lines so they do not fade
+     * away.
+     *
+     * @param g    {@link Graphics2D} The graphics object to paint on top of, already in canvas space.
+     * @param path {@link Path2D} The connections.
+     */
+    private void strokeConnections(Graphics2D g, Path2D path) {
+        Color c = g.getColor();
+        Stroke s = g.getStroke();
+        Object aa = g.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
+        g.setColor(DrawUtils.CONNECTION_COLOR);
+        if (scale < SIMPLE_SCALE) {
+            g.setStroke(new BasicStroke(0));
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
         }
+        g.draw(path);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, aa);
+        g.setStroke(s);
+        g.setColor(c);
+    }
 
-        try {
-            File selected = FileUtils.showSystemSaveDialog(this);
-            ImageIO.write(img, "PNG", selected);
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Adds a line between the output connector of the origin and the input connector of the destination to the path.
+     * When the nodes are drawn as points the line is drawn between their centres instead.
+     *
+     * @param path        {@link Path2D} The path to add the line to.
+     * @param origin      {@link Node} The node the connection starts at.
+     * @param destination {@link Node} The node the connection ends at.
+     */
+    private void appendConnection(Path2D path, Node origin, Node destination) {
+        if (scale < POINT_SCALE) {
+            path.moveTo(origin.getX() + origin.getWidth() / 2f, origin.getY() + origin.getHeight() / 2f);
+            path.lineTo(destination.getX() + destination.getWidth() / 2f, destination.getY() + destination.getHeight() / 2f);
+        } else {
+            path.moveTo(origin.getX() + origin.getWidth(), origin.getConnectorY());
+            path.lineTo(destination.getX(), destination.getConnectorY());
+        }
+    }
+
+    /**
+     * @return {@link AffineTransform} The transform from canvas space to the component, applying the {@link #scale}
+     * and then the {@link #offsetX} and {@link #offsetY}.
+     */
+    private AffineTransform getTransform() {
+        AffineTransform transform = AffineTransform.getTranslateInstance(offsetX, offsetY);
+        transform.scale(scale, scale);
+        return transform;
+    }
+
+    /**
+     * Converts a point on the component into canvas space. This is the inverse of {@link #getTransform()}.
+     *
+     * @param x <code>int</code> The x location on the component.
+     * @param y <code>int</code> The y location on the component.
+     * @return {@link Point} The point in canvas space.
+     */
+    private Point toCanvas(int x, int y) {
+        return new Point((int) Math.floor((x - offsetX) / scale), (int) Math.floor((y - offsetY) / scale));
+    }
+
+    /**
+     * Converts an area of the component into the smallest area of canvas space that covers it.
+     *
+     * @param area {@link Rectangle} The area of the component.
+     * @return {@link Rectangle} The area in canvas space.
+     */
+    private Rectangle toCanvas(Rectangle area) {
+        Point min = toCanvas(area.x, area.y);
+        Point max = toCanvas(area.x + area.width, area.y + area.height);
+        return new Rectangle(min.x, min.y, max.x - min.x + 1, max.y - min.y + 1);
+    }
+
+    /**
+     * Renders everything on the canvas except the moving node and its connections into an image covering the
+     * component at the resolution of the screen, so it stays sharp on scaled displays. While the node is dragged this
+     * is drawn in place of the canvas so only the moving node has to be redrawn on each step.
+     *
+     * @param g      {@link Graphics2D} The graphics object of the component, used for its configuration and hints.
+     * @param moved  {@link Node} The node being moved.
+     * @param width  <code>int</code> The width of the layer in device pixels.
+     * @param height <code>int</code> The height of the layer in device pixels.
+     * @param sx     <code>double</code> The number of device pixels to each pixel of the component across.
+     * @param sy     <code>double</code> The number of device pixels to each pixel of the component down.
+     * @return {@link BufferedImage} The rendered layer.
+     */
+    private BufferedImage renderStaticLayer(Graphics2D g, Node moved, int width, int height, double sx, double sy) {
+        BufferedImage layer = g.getDeviceConfiguration().createCompatibleImage(width, height, Transparency.OPAQUE);
+        Graphics2D lg = layer.createGraphics();
+        lg.setRenderingHints(g.getRenderingHints());
+        lg.setFont(g.getFont());
+        lg.scale(sx, sy);
+        drawCanvas(lg, new Rectangle(0, 0, getWidth(), getHeight()), moved);
+        lg.dispose();
+        return layer;
+    }
+
+    /**
+     * Exports the entire canvas to a file including all nodes and connection with the background grid. It will show a
+     * {@link JFileChooser} to determine where to store the file launched through {@link FileUtils#showSystemOpenDialog(Component)}
+     * and then render and write the image in the background from a {@link StorySnapshot} of the graph. Files ending in
+     * {@link SvgExporter#EXTENSION} are written as vector images by {@link SvgExporter} and every other file as a PNG
+     * by {@link ImageExporter}.
+     */
+    private void exportToImageFile() {
+        if (isBusy()) return;
+        if (nodes.isEmpty()) {
+            logError("Nothing to Export", "There are no nodes to export.");
+            return;
         }
+
+        File selected = FileUtils.showSystemSaveDialog(this);
+        if (selected == null) return;
+
+        StorySnapshot snapshot = StorySnapshot.of(graph);
+        startTask(new BackgroundTask<Void>("Exporting", selected.getName()) {
+            @Override
+            protected Void work(ProgressPassback progress) throws Exception {
+                if (SvgExporter.isSvg(selected.toPath())) {
+                    SvgExporter.write(snapshot, selected.toPath(), progress);
+                } else {
+                    ImageExporter.write(snapshot, selected.toPath(), progress);
+                }
+                return null;
+            }
+
+            @Override
+            protected void finish(Void result) {
+                logNotice("Exported", selected.getName());
+            }
+        });
     }
 
     @Override
     public void mouseDragged(MouseEvent e) {
         setCursor(Cursor.getPredefinedCursor(Cursor.MOVE_CURSOR));
-        if (moving != -1 && moving < nodes.size()) {
+        if (graph.get(moving) != null) {
             moveNode(e.getX(), e.getY());
         } else {
             moveCanvas(e.getX(), e.getY());
@@ -252,13 +680,48 @@ public class BranchComponent extends JPanel implements MouseMotionListener, Mous
      * @param y <code>int</code> The y location on the component.
      */
     private void moveNode(int x, int y) {
-        if (moving == -1 || moving > nodes.size() - 1) return;
-        Node n = nodes.get(moving);
-        n.setX(x - dragOffsetX);
-        n.setY(y - dragOffsetY);
-        modified = true;
-        updateTitle();
-        repaint();
+        Node n = graph.get(moving);
+        if (n == null) return;
+        Rectangle damage = getDamage(n);
+        Point p = toCanvas(x, y);
+        n.setX(p.x - dragOffsetX);
+        n.setY(p.y - dragOffsetY);
+        index.update(n);
+        damage.add(getDamage(n));
+        moved = true;
+        markModified();
+        repaintCanvas(damage);
+    }
+
+    /**
+     * Returns the area of the canvas that has to be repainted when the given node changes. This covers the node and
+     * every node it is connected to in either direction as the connections are drawn between the connectors on the
+     * edges of both nodes.
+     *
+     * @param n {@link Node} The node that is changing.
+     * @return {@link Rectangle} The affected area in canvas space.
+     */
+    private Rectangle getDamage(Node n) {
+        Rectangle damage = n.getBounds();
+        for (Node c : n.getConnections()) damage.add(c.getBounds());
+        for (Node c : n.getIncoming()) damage.add(c.getBounds());
+        return damage;
+    }
+
+    /**
+     * Repaints the given area of the canvas. The area is grown to cover the connectors and antialiasing around the
+     * edges of the nodes and then transformed on to the component.
+     *
+     * @param area {@link Rectangle} The area in canvas space.
+     * @return {@link Rectangle} The area repainted on the component.
+     */
+    private Rectangle repaintCanvas(Rectangle area) {
+        Rectangle r = new Rectangle(area);
+        r.grow(Node.CONNECTOR_RADIUS + 1, Node.CONNECTOR_RADIUS + 1);
+        r = getTransform().createTransformedShape(r).getBounds();
+        r.grow(1, 1);
+        repaint(r);
+        return r;
     }
 
     /**
@@ -297,26 +760,31 @@ public class BranchComponent extends JPanel implements MouseMotionListener, Mous
 
     /**
      * This will attempt to open a detail window on the given node. If no node is found the method will just return.
-     * It will open a {@link DetailWindow} with the given node and set up a {@link NodePassback} with the old and the
-     * new node to allow the changing without the passing of the {@link #nodes} list.
+     * It will open a {@link DetailWindow} with the given node and set up a {@link NodePassback} which copies the edited
+     * details back on to the original node so connections to it and the {@link #index} stay valid. The window is not
+     * modal, so if the node has been deleted by the time it is saved the changes are dropped and the window closed.
      *
      * @param x <code>int</code> The x location on the component.
      * @param y <code>int</code> The y location on the component.
      */
     private void performDetailWindow(int x, int y) {
-        for (Node n : nodes) {
-            if (n.contains(x, y)) {
-                DetailWindow window = new DetailWindow(n, (oldNode, newNode) -> {
-                    nodes.set(nodes.indexOf(oldNode), newNode);
-                    repaint();
-
-                    modified = true;
-                    updateTitle();
-                });
-                window.setVisible(true);
-                break;
+        Point p = toCanvas(x, y);
+        Node n = index.nodeAt(p.x, p.y);
+        if (n == null) return;
+
+        DetailWindow[] window = new DetailWindow[1];
+        window[0] = new DetailWindow(n, (oldNode, newNode, guards) -> {
+            if (graph.get(oldNode.getHandle()) != oldNode) {
+                logNotice("Node Deleted", "The changes to " + oldNode.getId() + " were not saved as it has been deleted.");
+                window[0].dispose();
+                return;
             }
-        }
+
+            TextEdit edit = new TextEdit(oldNode, newNode, guards);
+            edit.redo();
+            history.add(edit);
+        });
+        window[0].setVisible(true);
     }
 
     /**
@@ -330,16 +798,15 @@ public class BranchComponent extends JPanel implements MouseMotionListener, Mous
      */
     private void performSelection(int x, int y) {
         boolean modified = false;
-        for (int i = 0; i < nodes.size(); i++) {
-            if (nodes.get(i).contains(x, y)) {
-                if (modifiers == KeyEvent.SHIFT_MASK || modifiers == KeyEvent.SHIFT_MASK + KeyEvent.BUTTON1_MASK) {
-                    selections.add(i);
-                    modified = true;
-                } else {
-                    selections.clear();
-                    selections.add(i);
-                    modified = true;
-                }
+        Point p = toCanvas(x, y);
+        for (Node n : index.query(p.x, p.y)) {
+            if (modifiers == KeyEvent.SHIFT_MASK || modifiers == KeyEvent.SHIFT_MASK + KeyEvent.BUTTON1_MASK) {
+                selections.add(n.getHandle());
+                modified = true;
+            } else {
+                selections.clear();
+                selections.add(n.getHandle());
+                modified = true;
             }
         }
         if (!modified) selections.clear();
@@ -347,20 +814,26 @@ public class BranchComponent extends JPanel implements MouseMotionListener, Mous
     }
 
     /**
-     * Sets up the offset values. It will use the first found node at the x and y locations. If no nodes are found it
-     * will set it to the x and y locations of the mouse (as the effective offset between them and the top left corner).
+     * Takes the keyboard focus, for example back from the search field, and sets up the offset values. It will use the
+     * first found node at the x and y locations, stopping any force layout first so the drag starts from where the
+     * layout left the node. If no nodes are found it will set it to the x and y locations of the mouse (as the effective
+     * offset between them and the top left corner).
      *
      * @param e {@link MouseEvent} The raw event.
      */
     @Override
     public void mousePressed(MouseEvent e) {
-        for (int i = 0; i < nodes.size(); i++) {
-            if (nodes.get(i).contains(e.getX(), e.getY())) {
-                moving = i;
-                dragOffsetX = e.getX() - nodes.get(i).getX();
-                dragOffsetY = e.getY() - nodes.get(i).getY();
-                return;
-            }
+        requestFocusInWindow();
+        Point p = toCanvas(e.getX(), e.getY());
+        Node n = index.nodeAt(p.x, p.y);
+        if (n != null) {
+            stopAnimation(true);
+            moving = n.getHandle();
+            movedFromX = n.getX();
+            movedFromY = n.getY();
+            dragOffsetX = p.x - n.getX();
+            dragOffsetY = p.y - n.getY();
+            return;
         }
 
         dragOffsetX = e.getX();
@@ -368,16 +841,44 @@ public class BranchComponent extends JPanel implements MouseMotionListener, Mous
     }
 
     /**
-     * Resets the {@link #moving} value.
+     * Resets the {@link #moving} value. If a node was moved the whole drag is recorded as a single {@link MoveEdit}
+     * and its final location is journaled.
      *
      * @param e {@link MouseEvent} the raw event
      */
     @Override
     public void mouseReleased(MouseEvent e) {
+        Node n = graph.get(moving);
+        if (n != null && moved) {
+            journal.recordMove(n);
+            history.add(new MoveEdit(n, movedFromX, movedFromY, n.getX(), n.getY()));
+        }
+
         moving = -1;
+        moved = false;
+        staticLayer = null;
         setCursor(Cursor.getDefaultCursor());
     }
 
+    /**
+     * Zooms the canvas in or out around the location of the mouse so the point under the cursor stays in place. The
+     * scale is kept between {@link #MIN_SCALE} and {@link #MAX_SCALE}.
+     *
+     * @param e {@link MouseWheelEvent} The raw event.
+     */
+    @Override
+    public void mouseWheelMoved(MouseWheelEvent e) {
+        double next = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale * Math.pow(1.1, -e.getPreciseWheelRotation())));
+        if (next == scale) return;
+
+        double cx = (e.getX() - offsetX) / scale;
+        double cy = (e.getY() - offsetY) / scale;
+        scale = next;
+        offsetX = (int) Math.round(e.getX() - cx * scale);
+        offsetY = (int) Math.round(e.getY() - cy * scale);
+        repaint();
+    }
+
     @Override
     public void mouseEntered(MouseEvent e) {
 
@@ -401,28 +902,16 @@ public class BranchComponent extends JPanel implements MouseMotionListener, Mous
      * @param destination {@link Node} The second node selected.
      */
     private void processDisconnect(Node origin, Node destination) {
-        if (origin.getConnections().contains(destination)) {
-            removeConnection(origin, destination);
-            modified = true;
-            updateTitle();
-        } else if (destination.getConnections().contains(origin)) {
-            removeConnection(destination, origin);
-            modified = true;
-            updateTitle();
+        ConnectionEdit edit;
+        if (graph.isConnected(origin, destination)) {
+            edit = new ConnectionEdit(origin, destination, false);
+        } else if (graph.isConnected(destination, origin)) {
+            edit = new ConnectionEdit(destination, origin, false);
+        } else {
+            return;
         }
-        repaint();
-    }
-
-    /**
-     * Removes the destination node from the origin node.
-     *
-     * @param o {@link Node} the origin node
-     * @param d {@link Node} the destination node to remove.
-     */
-    private void removeConnection(Node o, Node d) {
-        java.util.List<Node> n = o.getConnections();
-        n.remove(d);
-        o.setConnections(n);
+        edit.redo();
+        history.add(edit);
     }
 
     /**
@@ -433,16 +922,22 @@ public class BranchComponent extends JPanel implements MouseMotionListener, Mous
      * @param destination {@link Node} The second node selected.
      */
     private void processConnect(Node origin, Node destination) {
-        if (destination.getConnections().contains(origin)) return;
+        if (graph.isConnected(destination, origin) || graph.isConnected(origin, destination)) return;
 
-        java.util.List<Node> o = origin.getConnections();
-        o.add(destination);
-        origin.setConnections(o);
-
-        modified = true;
-        updateTitle();
+        connect(origin, destination);
+        history.add(new ConnectionEdit(origin, destination, true));
+    }
 
-        repaint();
+    /**
+     * Repaints the area covering both nodes and so the connection between them.
+     *
+     * @param origin      {@link Node} The first node.
+     * @param destination {@link Node} The second node.
+     */
+    private void repaintConnection(Node origin, Node destination) {
+        Rectangle damage = origin.getBounds();
+        damage.add(destination.getBounds());
+        repaintCanvas(damage);
     }
 
     /**
@@ -452,98 +947,322 @@ public class BranchComponent extends JPanel implements MouseMotionListener, Mous
      */
     private void processAddSelection() {
         if (modifiers == InputEvent.CTRL_MASK) {
-            selections.clear();
-            for (int i = 0; i < nodes.size(); i++) {
-                selections.add(i);
-            }
+            selections.selectAll(graph.getHandles());
         } else {
-            nodes.add(new Node((int) mouseLocation.getX() - offsetX, (int) mouseLocation.getY() - offsetY, generateID(), "Prompt", "Response"));
+            Point p = toCanvas(mouseLocation.x, mouseLocation.y);
+            Node n = new Node(p.x, p.y, generateID(), "Prompt", "Response");
+            RemoveEdit edit = new RemoveEdit(Collections.singletonList(n), false);
+            edit.undo();
+            history.add(edit);
             selections.clear();
-            selections.add(nodes.size() - 1);
-            modified = true;
-            updateTitle();
+            selections.add(n.getHandle());
         }
         repaint();
     }
 
     /**
      * Processed the deletion of nodes. If there are no selections then it will just return. If the length of the
-     * selections equals that of the nodes then it will just empty the nodes list. Otherwise it will iterate through
-     * the selections and both delete the node and remove it from every connection list of other nodes. It will then
-     * clear the selections array before repainting.
+     * selections equals that of the nodes then it will just empty the graph. Otherwise it will remove every selected
+     * node from the graph in one pass, which also removes it from every connection list of other nodes. It will then
+     * clear the selections before repainting.
      */
     private void processDelete() {
-        if (selections.size() == 0) return;
+        if (selections.isEmpty()) return;
 
-        if (selections.size() == nodes.size()) {
-            nodes.clear();
-            modified = true;
-            updateTitle();
-        } else {
-            for (int selection : selections) {
-                nodes.stream().filter(n -> n.getConnections().contains(nodes.get(selection))).forEach(n -> {
-                    java.util.List<Node> ns = n.getConnections();
-                    ns.remove(nodes.get(selection));
-                    n.setConnections(ns);
-                });
-                nodes.remove(selection);
-                modified = true;
-                updateTitle();
-            }
-        }
-        selections.clear();
-        repaint();
+        java.util.List<Node> removed = new ArrayList<>(selections.size());
+        selections.forEach(h -> removed.add(graph.get(h)));
+        RemoveEdit edit = new RemoveEdit(removed, selections.size() == nodes.size());
+        edit.redo();
+        history.add(edit);
     }
 
     /**
-     * Displays the help in the form of a {@link JOptionPane} through
-     * {@link JOptionPane#showMessageDialog(Component, Object, String, int)}.
+     * Undoes the most recent edit in the {@link #history}.
      */
-    private void showHelp() {
-        JOptionPane.showMessageDialog(this, "" +
-                "Help:\n" +
-                "Key Commands:\n" +
-                "[C]: Create connection between two selected nodes.\n" +
-                "[D]: Delete connection between two selected nodes.\n" +
-                "[A]: Add new node.\n" +
-                "[Ctrl+A]: Select all nodes.\n" +
-                "[X]: Delete selected nodes.\n" +
-                "[Ctrl+E]: Export to image.\n" +
-                "[Ctrl+S]: Export to JSON.\n" +
-                "[H]: Open help\n" +
-                "General Help:\n" +
-                "Click and drag to move components\n" +
-                "Double click to edit a nodes properties" +
-                "</html>", "Help", JOptionPane.PLAIN_MESSAGE);
+    private void processUndo() {
+        if (graph.get(moving) != null) return;
+        stopAnimation(true);
+        history.undo();
     }
 
     /**
-     * Handles the loading of a JSON file that is exported through {@link #exportToFile()}. It will load the file or
-     * error out and defer to {@link #parseJSON(String)}.
+     * Redoes the most recently undone edit in the {@link #history}.
      */
-    @SuppressWarnings("ResultOfMethodCallIgnored")
-    private void processOpen() {
-        File file = FileUtils.showSystemOpenDialog(this);
-        if (file != null) {
-            if (file.getAbsolutePath().endsWith(".json")) {
-                try {
-                    FileInputStream fis = new FileInputStream(file);
-                    byte[] d = new byte[fis.available()];
-                    fis.read(d);
-
-                    parseJSON(new String(d));
-
-                    loadedFromFile = true;
-                    loadedFile = file;
-                    modified = false;
-                    updateTitle();
-                } catch (IOException e1) {
-                    e1.printStackTrace();
-                    logError("Invalid JSON", "Could not load the JSON file. IOException: " + e1.getMessage());
-//                    JOptionPane.showMessageDialog(this, "Could not load the JSON file.", "Invalid JSON", JOptionPane.ERROR_MESSAGE);
-                }
-            } else {
-                logError("Invalid JSON", "This is not a valid JSON file. It cannot be opened.");
+    private void processRedo() {
+        if (graph.get(moving) != null) return;
+        stopAnimation(true);
+        history.redo();
+    }
+
+    /**
+     * Lays out every node in columns from left to right with {@link LayeredLayout} in the background, spending about
+     * {@link #LAYOUT_BUDGET} milliseconds improving it. The new locations are applied as a single {@link LayoutEdit}
+     * to the nodes that are still in the graph once it finishes.
+     */
+    private void processLayout() {
+        if (isBusy()) return;
+        stopAnimation(true);
+        if (nodes.isEmpty()) {
+            logError("Nothing to Lay Out", "There are no nodes to lay out.");
+            return;
+        }
+
+        StorySnapshot snapshot = StorySnapshot.of(graph);
+        Node[] laidOut = nodes.toArray(new Node[0]);
+        startTask(new BackgroundTask<LayeredLayout>("Laying Out", laidOut.length + " nodes") {
+            @Override
+            protected LayeredLayout work(ProgressPassback progress) {
+                return LayeredLayout.layout(snapshot, LAYOUT_BUDGET, progress);
+            }
+
+            @Override
+            protected void finish(LayeredLayout result) {
+                java.util.List<Node> moved = new ArrayList<>();
+                java.util.List<Point> locations = new ArrayList<>();
+                for (int i = 0; i < laidOut.length; i++) {
+                    if (graph.get(laidOut[i].getHandle()) != laidOut[i]) continue;
+                    moved.add(laidOut[i]);
+                    locations.add(new Point(result.getX(i), result.getY(i)));
+                }
+
+                LayoutEdit edit = new LayoutEdit(moved.toArray(new Node[0]), locations.toArray(new Point[0]));
+                edit.redo();
+                history.add(edit);
+                logNotice("Laid Out", moved.size() + " nodes with " + result.getCrossings() + " crossings.");
+            }
+        });
+    }
+
+    /**
+     * Starts animating a {@link ForceLayout} of every node, or stops the one running and records where it moved the
+     * nodes as a single {@link LayoutEdit}. Pinned and selected nodes stay where they are while it runs and dragging a
+     * node stops it.
+     */
+    private void processForceLayout() {
+        if (stopAnimation(true)) return;
+        if (nodes.isEmpty()) {
+            logError("Nothing to Lay Out", "There are no nodes to lay out.");
+            return;
+        }
+
+        animation = new ForceAnimation();
+        animation.timer.start();
+        markModified();
+        logNotice("Force Layout", "Press F again to stop.");
+    }
+
+    /**
+     * Stops the {@link #animation} if one is running.
+     *
+     * @param keep <code>boolean</code> If the nodes should stay where the animation moved them, recorded as a
+     *             {@link LayoutEdit}, rather than just being left alone as the graph is being replaced.
+     * @return <code>boolean</code> If an animation was running.
+     */
+    private boolean stopAnimation(boolean keep) {
+        if (animation == null) return false;
+
+        ForceAnimation stopped = animation;
+        animation = null;
+        stopped.timer.stop();
+        if (keep) stopped.record();
+        return true;
+    }
+
+    /**
+     * Pins the selected nodes so the force layout leaves them where they are, or unpins them if they are all pinned
+     * already.
+     */
+    private void processPin() {
+        if (selections.isEmpty()) return;
+
+        boolean pin = false;
+        for (int i = 0; i < selections.size(); i++) pin |= !pinned.get(selections.get(i));
+        for (int i = 0; i < selections.size(); i++) pinned.set(selections.get(i), pin);
+        repaint();
+    }
+
+    /**
+     * Moves every node at once, keeping the {@link #index} and {@link #journal} up to date and repainting once.
+     *
+     * @param moved     {@link Node}[] The nodes to move.
+     * @param locations {@link Point}[] The new location of each node in canvas space.
+     */
+    private void setLocations(Node[] moved, Point[] locations) {
+        for (int i = 0; i < moved.length; i++) {
+            moved[i].setX(locations[i].x);
+            moved[i].setY(locations[i].y);
+            index.update(moved[i]);
+            journal.recordMove(moved[i]);
+        }
+        markModified();
+        repaint();
+    }
+
+    /**
+     * Moves the node, keeping the {@link #index} and {@link #journal} up to date and repainting the affected area.
+     *
+     * @param n {@link Node} The node to move.
+     * @param x <code>int</code> The new x location in canvas space.
+     * @param y <code>int</code> The new y location in canvas space.
+     */
+    private void setLocation(Node n, int x, int y) {
+        Rectangle damage = getDamage(n);
+        n.setX(x);
+        n.setY(y);
+        index.update(n);
+        journal.recordMove(n);
+        damage.add(getDamage(n));
+        markModified();
+        repaintCanvas(damage);
+    }
+
+    /**
+     * Changes the text of the node, journaling it and repainting the node.
+     *
+     * @param n        {@link Node} The node to change.
+     * @param id       {@link String} The new id.
+     * @param prompt   {@link String} The new prompt.
+     * @param response {@link String} The new response.
+     * @param effect   {@link String} The new effect.
+     */
+    private void setText(Node n, String id, String prompt, String response, String effect) {
+        boolean effectChanged = !Objects.equals(effect, n.getEffect());
+        n.setId(id);
+        n.setPrompt(prompt);
+        n.setResponse(response);
+        n.setEffect(effect);
+        words.update(n);
+
+        journal.recordEdit(n);
+        if (effectChanged) journal.recordEffect(n);
+        markModified();
+        repaintCanvas(n.getBounds());
+    }
+
+    /**
+     * Changes the guard of a connection and journals it. Nothing happens if the nodes are no longer connected.
+     *
+     * @param origin      {@link Node} The node the connection starts at.
+     * @param destination {@link Node} The node the connection ends at.
+     * @param guard       {@link String} The new guard or <code>null</code> to remove it.
+     */
+    private void setGuard(Node origin, Node destination, String guard) {
+        if (!graph.isConnected(origin, destination) || Objects.equals(guard, origin.getGuard(destination))) return;
+
+        graph.setGuard(origin, destination, guard);
+        journal.recordGuard(origin, destination);
+        markModified();
+    }
+
+    /**
+     * Connects the origin to the destination, journaling it and repainting the connection.
+     *
+     * @param origin      {@link Node} The node the connection starts at.
+     * @param destination {@link Node} The node the connection ends at.
+     */
+    private void connect(Node origin, Node destination) {
+        if (!graph.connect(origin, destination)) return;
+
+        journal.recordConnect(origin, destination);
+        markModified();
+        if (analysis.connected(origin, destination) && showIssues) repaint();
+        else repaintConnection(origin, destination);
+    }
+
+    /**
+     * Disconnects the origin from the destination, journaling it and repainting the connection.
+     *
+     * @param origin      {@link Node} The node the connection starts at.
+     * @param destination {@link Node} The node the connection ends at.
+     */
+    private void disconnect(Node origin, Node destination) {
+        if (!graph.disconnect(origin, destination)) return;
+
+        journal.recordDisconnect(origin, destination);
+        markModified();
+        if (analysis.disconnected(origin, destination) && showIssues) repaint();
+        else repaintConnection(origin, destination);
+    }
+
+    /**
+     * Displays the help in the form of a {@link JOptionPane} through
+     * {@link JOptionPane#showMessageDialog(Component, Object, String, int)}.
+     */
+    private void showHelp() {
+        JOptionPane.showMessageDialog(this, "" +
+                "Help:\n" +
+                "Key Commands:\n" +
+                "[C]: Create connection between two selected nodes.\n" +
+                "[D]: Delete connection between two selected nodes.\n" +
+                "[A]: Add new node.\n" +
+                "[Ctrl+A]: Select all nodes.\n" +
+                "[X]: Delete selected nodes.\n" +
+                "[Ctrl+E]: Export to image.\n" +
+                "[Ctrl+S]: Export to JSON.\n" +
+                "[Ctrl+Z]: Undo.\n" +
+                "[Ctrl+Y]: Redo.\n" +
+                "[V]: Toggle highlighting of unreachable nodes, dead ends and loops.\n" +
+                "[L]: Lay out the whole story in columns from left to right.\n" +
+                "[F]: Start or stop a force layout of the whole story.\n" +
+                "[P]: Pin or unpin the selected nodes so the force layout leaves them where they are.\n" +
+                "[Ctrl+F]: Search the ids, prompts and responses. Press enter again for the next match.\n" +
+                "[H]: Open help\n" +
+                "General Help:\n" +
+                "Click and drag to move components\n" +
+                "Scroll to zoom in and out\n" +
+                "Double click to edit a nodes properties" +
+                "</html>", "Help", JOptionPane.PLAIN_MESSAGE);
+    }
+
+    /**
+     * Handles the loading of a JSON file that is exported through {@link #exportToFile()}. The file is streamed into a
+     * new graph by {@link StoryFiles}, which picks the JSON or binary format from the extension, in the background while
+     * the canvas stays usable. Binary stories also have their journal replayed through
+     * {@link StoryJournal#load(Path, ProgressPassback)}. Once it has been read the new graph replaces the current one
+     * through {@link #setGraph(StoryGraph)} on the Event Dispatch Thread. If the file cannot be read or is not a valid
+     * story it will log an error and leave the current graph in place.
+     */
+    private void processOpen() {
+        if (isBusy()) return;
+
+        File file = FileUtils.showSystemOpenDialog(this);
+        if (file != null) {
+            if (StoryFiles.isStory(file)) {
+                boolean journaled = StoryFiles.isBinary(file.toPath());
+                startTask(new BackgroundTask<StoryJournal.Replay>("Loading", file.getName()) {
+                    @Override
+                    protected StoryJournal.Replay work(ProgressPassback progress) throws Exception {
+                        if (journaled) return StoryJournal.load(file.toPath(), progress);
+                        return new StoryJournal.Replay(StoryFiles.read(file.toPath(), progress));
+                    }
+
+                    @Override
+                    protected void finish(StoryJournal.Replay loaded) {
+                        setGraph(loaded.getGraph());
+                        journal.discard(journal.mark());
+                        journal.detach();
+                        if (journaled) attachJournal(file, loaded);
+
+                        loadedFromFile = true;
+                        loadedFile = file;
+                        modified = false;
+                        updateTitle();
+                        logNotice("Loaded", file.getName() + " (" + loaded.getGraph().size() + " nodes)");
+                    }
+
+                    @Override
+                    protected void failed(Throwable cause) {
+                        if (cause instanceof JsonParseException) {
+                            logError("Invalid JSON", "This is not a valid JSON file. It cannot be opened.");
+                        } else if (cause instanceof StreamCorruptedException) {
+                            logError("Invalid Story", cause.getMessage() + " It cannot be opened.");
+                        } else {
+                            super.failed(cause);
+                        }
+                    }
+                });
+            } else {
+                logError("Invalid JSON", "This is not a valid JSON or " + StoryFiles.BINARY_EXTENSION + " file. It cannot be opened.");
 //                JOptionPane.showMessageDialog(this, "This is not a valid JSON file. It cannot be opened.", "Invalid JSON", JOptionPane.ERROR_MESSAGE);
             }
         }
@@ -600,6 +1319,36 @@ public class BranchComponent extends JPanel implements MouseMotionListener, Mous
      * <td>{@link #processOpen()}</td>
      * <td>N/A</td>
      * </tr>
+     * <tr>
+     * <td><code>V</code></td>
+     * <td>{@link #processAnalysis()}</td>
+     * <td>N/A</td>
+     * </tr>
+     * <tr>
+     * <td><code>L</code></td>
+     * <td>{@link #processLayout()}</td>
+     * <td>N/A</td>
+     * </tr>
+     * <tr>
+     * <td><code>F</code></td>
+     * <td>{@link #processForceLayout()}</td>
+     * <td>N/A</td>
+     * </tr>
+     * <tr>
+     * <td><code>P</code></td>
+     * <td>{@link #processPin()}</td>
+     * <td>One or more nodes selected</td>
+     * </tr>
+     * <tr>
+     * <td><code>Ctrl+Z</code></td>
+     * <td>{@link #processUndo()}</td>
+     * <td>N/A</td>
+     * </tr>
+     * <tr>
+     * <td><code>Ctrl+Y</code> or <code>Ctrl+Shift+Z</code></td>
+     * <td>{@link #processRedo()}</td>
+     * <td>N/A</td>
+     * </tr>
      * </tbody>
      * </table>
      * It will also update the {@link #modifiers} value.
@@ -611,8 +1360,8 @@ public class BranchComponent extends JPanel implements MouseMotionListener, Mous
         modifiers = e.getModifiers();
 
         if (selections.size() == 2) {
-            Node origin = nodes.get(selections.get(0));
-            Node destination = nodes.get(selections.get(1));
+            Node origin = graph.get(selections.get(0));
+            Node destination = graph.get(selections.get(1));
             if (e.getKeyCode() == KeyEvent.VK_C) processConnect(origin, destination);
             if (e.getKeyCode() == KeyEvent.VK_D) processDisconnect(origin, destination);
         }
@@ -620,98 +1369,42 @@ public class BranchComponent extends JPanel implements MouseMotionListener, Mous
         if (e.getKeyCode() == KeyEvent.VK_A) processAddSelection();
         if (e.getKeyCode() == KeyEvent.VK_X) processDelete();
         if (e.getKeyCode() == KeyEvent.VK_H) showHelp();
+        if (e.getKeyCode() == KeyEvent.VK_V) processAnalysis();
+        if (e.getKeyCode() == KeyEvent.VK_L) processLayout();
+        if (e.getKeyCode() == KeyEvent.VK_F && e.getModifiersEx() == 0) processForceLayout();
+        if (e.getKeyCode() == KeyEvent.VK_P) processPin();
 
         if (e.getKeyCode() == KeyEvent.VK_E && e.getModifiers() == InputEvent.CTRL_MASK) exportToImageFile();
         if (e.getKeyCode() == KeyEvent.VK_S && e.getModifiers() == InputEvent.CTRL_MASK) exportToFile();
 
         if (e.getKeyCode() == KeyEvent.VK_O && e.getModifiers() == InputEvent.CTRL_MASK) processOpen();
 
+        if (e.getKeyCode() == KeyEvent.VK_Z && e.getModifiersEx() == InputEvent.CTRL_DOWN_MASK) processUndo();
+        if (e.getKeyCode() == KeyEvent.VK_Y && e.getModifiersEx() == InputEvent.CTRL_DOWN_MASK) processRedo();
+        if (e.getKeyCode() == KeyEvent.VK_Z && e.getModifiersEx() == (InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK)) processRedo();
+
         if (e.getKeyCode() == KeyEvent.VK_T) logError("Test", "Test error with key");
     }
 
     /**
-     * Parses a JSON string as a node layout. It uses the same format as the {@link #exportToFile()} in the following
-     * format:
-     * <br>
-     * <pre>
-     * {
-     *   "node.id": {
-     *     "id": "node.id",
-     *     "prompt": "node.prompt",
-     *     "response": "node.response",
-     *     "draw": {
-     *       "x": node.x,
-     *       "y": node.y,
-     *       "w": node.width,
-     *       "h": node.height
-     *     },
-     *     "connections": [
-     *       "node.connections[0]",
-     *       "node.connections[1]"
-     *     ]
-     *   }
-     * }
-     * </pre>
-     * On error it will show a {@link JOptionPane} message dialog.
+     * Replaces the current graph with the given one, rebuilding the {@link #index} and dropping the selection, the
+     * {@link #history} and any move in progress before repainting.
      *
-     * @param json {@link String} The JSON string.
+     * @param loaded {@link StoryGraph} The new graph.
      */
-    private void parseJSON(String json) {
-        try {
-            JsonParser parser = new JsonParser();
-            JsonObject base = (JsonObject) parser.parse(json);
-
-            HashMap<String, java.util.List<String>> connections = new HashMap<>();
-            HashMap<String, Node> nodeLoads = new HashMap<>();
-
-            for (Map.Entry<String, JsonElement> entry : base.entrySet()) {
-                JsonObject node = (JsonObject) entry.getValue();
-                String id = node.get("id").getAsString();
-                String prompt = node.get("prompt").getAsString();
-                String response = node.get("response").getAsString();
-
-                JsonObject draw = (JsonObject) node.get("draw");
-                int x = draw.get("x").getAsInt();
-                int y = draw.get("y").getAsInt();
-                int w = draw.get("w").getAsInt();
-                int h = draw.get("h").getAsInt();
-
-                JsonArray conn = (JsonArray) node.get("connections");
-                java.util.List<String> cs = new ArrayList<>();
-                for (JsonElement el : conn) {
-                    cs.add(el.getAsString());
-                }
-                connections.put(id, cs);
-
-                Node n = new Node(x, y, id, prompt, response);
-                n.setWidth(w);
-                n.setHeight(h);
-
-                nodeLoads.put(id, n);
-            }
-
-            for (String s : connections.keySet()) {
-                java.util.List<String> c = connections.get(s);
-                Node active = nodeLoads.get(s);
-
-                java.util.List<Node> conns = new ArrayList<>();
-                for (String connection : c) {
-                    if (!nodeLoads.containsKey(connection)) {
-                        System.err.println("No matching noe.");
-                        continue;
-                    }
-                    conns.add(nodeLoads.get(connection));
-                }
-
-                active.setConnections(conns);
-            }
-
-            nodes = nodeLoads.keySet().stream().map(nodeLoads::get).collect(Collectors.toList());
-            repaint();
-        } catch (JsonSyntaxException e) {
-            logError("Invalid JSON", "This is not a valid JSON file. It cannot be opened.");
-//            JOptionPane.showMessageDialog(this, "Failed to load the JSON data: " + e.getMessage(), "JSON Error", JOptionPane.ERROR_MESSAGE);
-        }
+    private void setGraph(StoryGraph loaded) {
+        stopAnimation(false);
+        graph = loaded;
+        nodes = graph.getNodes();
+        index.rebuild(nodes);
+        words.rebuild(nodes);
+        analysis = new StoryAnalysis(graph);
+        history.clear();
+        selections.clear();
+        pinned.clear();
+        moving = -1;
+        staticLayer = null;
+        repaint();
     }
 
     /**
@@ -726,7 +1419,7 @@ public class BranchComponent extends JPanel implements MouseMotionListener, Mous
 
     /**
      * Exports the node layout and configuration to file. This is a file that can both be loaded into an arbitrary
-     * program and parsed or loaded back into the program using {@link #parseJSON(String)}. It contains drawing details
+     * program and parsed or loaded back into the program using {@link StoryReader}. It contains drawing details
      * such as x, y, width and height so the layout will be identical. JSON format:
      * <pre>
      * {
@@ -747,46 +1440,147 @@ public class BranchComponent extends JPanel implements MouseMotionListener, Mous
      *   }
      * }
      * </pre>
+     * Files ending in {@link StoryFiles#BINARY_EXTENSION} are written in the binary format of {@link BinaryStoryWriter}
+     * instead, which is smaller and much faster to open.
+     * <p/>
+     * The file is written in the background by {@link StoryFiles} from a {@link StorySnapshot} of the graph, so the
+     * canvas can still be edited while it saves. It streams the nodes to a temporary file and then moves it over the
+     * target so an interrupted save never leaves a partial file behind.
+     * <p/>
+     * Once a binary story has been written or opened its {@link StoryJournal} is attached and later saves just append
+     * the changes made since the last save to the journal, which takes the same time however large the story is. When
+     * the journal grows too large the story is written in full again in the background by {@link #compactJournal()}.
+     * JSON files are always written in full as other programs reading them would not know about the journal.
      */
     private void exportToFile() {
-        JsonObject base = new JsonObject();
-        for (Node n : nodes) {
-            JsonObject node = new JsonObject();
-            node.addProperty("id", n.getId());
-            node.addProperty("prompt", n.getPrompt());
-            node.addProperty("response", n.getResponse());
+        if (journal.isAttached()) {
+            try {
+                journal.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+                logError("Saving Failed", loadedFile.getName() + ": " + e.getMessage());
+                return;
+            }
 
-            JsonObject draw = new JsonObject();
-            draw.addProperty("x", n.getX());
-            draw.addProperty("y", n.getY());
-            draw.addProperty("w", n.getWidth());
-            draw.addProperty("h", n.getHeight());
+            modified = false;
+            updateTitle();
+            if (journal.needsCompaction()) compactJournal();
+            return;
+        }
 
-            JsonArray connections = new JsonArray();
-            for (Node conn : n.getConnections()) {
-                connections.add(conn.getId());
+        if (isBusy()) return;
+
+        File output = loadedFromFile ? loadedFile : FileUtils.showSystemSaveDialog(this);
+        if (output == null) return;
+
+        StorySnapshot snapshot = StorySnapshot.of(graph);
+        java.util.List<Node> order = Arrays.asList(nodes.toArray(new Node[0]));
+        int saved = revision;
+        long recorded = journal.mark();
+        boolean journaled = StoryFiles.isBinary(output.toPath());
+        startTask(new BackgroundTask<StoryJournal.Base>("Saving", output.getName()) {
+            @Override
+            protected StoryJournal.Base work(ProgressPassback progress) throws Exception {
+                StoryFiles.write(snapshot, output.toPath(), progress);
+                return journaled ? StoryJournal.Base.of(output.toPath()) : null;
             }
 
-            node.add("draw", draw);
-            node.add("connections", connections);
+            @Override
+            protected void finish(StoryJournal.Base base) {
+                if (journal.discard(recorded) && journaled) attachJournal(output, base, order);
 
-            base.add(n.getId(), node);
-        }
+                loadedFromFile = true;
+                loadedFile = output;
+                modified = revision != saved;
+                updateTitle();
+                logNotice("Saved", output.getName());
+            }
+        });
+    }
 
+    /**
+     * Starts appending changes to the journal of a story that has just been opened, logging an error if it cannot be
+     * written.
+     *
+     * @param file   {@link File} The story file.
+     * @param loaded {@link StoryJournal.Replay} The story as it was loaded.
+     */
+    private void attachJournal(File file, StoryJournal.Replay loaded) {
         try {
-            File output = loadedFromFile ? loadedFile : FileUtils.showSystemSaveDialog(this);
-            FileOutputStream fos = new FileOutputStream(output);
-            fos.write(new Gson().toJson(base).getBytes());
+            journal.attach(file.toPath(), loaded);
+        } catch (IOException e) {
+            journalFailed(file, e);
+        }
+    }
 
-            loadedFromFile = true;
-            loadedFile = output;
-            modified = false;
-            updateTitle();
+    /**
+     * Starts appending changes to a new journal for a story that has just been written in full, logging an error if it
+     * cannot be written.
+     *
+     * @param file  {@link File} The story file.
+     * @param base  {@link StoryJournal.Base} The state of the story file.
+     * @param order {@link java.util.List} The nodes in the order they were written.
+     */
+    private void attachJournal(File file, StoryJournal.Base base, java.util.List<Node> order) {
+        try {
+            journal.attach(file.toPath(), base, order);
         } catch (IOException e) {
-            e.printStackTrace();
+            journalFailed(file, e);
         }
     }
 
+    private void journalFailed(File file, IOException e) {
+        e.printStackTrace();
+        journal.detach();
+        logError("Journal Failed", file.getName() + ": " + e.getMessage() + " Changes will be saved in full.");
+    }
+
+    /**
+     * Writes the story in full in the background next to the story file so its journal can be emptied. The snapshot is
+     * taken straight after the journal has been flushed so it matches the story file plus the journal. Any saves made
+     * while it is being written are appended to the old journal as normal and carried over to the new one by
+     * {@link StoryJournal#rebase(StoryJournal.Base, java.util.List)}, which only replaces the story once the new journal
+     * is on disk. If anything fails the story is marked as modified so the changes are saved again. If another task is
+     * already running the compaction is left until the next save.
+     */
+    private void compactJournal() {
+        if (task != null && !task.isDone()) return;
+
+        File file = loadedFile;
+        journal.startCompaction();
+        StorySnapshot snapshot = StorySnapshot.of(graph);
+        java.util.List<Node> order = Arrays.asList(nodes.toArray(new Node[0]));
+        startTask(new BackgroundTask<StoryJournal.Base>("Compacting", file.getName()) {
+            @Override
+            protected StoryJournal.Base work(ProgressPassback progress) throws Exception {
+                return StoryJournal.stage(snapshot, file.toPath(), progress);
+            }
+
+            @Override
+            protected void finish(StoryJournal.Base base) {
+                try {
+                    journal.rebase(base, order);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    markModified();
+                    logError("Compacting Failed", file.getName() + ": " + e.getMessage() + (journal.isAttached()
+                            ? " The journal has been kept." : " The next save will be written in full."));
+                }
+            }
+
+            @Override
+            protected void failed(Throwable cause) {
+                try {
+                    journal.cancelCompaction();
+                } catch (IOException e) {
+                    cause.addSuppressed(e);
+                }
+                markModified();
+                super.failed(cause);
+            }
+        });
+    }
+
     /**
      * Generates a 8 character code using an alphabetical character as the first value (so they can be directly parsed
      * into variables for example). It uses alphanumerics giving it the following possibilities:
@@ -900,11 +1694,9 @@ public class BranchComponent extends JPanel implements MouseMotionListener, Mous
      * Calculates the positions of the notifications relative to each other and their offsets.
      */
     private void calculateNotifications(){
-        java.util.List<Notification> reverse = notifications;
-        Collections.reverse(reverse);
-
         int yo = 0;
-        for (Notification notification : reverse){
+        for (int i = notifications.size() - 1; i >= 0; i--){
+            Notification notification = notifications.get(i);
             notification.setyOffset(yo);
             yo += notification.getHeight();
         }
@@ -922,4 +1714,701 @@ public class BranchComponent extends JPanel implements MouseMotionListener, Mous
         calculateNotifications();
     }
 
+    /**
+     * Inserts a notice notification which is removed after {@link #NOTICE_DURATION} unless it is clicked first.
+     * @param title {@link String} the title of the message.
+     * @param body {@link String} the body of the message.
+     */
+    private void logNotice(String title, String body){
+        Notification notification = new Notification(title, body, Notification.NotificationType.NOTICE, 0);
+        notifications.add(notification);
+        calculateNotifications();
+
+        Timer timer = new Timer(NOTICE_DURATION, e -> removeNotification(notification));
+        timer.setRepeats(false);
+        timer.start();
+    }
+
+    /**
+     * Removes the notification if it is still shown and recalculates the rest.
+     * @param notification {@link Notification} the notification to remove.
+     */
+    private void removeNotification(Notification notification){
+        if (notifications.remove(notification)) calculateNotifications();
+    }
+
+    /**
+     * Sets the value of {@link #modified} and updates the title after the layout has been changed.
+     */
+    private void markModified() {
+        revision++;
+        modified = true;
+        updateTitle();
+    }
+
+    /**
+     * Checks if a background task is still running, logging an error if it is as only one can run at a time.
+     *
+     * @return <code>boolean</code> If a task is running.
+     */
+    private boolean isBusy() {
+        if (task == null || task.isDone()) return false;
+
+        logError("Busy", "Wait for the current " + task.action.toLowerCase() + " to finish first.");
+        return true;
+    }
+
+    /**
+     * Shows the progress notification of the task and starts it.
+     *
+     * @param started {@link BackgroundTask} The task to run.
+     */
+    private void startTask(BackgroundTask<?> started) {
+        task = started;
+        notifications.add(started.notification);
+        calculateNotifications();
+        started.execute();
+    }
+
+    /**
+     * A node being moved from one location to another.
+     */
+    private class MoveEdit implements Edit {
+        private final Node node;
+        private final int fromX, fromY, toX, toY;
+
+        private MoveEdit(Node node, int fromX, int fromY, int toX, int toY) {
+            this.node = node;
+            this.fromX = fromX;
+            this.fromY = fromY;
+            this.toX = toX;
+            this.toY = toY;
+        }
+
+        @Override
+        public void undo() {
+            setLocation(node, fromX, fromY);
+        }
+
+        @Override
+        public void redo() {
+            setLocation(node, toX, toY);
+        }
+
+        @Override
+        public long cost() {
+            return 40;
+        }
+    }
+
+    /**
+     * Many nodes being moved at once by an automatic layout.
+     */
+    private class LayoutEdit implements Edit {
+        private final Node[] moved;
+        private final Point[] from;
+        private final Point[] to;
+
+        /**
+         * @param moved {@link Node}[] The nodes being moved, which must currently be in the graph.
+         * @param to    {@link Point}[] The new location of each node.
+         */
+        private LayoutEdit(Node[] moved, Point[] to) {
+            this.moved = moved;
+            this.to = to;
+            this.from = new Point[moved.length];
+            for (int i = 0; i < moved.length; i++) from[i] = new Point(moved[i].getX(), moved[i].getY());
+        }
+
+        /**
+         * @param moved {@link Node}[] The nodes that were moved.
+         * @param from  {@link Point}[] The old location of each node.
+         * @param to    {@link Point}[] The new location of each node.
+         */
+        private LayoutEdit(Node[] moved, Point[] from, Point[] to) {
+            this.moved = moved;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public void undo() {
+            setLocations(moved, from);
+        }
+
+        @Override
+        public void redo() {
+            setLocations(moved, to);
+        }
+
+        @Override
+        public long cost() {
+            return 32 + 56L * moved.length;
+        }
+    }
+
+    /**
+     * A {@link ForceLayout} of the graph as it was when it started, stepped on the common pool and drawn by a
+     * {@link Timer} at {@link #FRAME_RATE}. Each frame shows the last step to finish and starts the next, so the canvas
+     * stays responsive however long a step takes. Along with the step the pool works out which nodes moved, the area
+     * of the canvas they and their connections cover and a new {@link SpatialIndex} with the nodes where they are
+     * going, so a frame only has to move the nodes, swap the index in and repaint that area. If the index was changed
+     * while the step ran the nodes are updated in it one at a time instead. No frame is shown while the last one has
+     * not been painted yet. Nodes added since it started are left alone and nodes removed since are skipped.
+     */
+    private class ForceAnimation implements ActionListener {
+        private final Node[] laidOut;
+        private final Point[] from;
+        private final StorySnapshot story;
+        private final ForceLayout layout;
+        private final Timer timer = new Timer(1000 / FRAME_RATE, this);
+        /**
+         * The index in {@link #laidOut} of each node.
+         */
+        private final Map<Node, Integer> indices = new IdentityHashMap<>();
+        /**
+         * The location of each node as of the last frame, only used by the steps.
+         */
+        private final int[] shownX, shownY;
+        /**
+         * The nodes kept where they are because they are pinned or selected.
+         */
+        private final BitSet fixed = new BitSet();
+        /**
+         * The nodes found to have been removed from the graph, which are kept where they are for good.
+         */
+        private final BitSet removed = new BitSet();
+        /**
+         * The nodes of the graph in draw order as of the last time the {@link #index} was changed by anything else,
+         * and the location of each, used for the nodes that are not being laid out.
+         */
+        private Node[] order;
+        private int[] orderX, orderY;
+        /**
+         * The {@link SpatialIndex#getModifications()} of the {@link #index} as of the last frame or change by anything
+         * else.
+         */
+        private int modifications;
+        private ForkJoinTask<Frame> step;
+        /**
+         * If the last frame has been repainted but not painted yet.
+         */
+        private boolean pending;
+
+        private ForceAnimation() {
+            laidOut = nodes.toArray(new Node[0]);
+            from = new Point[laidOut.length];
+            shownX = new int[laidOut.length];
+            shownY = new int[laidOut.length];
+            for (int i = 0; i < laidOut.length; i++) {
+                from[i] = new Point(laidOut[i].getX(), laidOut[i].getY());
+                shownX[i] = from[i].x;
+                shownY[i] = from[i].y;
+                indices.put(laidOut[i], i);
+            }
+            story = StorySnapshot.of(graph);
+            layout = new ForceLayout(story, ForkJoinPool.commonPool());
+            sync();
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (pending || (step != null && !step.isDone())) return;
+
+            if (step != null) show(step.join());
+
+            if (layout.isSettled()) {
+                stopAnimation(true);
+                logNotice("Force Layout", "The layout has settled.");
+                return;
+            }
+
+            if (index.getModifications() != modifications) sync();
+            BitSet now = new BitSet();
+            for (int h = pinned.nextSetBit(0); h >= 0; h = pinned.nextSetBit(h + 1)) fix(now, graph.get(h));
+            selections.forEach(h -> fix(now, graph.get(h)));
+            for (int i = fixed.nextSetBit(0); i >= 0; i = fixed.nextSetBit(i + 1)) {
+                if (!now.get(i) && !removed.get(i)) layout.setFixed(i, false);
+            }
+            fixed.clear();
+            fixed.or(now);
+            step = ForkJoinPool.commonPool().submit(this::step);
+        }
+
+        /**
+         * Catches up with changes made to the graph by anything else, taking the nodes the steps index from the graph
+         * and fixing any laid out node that has been removed.
+         */
+        private void sync() {
+            order = nodes.toArray(new Node[0]);
+            orderX = new int[order.length];
+            orderY = new int[order.length];
+            for (int k = 0; k < order.length; k++) {
+                orderX[k] = order[k].getX();
+                orderY[k] = order[k].getY();
+            }
+            for (int i = 0; i < laidOut.length; i++) {
+                if (!removed.get(i) && graph.get(laidOut[i].getHandle()) != laidOut[i]) {
+                    removed.set(i);
+                    layout.setFixed(i, true);
+                }
+            }
+            modifications = index.getModifications();
+        }
+
+        /**
+         * Marks the node as fixed for the next step if it was laid out, keeping it where it is now.
+         */
+        private void fix(BitSet now, Node n) {
+            Integer i = n == null ? null : indices.get(n);
+            if (i == null || removed.get(i)) return;
+            now.set(i);
+            layout.setFixed(i, true);
+            layout.moveTo(i, n.getX(), n.getY());
+        }
+
+        /**
+         * Runs a step of the layout, collects the nodes that moved by at least a pixel and indexes every node where it
+         * is going. Run on the common pool.
+         *
+         * @return {@link Frame} The nodes to move, the area of the canvas to repaint and the new index.
+         */
+        private Frame step() {
+            layout.step();
+
+            int count = 0;
+            int[] moved = new int[16];
+            boolean[] changed = new boolean[laidOut.length];
+            Rectangle damage = null;
+            for (int i = 0; i < laidOut.length; i++) {
+                if (removed.get(i) || (layout.getX(i) == shownX[i] && layout.getY(i) == shownY[i])) continue;
+                changed[i] = true;
+                if (count == moved.length) moved = Arrays.copyOf(moved, count * 2);
+                moved[count++] = i;
+                damage = cover(damage, i);
+            }
+            if (count == 0) return new Frame(new int[0], new int[0], new int[0], null, null);
+
+            for (int i = 0; i < story.size(); i++) {
+                for (int c = 0; c < story.connectionCount(i); c++) {
+                    int d = story.getConnection(i, c);
+                    if (changed[i] != changed[d]) damage = cover(damage, changed[i] ? d : i);
+                }
+            }
+
+            int[] xs = new int[count];
+            int[] ys = new int[count];
+            for (int k = 0; k < count; k++) {
+                xs[k] = shownX[moved[k]] = layout.getX(moved[k]);
+                ys[k] = shownY[moved[k]] = layout.getY(moved[k]);
+            }
+
+            SpatialIndex next = new SpatialIndex();
+            for (int k = 0; k < order.length; k++) {
+                Integer i = indices.get(order[k]);
+                if (i == null) next.insert(order[k], orderX[k], orderY[k]);
+                else next.insert(order[k], shownX[i], shownY[i]);
+            }
+            return new Frame(Arrays.copyOf(moved, count), xs, ys, damage, next);
+        }
+
+        /**
+         * @param damage {@link Rectangle} The area covered so far or <code>null</code> for none.
+         * @param i      <code>int</code> The index of a node.
+         * @return {@link Rectangle} The area grown to cover the node where it was last shown and where it is now.
+         */
+        private Rectangle cover(Rectangle damage, int i) {
+            Rectangle r = new Rectangle(shownX[i], shownY[i], story.getWidth(i), story.getHeight(i));
+            r.add(new Rectangle(layout.getX(i), layout.getY(i), story.getWidth(i), story.getHeight(i)));
+            if (damage != null) r.add(damage);
+            return r;
+        }
+
+        /**
+         * Moves the nodes of a finished step, swapping in its index if nothing else has changed the current one, and
+         * repaints the area they cover.
+         *
+         * @param frame {@link Frame} The finished step.
+         */
+        private void show(Frame frame) {
+            if (frame.moved.length == 0) return;
+
+            boolean current = index.getModifications() == modifications;
+            for (int k = 0; k < frame.moved.length; k++) {
+                int i = frame.moved[k];
+                Node n = laidOut[i];
+                if (removed.get(i)) continue;
+                if (!current && graph.get(n.getHandle()) != n) {
+                    removed.set(i);
+                    layout.setFixed(i, true);
+                    continue;
+                }
+                n.setX(frame.xs[k]);
+                n.setY(frame.ys[k]);
+                if (!current) index.update(n);
+            }
+            if (current) {
+                index = frame.index;
+                modifications = index.getModifications();
+            }
+            markModified();
+            pending = repaintCanvas(frame.damage).intersects(getVisibleRect()) && isShowing();
+        }
+
+        /**
+         * Records where the nodes still in the graph have been moved to as a single {@link LayoutEdit}. A step still
+         * running is left to finish on its own since nothing reads it.
+         */
+        private void record() {
+            java.util.List<Node> moved = new ArrayList<>();
+            java.util.List<Point> starts = new ArrayList<>();
+            java.util.List<Point> ends = new ArrayList<>();
+            for (int i = 0; i < laidOut.length; i++) {
+                Node n = laidOut[i];
+                if (graph.get(n.getHandle()) != n || (n.getX() == from[i].x && n.getY() == from[i].y)) continue;
+                moved.add(n);
+                starts.add(from[i]);
+                ends.add(new Point(n.getX(), n.getY()));
+            }
+            if (moved.isEmpty()) return;
+
+            LayoutEdit edit = new LayoutEdit(moved.toArray(new Node[0]), starts.toArray(new Point[0]), ends.toArray(new Point[0]));
+            edit.redo();
+            history.add(edit);
+        }
+    }
+
+    /**
+     * The nodes moved by a step of the {@link ForceAnimation}.
+     */
+    private static class Frame {
+        /**
+         * The indices of the nodes that moved.
+         */
+        private final int[] moved;
+        /**
+         * The new location of each of the {@link #moved} nodes.
+         */
+        private final int[] xs, ys;
+        /**
+         * The area of the canvas covered by the nodes and their connections before and after moving, or
+         * <code>null</code> if nothing moved.
+         */
+        private final Rectangle damage;
+        /**
+         * Every node indexed where it is after the step, or <code>null</code> if nothing moved.
+         */
+        private final SpatialIndex index;
+
+        private Frame(int[] moved, int[] xs, int[] ys, Rectangle damage, SpatialIndex index) {
+            this.moved = moved;
+            this.xs = xs;
+            this.ys = ys;
+            this.damage = damage;
+            this.index = index;
+        }
+    }
+
+    /**
+     * The id, prompt, response, effect and guards of a node being changed through the {@link DetailWindow}.
+     */
+    private class TextEdit implements Edit {
+        private final Node node;
+        private final String oldId, oldPrompt, oldResponse, oldEffect;
+        private final String newId, newPrompt, newResponse, newEffect;
+        private final Node[] guarded;
+        private final String[] oldGuards, newGuards;
+
+        /**
+         * @param node    {@link Node} The node that is changing.
+         * @param changed {@link Node} A copy of the node with the new text.
+         * @param guards  {@link Map} The new guard of each connection of the node.
+         */
+        private TextEdit(Node node, Node changed, Map<Node, String> guards) {
+            this.node = node;
+            this.oldId = node.getId();
+            this.oldPrompt = node.getPrompt();
+            this.oldResponse = node.getResponse();
+            this.oldEffect = node.getEffect();
+            this.newId = changed.getId();
+            this.newPrompt = changed.getPrompt();
+            this.newResponse = changed.getResponse();
+            this.newEffect = changed.getEffect();
+
+            java.util.List<Node> destinations = new ArrayList<>();
+            for (Map.Entry<Node, String> e : guards.entrySet()) {
+                if (!Objects.equals(e.getValue(), node.getGuard(e.getKey()))) destinations.add(e.getKey());
+            }
+            this.guarded = destinations.toArray(new Node[0]);
+            this.oldGuards = new String[guarded.length];
+            this.newGuards = new String[guarded.length];
+            for (int i = 0; i < guarded.length; i++) {
+                oldGuards[i] = node.getGuard(guarded[i]);
+                newGuards[i] = guards.get(guarded[i]);
+            }
+        }
+
+        @Override
+        public void undo() {
+            setText(node, oldId, oldPrompt, oldResponse, oldEffect);
+            for (int i = 0; i < guarded.length; i++) setGuard(node, guarded[i], oldGuards[i]);
+        }
+
+        @Override
+        public void redo() {
+            setText(node, newId, newPrompt, newResponse, newEffect);
+            for (int i = 0; i < guarded.length; i++) setGuard(node, guarded[i], newGuards[i]);
+        }
+
+        @Override
+        public long cost() {
+            long cost = 64 + 2L * (length(oldId) + length(oldPrompt) + length(oldResponse) + length(oldEffect)
+                    + length(newId) + length(newPrompt) + length(newResponse) + length(newEffect));
+            for (int i = 0; i < guarded.length; i++) cost += 16 + 2L * (length(oldGuards[i]) + length(newGuards[i]));
+            return cost;
+        }
+    }
+
+    /**
+     * A connection being added or removed.
+     */
+    private class ConnectionEdit implements Edit {
+        private final Node origin;
+        private final Node destination;
+        private final boolean connected;
+        private final String guard;
+
+        /**
+         * @param origin      {@link Node} The node the connection starts at.
+         * @param destination {@link Node} The node the connection ends at.
+         * @param connected   <code>boolean</code> If the connection is being added rather than removed. A removed
+         *                    connection must still exist so its guard can be kept.
+         */
+        private ConnectionEdit(Node origin, Node destination, boolean connected) {
+            this.origin = origin;
+            this.destination = destination;
+            this.connected = connected;
+            this.guard = origin.getGuard(destination);
+        }
+
+        @Override
+        public void undo() {
+            if (connected) {
+                disconnect(origin, destination);
+            } else {
+                connect(origin, destination);
+                setGuard(origin, destination, guard);
+            }
+        }
+
+        @Override
+        public void redo() {
+            if (connected) {
+                connect(origin, destination);
+                setGuard(origin, destination, guard);
+            } else {
+                disconnect(origin, destination);
+            }
+        }
+
+        @Override
+        public long cost() {
+            return 32 + 2L * length(guard);
+        }
+    }
+
+    /**
+     * Nodes being removed along with their connections. Undoing adds the same node objects back, so other edits that
+     * refer to them stay valid, and restores every connection to and from them. Adding a node is recorded as the undone
+     * form of this edit.
+     */
+    private class RemoveEdit implements Edit {
+        private final java.util.List<Node> removed;
+        private final Node[][] outgoing;
+        private final Node[][] incoming;
+        private final String[][] outgoingGuards;
+        private final String[][] incomingGuards;
+        private final boolean all;
+
+        /**
+         * @param removed {@link java.util.List} The nodes to remove, which must currently be in the graph or all be
+         *                new nodes without connections.
+         * @param all     <code>boolean</code> If the nodes are every node in the graph.
+         */
+        private RemoveEdit(java.util.List<Node> removed, boolean all) {
+            this.removed = removed;
+            this.all = all;
+            this.outgoing = new Node[removed.size()][];
+            this.incoming = new Node[removed.size()][];
+            this.outgoingGuards = new String[removed.size()][];
+            this.incomingGuards = new String[removed.size()][];
+            for (int i = 0; i < removed.size(); i++) {
+                Node n = removed.get(i);
+                outgoing[i] = n.getConnections().toArray(new Node[0]);
+                incoming[i] = n.getIncoming().toArray(new Node[0]);
+                outgoingGuards[i] = new String[outgoing[i].length];
+                incomingGuards[i] = new String[incoming[i].length];
+                for (int j = 0; j < outgoing[i].length; j++) outgoingGuards[i][j] = n.getGuard(outgoing[i][j]);
+                for (int j = 0; j < incoming[i].length; j++) incomingGuards[i][j] = incoming[i][j].getGuard(n);
+            }
+        }
+
+        @Override
+        public void undo() {
+            for (Node n : removed) {
+                graph.add(n);
+                index.insert(n);
+                words.insert(n);
+                analysis.added(n);
+                journal.recordAdd(n);
+            }
+            for (int i = 0; i < removed.size(); i++) {
+                Node n = removed.get(i);
+                for (int j = 0; j < outgoing[i].length; j++) restore(n, outgoing[i][j], outgoingGuards[i][j]);
+                for (int j = 0; j < incoming[i].length; j++) restore(incoming[i][j], n, incomingGuards[i][j]);
+            }
+            markModified();
+            repaint();
+        }
+
+        @Override
+        public void redo() {
+            if (all) {
+                graph.clear();
+                index.clear();
+                words.clear();
+                pinned.clear();
+                analysis.rebuild();
+                journal.recordClear();
+                selections.clear();
+            } else {
+                BitSet handles = new BitSet();
+                for (Node n : removed) {
+                    handles.set(n.getHandle());
+                    selections.remove(n.getHandle());
+                    words.remove(n);
+                    pinned.clear(n.getHandle());
+                }
+                for (Node n : graph.removeAll(handles)) {
+                    index.remove(n);
+                    journal.recordRemove(n);
+                }
+                analysis.removed(handles);
+            }
+            moving = -1;
+            markModified();
+            repaint();
+        }
+
+        /**
+         * Reconnects a connection that was removed along with its guard.
+         */
+        private void restore(Node origin, Node destination, String guard) {
+            if (!graph.connect(origin, destination)) return;
+
+            analysis.connected(origin, destination);
+            if (guard != null) graph.setGuard(origin, destination, guard);
+            journal.recordConnect(origin, destination);
+        }
+
+        @Override
+        public long cost() {
+            long cost = 64;
+            for (int i = 0; i < removed.size(); i++) {
+                Node n = removed.get(i);
+                cost += 256 + 2L * (length(n.getId()) + length(n.getPrompt()) + length(n.getResponse()) + length(n.getEffect()));
+                cost += 16L * (outgoing[i].length + incoming[i].length);
+                for (String guard : outgoingGuards[i]) cost += 2L * length(guard);
+                for (String guard : incomingGuards[i]) cost += 2L * length(guard);
+            }
+            return cost;
+        }
+    }
+
+    /**
+     * @param s {@link String} The string.
+     * @return <code>int</code> The length of the string or 0 if it is <code>null</code>.
+     */
+    private static int length(String s) {
+        return s == null ? 0 : s.length();
+    }
+
+    /**
+     * A load, save or export running off the Event Dispatch Thread. Progress is shown in a notice notification which
+     * is replaced with an error notification if the task fails. The result is handed to {@link #finish(Object)} on the
+     * Event Dispatch Thread so that is the only place the task can change the component.
+     *
+     * @param <T> The result of the task.
+     */
+    private abstract class BackgroundTask<T> extends SwingWorker<T, Void> {
+
+        /**
+         * What the task is doing, used as the title of the progress notification.
+         */
+        private final String action;
+        /**
+         * The name of the file being worked on.
+         */
+        private final String name;
+        /**
+         * The notification showing the progress of the task.
+         */
+        private final Notification notification;
+
+        private BackgroundTask(String action, String name) {
+            this.action = action;
+            this.name = name;
+            this.notification = new Notification(action, name, Notification.NotificationType.NOTICE, 0);
+
+            addPropertyChangeListener(e -> {
+                if (!"progress".equals(e.getPropertyName())) return;
+                notification.setBody(name + " " + e.getNewValue() + "%");
+                calculateNotifications();
+            });
+        }
+
+        @Override
+        protected final T doInBackground() throws Exception {
+            return work(fraction -> setProgress((int) Math.max(0, Math.min(100, fraction * 100))));
+        }
+
+        @Override
+        protected final void done() {
+            removeNotification(notification);
+            try {
+                finish(get());
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+                failed(e.getCause());
+            } catch (InterruptedException | CancellationException e) {
+                failed(e);
+            }
+        }
+
+        /**
+         * Runs the task in the background. This must not touch any state of the component.
+         *
+         * @param progress {@link ProgressPassback} The passback to report progress to.
+         * @return The result of the task.
+         * @throws Exception if the task fails.
+         */
+        protected abstract T work(ProgressPassback progress) throws Exception;
+
+        /**
+         * Called on the Event Dispatch Thread with the result once the task has completed.
+         *
+         * @param result The result of the task.
+         */
+        protected abstract void finish(T result);
+
+        /**
+         * Called on the Event Dispatch Thread if the task fails. By default this logs an error with the message.
+         *
+         * @param cause {@link Throwable} The reason for the failure.
+         */
+        protected void failed(Throwable cause) {
+            logError(action + " Failed", name + ": " + cause.getClass().getSimpleName() + ": " + cause.getMessage());
+        }
+    }
+
 }
\ No newline at end of file